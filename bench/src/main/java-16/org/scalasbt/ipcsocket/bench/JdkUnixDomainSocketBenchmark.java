@@ -0,0 +1,36 @@
+package org.scalasbt.ipcsocket.bench;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * {@link EchoBenchmark} over the JDK's own Unix domain socket channels. These were added in JDK 16,
+ * so this benchmark is only compiled when the build runs on JDK 16 or later.
+ */
+public class JdkUnixDomainSocketBenchmark extends EchoBenchmark {
+  private Path dir;
+  private UnixDomainSocketAddress address;
+
+  @Override
+  protected ServerSocketChannel listen() throws IOException {
+    dir = Files.createTempDirectory("ipcsocket-bench");
+    address = UnixDomainSocketAddress.of(dir.resolve("bench.sock"));
+    return ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(address);
+  }
+
+  @Override
+  protected SocketChannel connect() throws IOException {
+    return SocketChannel.open(address);
+  }
+
+  @Override
+  protected void cleanup() throws IOException {
+    Files.deleteIfExists(address.getPath());
+    Files.deleteIfExists(dir);
+  }
+}
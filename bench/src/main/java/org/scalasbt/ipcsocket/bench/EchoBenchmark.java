@@ -0,0 +1,151 @@
+package org.scalasbt.ipcsocket.bench;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a client and a server thread exchanging messages of {@link #size} bytes over a single
+ * connection. Each transport is a subclass that opens the listening channel and connects to it; the
+ * messages are written and read through the {@link SocketChannel} API for every transport, so the
+ * results only differ by the cost of the transport itself.
+ *
+ * <p>{@link #roundTrip()} sends a message that the server echoes back in full and reports the
+ * latency distribution, including p50, p99 and p99.9. {@link #oneWay()} sends a message that the
+ * server acknowledges with a single byte and reports messages per second; multiply by {@link #size}
+ * for bytes per second.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public abstract class EchoBenchmark {
+  private static final byte ECHO = 1;
+  private static final byte ACK = 0;
+
+  @Param({"1", "64", "1024", "65536", "1048576", "16777216"})
+  public int size;
+
+  private ServerSocketChannel server;
+  private Thread serverThread;
+  private SocketChannel client;
+  private ByteBuffer request;
+  private ByteBuffer response;
+  private ByteBuffer ack;
+
+  /** Opens a server channel that is bound and ready to accept a connection. */
+  protected abstract ServerSocketChannel listen() throws IOException;
+
+  /** Connects to the server channel returned by {@link #listen()}. */
+  protected abstract SocketChannel connect() throws IOException;
+
+  /** Releases anything that {@link #listen()} created besides the channel, e.g. a socket file. */
+  protected void cleanup() throws IOException {}
+
+  @Setup
+  public void setup() throws IOException {
+    request = ByteBuffer.allocateDirect(size);
+    final byte[] bytes = new byte[size];
+    ThreadLocalRandom.current().nextBytes(bytes);
+    request.put(bytes).flip();
+    response = ByteBuffer.allocateDirect(size);
+    ack = ByteBuffer.allocateDirect(1);
+
+    server = listen();
+    serverThread = new Thread(this::serve, "echo-server");
+    serverThread.setDaemon(true);
+    serverThread.start();
+    client = connect();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    client.close();
+    serverThread.join(TimeUnit.SECONDS.toMillis(10));
+    server.close();
+    cleanup();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public ByteBuffer roundTrip() throws IOException {
+    request.put(0, ECHO);
+    send();
+    response.clear();
+    readFully(client, response);
+    return response;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public ByteBuffer oneWay() throws IOException {
+    request.put(0, ACK);
+    send();
+    ack.clear();
+    readFully(client, ack);
+    return ack;
+  }
+
+  private void send() throws IOException {
+    request.rewind();
+    while (request.hasRemaining()) {
+      client.write(request);
+    }
+  }
+
+  /**
+   * Reads whole messages and answers each one according to its first byte. The server reads the
+   * entire message before it writes anything, so large messages never leave both sides blocked on a
+   * full socket buffer.
+   */
+  private void serve() {
+    try (SocketChannel channel = server.accept()) {
+      final ByteBuffer message = ByteBuffer.allocateDirect(size);
+      final ByteBuffer reply = ByteBuffer.allocateDirect(1);
+      while (true) {
+        message.clear();
+        readFully(channel, message);
+        message.flip();
+        final ByteBuffer out;
+        if (message.get(0) == ECHO) {
+          out = message;
+        } else {
+          reply.clear();
+          reply.put(0, ACK);
+          out = reply;
+        }
+        while (out.hasRemaining()) {
+          channel.write(out);
+        }
+      }
+    } catch (IOException e) {
+      // The client closed the connection in tearDown.
+    }
+  }
+
+  private static void readFully(SocketChannel channel, ByteBuffer dst) throws IOException {
+    while (dst.hasRemaining()) {
+      if (channel.read(dst) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+}
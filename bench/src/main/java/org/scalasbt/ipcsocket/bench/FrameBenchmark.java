@@ -0,0 +1,104 @@
+package org.scalasbt.ipcsocket.bench;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scalasbt.ipcsocket.FrameFormat;
+import org.scalasbt.ipcsocket.FrameReader;
+import org.scalasbt.ipcsocket.FrameWriter;
+import org.scalasbt.ipcsocket.UnixDomainServerSocket;
+import org.scalasbt.ipcsocket.UnixDomainSocket;
+
+/**
+ * Measures how many length-prefixed frames of {@link #size} bytes per second a reader decodes while
+ * a writer thread streams them as fast as it can. {@code FrameReader} decodes them with {@link
+ * FrameReader}; {@code DataInputStream} is the usual hand-written loop of {@code readInt} and
+ * {@code readFully} into a new array for every frame.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class FrameBenchmark {
+  @Param({"16", "256", "4096", "65536"})
+  public int size;
+
+  @Param({"FrameReader", "DataInputStream"})
+  public String reader;
+
+  @Param({"false", "true"})
+  public boolean useJNI;
+
+  private Path dir;
+  private UnixDomainServerSocket server;
+  private UnixDomainSocket client;
+  private UnixDomainSocket accepted;
+  private Thread writerThread;
+  private FrameReader frameReader;
+  private DataInputStream in;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("ipcsocket-bench");
+    final String path = dir.resolve("bench.sock").toString();
+    server = new UnixDomainServerSocket(path, useJNI);
+    client = new UnixDomainSocket(path, useJNI);
+    accepted = (UnixDomainSocket) server.accept();
+    writerThread = new Thread(this::write, "frame-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    frameReader = new FrameReader(accepted, FrameFormat.FIXED_32);
+    in = new DataInputStream(accepted.getBufferedInputStream());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    accepted.shutdownInput();
+    accepted.close();
+    client.close();
+    writerThread.join(TimeUnit.SECONDS.toMillis(10));
+    server.close();
+    Files.deleteIfExists(dir.resolve("bench.sock"));
+    Files.deleteIfExists(dir);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public Object read() throws IOException {
+    if (reader.equals("FrameReader")) {
+      return frameReader.next();
+    }
+    final byte[] frame = new byte[in.readInt()];
+    in.readFully(frame);
+    return frame;
+  }
+
+  private void write() {
+    final FrameWriter writer = new FrameWriter(client, FrameFormat.FIXED_32);
+    final ByteBuffer frame = ByteBuffer.allocateDirect(size);
+    try {
+      while (true) {
+        frame.clear();
+        writer.write(frame);
+      }
+    } catch (IOException e) {
+      // The reader closed the connection in tearDown.
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package org.scalasbt.ipcsocket.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** {@link EchoBenchmark} over loopback TCP, as a baseline for the Unix domain transports. */
+public class TcpSocketBenchmark extends EchoBenchmark {
+  private ServerSocketChannel server;
+
+  @Override
+  protected ServerSocketChannel listen() throws IOException {
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    return server;
+  }
+
+  @Override
+  protected SocketChannel connect() throws IOException {
+    final SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    return channel;
+  }
+}
@@ -0,0 +1,37 @@
+package org.scalasbt.ipcsocket.bench;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.openjdk.jmh.annotations.Param;
+import org.scalasbt.ipcsocket.UnixDomainServerSocketChannel;
+import org.scalasbt.ipcsocket.UnixDomainSocketChannel;
+
+/** {@link EchoBenchmark} over ipcsocket's own Unix domain sockets, using either JNA or JNI. */
+public class UnixDomainSocketBenchmark extends EchoBenchmark {
+  @Param({"false", "true"})
+  public boolean useJNI;
+
+  private Path dir;
+  private String path;
+
+  @Override
+  protected ServerSocketChannel listen() throws IOException {
+    dir = Files.createTempDirectory("ipcsocket-bench");
+    path = dir.resolve("bench.sock").toString();
+    return UnixDomainServerSocketChannel.open(path, useJNI);
+  }
+
+  @Override
+  protected SocketChannel connect() throws IOException {
+    return UnixDomainSocketChannel.open(path, useJNI);
+  }
+
+  @Override
+  protected void cleanup() throws IOException {
+    Files.deleteIfExists(dir.resolve("bench.sock"));
+    Files.deleteIfExists(dir);
+  }
+}
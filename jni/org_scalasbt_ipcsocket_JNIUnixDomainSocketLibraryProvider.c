@@ -1,12 +1,25 @@
+#ifdef __linux__
+#define _GNU_SOURCE
+#endif
 #include "errno.h"
+#include "fcntl.h"
 #include "jni.h"
+#include "poll.h"
 #include "stdio.h"
 #include "stdlib.h"
 #include "string.h"
 #include "sys/socket.h"
+#include "sys/time.h"
 #include "sys/types.h"
+#include "sys/uio.h"
 #include "sys/un.h"
 #include "unistd.h"
+#ifdef __linux__
+#include "sys/epoll.h"
+#include "sys/eventfd.h"
+#include "sys/sendfile.h"
+#include "sys/syscall.h"
+#endif
 
 #include "org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider.h"
 #define UNUSED __attribute__((unused))
@@ -60,17 +73,78 @@ Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_listenNative(
   THROW_ON_ERROR(res)
 }
 
+/*
+ * Accepts a connection whose descriptor is close-on-exec, and non-blocking if
+ * nonblocking is set. Linux sets the flags atomically with accept4; elsewhere
+ * they are set right after accept, which leaves a window in which a concurrent
+ * fork and exec can inherit the descriptor.
+ */
+static int accept_with_flags(int fd, int nonblocking) {
+#ifdef __linux__
+  int flags = SOCK_CLOEXEC | (nonblocking ? SOCK_NONBLOCK : 0);
+  return accept4(fd, NULL, NULL, flags);
+#else
+  int res = accept(fd, NULL, NULL);
+  if (res == -1)
+    return -1;
+  if (fcntl(res, F_SETFD, FD_CLOEXEC) == -1 ||
+      (nonblocking &&
+       fcntl(res, F_SETFL, fcntl(res, F_GETFL) | O_NONBLOCK) == -1)) {
+    int err = errno;
+    close(res);
+    errno = err;
+    return -1;
+  }
+  return res;
+#endif
+}
+
 jint JNICALL
 Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_acceptNative(
     UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd) {
   errno = 0;
-  struct sockaddr_un addr;
-  native_sockaddr(env, &addr, NULL, 0);
-  socklen_t l = 0;
-  int res = accept(fd, (struct sockaddr *)&addr, &l);
+  int res = accept_with_flags(fd, 0);
   THROW_ON_ERROR(res);
 }
 
+#define MAX_ACCEPT_BATCH 256
+
+/*
+ * Accepts the first connection like accept, then puts the listening socket in
+ * non-blocking mode for the rest of the batch and keeps accepting until there
+ * is no pending connection or count is reached, so that the batch never waits
+ * while holding connections. An error after the first connection ends the
+ * batch; if it persists, the next call reports it.
+ */
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_acceptBatchNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jintArray fds, jint count,
+    jboolean nonblocking) {
+  jint accepted[MAX_ACCEPT_BATCH];
+  if (count > MAX_ACCEPT_BATCH)
+    count = MAX_ACCEPT_BATCH;
+  errno = 0;
+  int res = accept_with_flags(fd, nonblocking);
+  if (res == -1) {
+    THROW_ON_ERROR(-1);
+  }
+  int n = 0;
+  accepted[n++] = res;
+  if (count > 1) {
+    int flags = fcntl(fd, F_GETFL);
+    int restore = flags != -1 && !(flags & O_NONBLOCK);
+    if (flags != -1 && (!restore || fcntl(fd, F_SETFL, flags | O_NONBLOCK) != -1)) {
+      while (n < count && (res = accept_with_flags(fd, nonblocking)) != -1)
+        accepted[n++] = res;
+      if (restore)
+        fcntl(fd, F_SETFL, flags);
+    }
+  }
+  (*env)->SetIntArrayRegion(env, fds, 0, n, accepted);
+  errno = 0;
+  THROW_ON_ERROR(n);
+}
+
 jint JNICALL
 Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_connectNative(
     UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd, jbyteArray path,
@@ -82,26 +156,423 @@ Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_connectNative(
   THROW_ON_ERROR(res);
 }
 
+/*
+ * Transfers of up to MAX_STACK_BUFFER bytes are staged through a buffer on the
+ * native stack. Larger transfers access the java array directly inside a
+ * critical region, which must never block, so the socket is only ever touched
+ * with MSG_DONTWAIT while the region is held. If the socket is not ready, the
+ * region is released and we wait for readiness with poll before retrying.
+ * Neither path allocates native memory.
+ */
+#define MAX_STACK_BUFFER 8192
+
+/*
+ * Returns 0 once fd is ready for events, EAGAIN if fd is in non-blocking mode,
+ * or the errno of the failed call.
+ */
+static int await_fd(int fd, short events) {
+  int flags = fcntl(fd, F_GETFL);
+  if (flags == -1)
+    return errno;
+  if (flags & O_NONBLOCK)
+    return EAGAIN;
+  struct pollfd pfd = {.fd = fd, .events = events, .revents = 0};
+  while (poll(&pfd, 1, -1) == -1) {
+    if (errno != EINTR)
+      return errno;
+  }
+  return 0;
+}
+
+static int recv_critical(JNIEnv *env, jint fd, jbyteArray buffer, jint offset,
+                         jint len, int flags) {
+  for (;;) {
+    jbyte *bytes = (*env)->GetPrimitiveArrayCritical(env, buffer, NULL);
+    if (!bytes)
+      return -ENOMEM;
+    int res = recv(fd, bytes + offset, len, flags | MSG_DONTWAIT);
+    int err = errno;
+    (*env)->ReleasePrimitiveArrayCritical(env, buffer, bytes,
+                                          res > 0 ? 0 : JNI_ABORT);
+    if (res >= 0)
+      return res;
+    if ((err != EAGAIN && err != EWOULDBLOCK) || (err = await_fd(fd, POLLIN)))
+      return -err;
+  }
+}
+
+static int send_critical(JNIEnv *env, jint fd, jbyteArray buffer, jint offset,
+                         jint len) {
+  int written = 0;
+  while (written < len) {
+    jbyte *bytes = (*env)->GetPrimitiveArrayCritical(env, buffer, NULL);
+    if (!bytes)
+      return written ? written : -ENOMEM;
+    int res = send(fd, bytes + offset + written, len - written, MSG_DONTWAIT);
+    int err = errno;
+    (*env)->ReleasePrimitiveArrayCritical(env, buffer, bytes, JNI_ABORT);
+    if (res >= 0) {
+      written += res;
+    } else if ((err != EAGAIN && err != EWOULDBLOCK) ||
+               (err = await_fd(fd, POLLOUT))) {
+      return written ? written : -err;
+    }
+  }
+  return written;
+}
+
 jint JNICALL
 Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_readNative(
-    UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd, jbyteArray buffer,
-    jint offset, jint len) {
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jbyteArray buffer, jint offset,
+    jint len) {
+  if (len > MAX_STACK_BUFFER)
+    return recv_critical(env, fd, buffer, offset, len, 0);
+  jbyte bytes[MAX_STACK_BUFFER];
   errno = 0;
-  jbyte *bytes = malloc(len);
   int bytes_read = read(fd, bytes, len);
-  (*env)->SetByteArrayRegion(env, buffer, offset, bytes_read, bytes);
-  free(bytes);
+  if (bytes_read > 0)
+    (*env)->SetByteArrayRegion(env, buffer, offset, bytes_read, bytes);
   THROW_ON_ERROR(bytes_read);
 }
 
 jint JNICALL
 Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_writeNative(
-    UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd, jbyteArray buffer,
-    jint offset, jint len) {
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jbyteArray buffer, jint offset,
+    jint len) {
+  if (len > MAX_STACK_BUFFER)
+    return send_critical(env, fd, buffer, offset, len);
+  jbyte bytes[MAX_STACK_BUFFER];
+  (*env)->GetByteArrayRegion(env, buffer, offset, len, bytes);
+  errno = 0;
+  int bytes_written = write(fd, bytes, len);
+  THROW_ON_ERROR(bytes_written);
+}
+
+/*
+ * Receives a single message. With MSG_TRUNC, Linux returns the full length of
+ * the message even if only len bytes of it fit in the buffer.
+ */
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_receiveMessageNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jobject buffer, jint offset,
+    jint len) {
+  jbyte *address = (*env)->GetDirectBufferAddress(env, buffer);
+  if (address) {
+    errno = 0;
+    int res = recv(fd, address + offset, len, MSG_TRUNC);
+    THROW_ON_ERROR(res);
+  }
+  if (len > MAX_STACK_BUFFER)
+    return recv_critical(env, fd, buffer, offset, len, MSG_TRUNC);
+  jbyte bytes[MAX_STACK_BUFFER];
+  errno = 0;
+  int res = recv(fd, bytes, len, MSG_TRUNC);
+  if (res > 0)
+    (*env)->SetByteArrayRegion(env, buffer, offset, res < len ? res : len,
+                               bytes);
+  THROW_ON_ERROR(res);
+}
+
+/*
+ * The vectored and batched transfers below take an array of buffers whose
+ * elements are either a direct ByteBuffer or a byte[]. Arrays are accessed in
+ * place inside a critical region, following the same rules as recv_critical
+ * and send_critical above.
+ */
+#define MAX_IOV 64
+#define MAX_BATCH 256
+
+/*
+ * Resolves each element of buffers to an iovec. Direct buffers are resolved
+ * immediately; arrays are recorded in arrays and get their address from
+ * pin_buffers.
+ */
+static int load_buffers(JNIEnv *env, jobjectArray buffers, jintArray offsets,
+                        jintArray lengths, jint count, jobject *arrays,
+                        jint *offs, struct iovec *iov) {
+  jint lens[MAX_BATCH];
+  if ((*env)->EnsureLocalCapacity(env, count))
+    return -ENOMEM;
+  (*env)->GetIntArrayRegion(env, offsets, 0, count, offs);
+  (*env)->GetIntArrayRegion(env, lengths, 0, count, lens);
+  for (int i = 0; i < count; ++i) {
+    jobject buffer = (*env)->GetObjectArrayElement(env, buffers, i);
+    jbyte *address = (*env)->GetDirectBufferAddress(env, buffer);
+    arrays[i] = address ? NULL : buffer;
+    iov[i].iov_base = address ? address + offs[i] : NULL;
+    iov[i].iov_len = lens[i];
+  }
+  return 0;
+}
+
+/* Returns the number of buffers pinned, which is count unless pinning fails. */
+static int pin_buffers(JNIEnv *env, jobject *arrays, jint *offs,
+                       struct iovec *iov, int count) {
+  int pinned = 0;
+  for (; pinned < count; ++pinned) {
+    if (arrays[pinned]) {
+      jbyte *bytes =
+          (*env)->GetPrimitiveArrayCritical(env, arrays[pinned], NULL);
+      if (!bytes)
+        break;
+      iov[pinned].iov_base = bytes + offs[pinned];
+    }
+  }
+  return pinned;
+}
+
+static void unpin_buffers(JNIEnv *env, jobject *arrays, jint *offs,
+                          struct iovec *iov, int pinned, int mode) {
+  while (pinned-- > 0) {
+    if (arrays[pinned])
+      (*env)->ReleasePrimitiveArrayCritical(
+          env, arrays[pinned], (jbyte *)iov[pinned].iov_base - offs[pinned],
+          mode);
+  }
+}
+
+/* Performs a readv or writev style transfer with recvmsg or sendmsg. */
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_vectorNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jobjectArray buffers,
+    jintArray offsets, jintArray lengths, jint count, jboolean is_write) {
+  jobject arrays[MAX_IOV];
+  jint offs[MAX_IOV];
+  struct iovec iov[MAX_IOV];
+  if (count > MAX_IOV)
+    count = MAX_IOV;
+  if (load_buffers(env, buffers, offsets, lengths, count, arrays, offs, iov))
+    return -ENOMEM;
+  for (;;) {
+    int pinned = pin_buffers(env, arrays, offs, iov, count);
+    int res = -1;
+    int err = ENOMEM;
+    if (pinned == count) {
+      struct msghdr msg;
+      memset(&msg, 0, sizeof(msg));
+      msg.msg_iov = iov;
+      msg.msg_iovlen = count;
+      res = is_write ? sendmsg(fd, &msg, MSG_DONTWAIT)
+                     : recvmsg(fd, &msg, MSG_DONTWAIT);
+      err = errno;
+    }
+    unpin_buffers(env, arrays, offs, iov, pinned,
+                  !is_write && res > 0 ? 0 : JNI_ABORT);
+    if (res >= 0)
+      return res;
+    if ((err != EAGAIN && err != EWOULDBLOCK) ||
+        (err = await_fd(fd, is_write ? POLLOUT : POLLIN)))
+      return -err;
+  }
+}
+
+/*
+ * Sends or receives a batch of datagrams, one per buffer, with sendmmsg or
+ * recvmmsg. Other platforms send or receive the datagrams one at a time. The
+ * number of bytes of each datagram is stored in lengths.
+ */
+#ifndef __linux__
+struct mmsghdr {
+  struct msghdr msg_hdr;
+  unsigned int msg_len;
+};
+#endif
+
+static int transfer_messages(int fd, struct mmsghdr *msgs, int count,
+                             int is_send) {
+#ifdef __linux__
+  return is_send ? sendmmsg(fd, msgs, count, MSG_DONTWAIT)
+                 : recvmmsg(fd, msgs, count, MSG_DONTWAIT | MSG_TRUNC, NULL);
+#else
+  int i = 0;
+  for (; i < count; ++i) {
+    ssize_t res = is_send ? sendmsg(fd, &msgs[i].msg_hdr, MSG_DONTWAIT)
+                          : recvmsg(fd, &msgs[i].msg_hdr, MSG_DONTWAIT);
+    if (res < 0)
+      break;
+    msgs[i].msg_len = res;
+  }
+  return i > 0 ? i : -1;
+#endif
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_messagesNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jobjectArray buffers,
+    jintArray offsets, jintArray lengths, jint count, jboolean is_send) {
+  jobject arrays[MAX_BATCH];
+  jint offs[MAX_BATCH];
+  jint lens[MAX_BATCH];
+  struct iovec iov[MAX_BATCH];
+  struct mmsghdr msgs[MAX_BATCH];
+  if (count > MAX_BATCH)
+    count = MAX_BATCH;
+  if (load_buffers(env, buffers, offsets, lengths, count, arrays, offs, iov))
+    return -ENOMEM;
+  memset(msgs, 0, count * sizeof(struct mmsghdr));
+  for (int i = 0; i < count; ++i) {
+    msgs[i].msg_hdr.msg_iov = &iov[i];
+    msgs[i].msg_hdr.msg_iovlen = 1;
+  }
+  for (;;) {
+    int pinned = pin_buffers(env, arrays, offs, iov, count);
+    int res = -1;
+    int err = ENOMEM;
+    if (pinned == count) {
+      errno = 0;
+      res = transfer_messages(fd, msgs, count, is_send);
+      err = errno;
+    }
+    unpin_buffers(env, arrays, offs, iov, pinned,
+                  !is_send && res > 0 ? 0 : JNI_ABORT);
+    if (res > 0) {
+      for (int i = 0; i < res; ++i)
+        lens[i] = msgs[i].msg_len;
+      (*env)->SetIntArrayRegion(env, lengths, 0, res, lens);
+    }
+    if (res >= 0)
+      return res;
+    if ((err != EAGAIN && err != EWOULDBLOCK) ||
+        (err = await_fd(fd, is_send ? POLLOUT : POLLIN)))
+      return -err;
+  }
+}
+
+/*
+ * Sends or receives bytes together with descriptors passed as SCM_RIGHTS
+ * ancillary data. buffer is either a direct ByteBuffer or a byte[]. Arrays are
+ * staged through the stack, so at most MAX_STACK_BUFFER bytes of an array are
+ * transferred by one call.
+ */
+#define MAX_FDS 253
+
+static jbyte *message_bytes(JNIEnv *env, jobject buffer, jint offset,
+                            jint *len, jbyte *stack) {
+  jbyte *address = (*env)->GetDirectBufferAddress(env, buffer);
+  if (address)
+    return address + offset;
+  if (*len > MAX_STACK_BUFFER)
+    *len = MAX_STACK_BUFFER;
+  return stack;
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_sendFdsNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jobject buffer, jint offset,
+    jint len, jintArray fds, jint count) {
+  jbyte stack[MAX_STACK_BUFFER];
+  jint values[MAX_FDS];
+  union {
+    struct cmsghdr header;
+    char bytes[CMSG_SPACE(sizeof(int) * MAX_FDS)];
+  } control;
+  if (count > MAX_FDS)
+    return -EINVAL;
+  jbyte *bytes = message_bytes(env, buffer, offset, &len, stack);
+  if (bytes == stack)
+    (*env)->GetByteArrayRegion(env, buffer, offset, len, stack);
+  struct iovec iov = {.iov_base = bytes, .iov_len = len};
+  struct msghdr msg;
+  memset(&msg, 0, sizeof(msg));
+  msg.msg_iov = &iov;
+  msg.msg_iovlen = 1;
+  if (count > 0) {
+    (*env)->GetIntArrayRegion(env, fds, 0, count, values);
+    memset(&control, 0, sizeof(control));
+    msg.msg_control = control.bytes;
+    msg.msg_controllen = CMSG_SPACE(sizeof(int) * count);
+    struct cmsghdr *cmsg = CMSG_FIRSTHDR(&msg);
+    cmsg->cmsg_level = SOL_SOCKET;
+    cmsg->cmsg_type = SCM_RIGHTS;
+    cmsg->cmsg_len = CMSG_LEN(sizeof(int) * count);
+    for (int i = 0; i < count; ++i) {
+      int value = values[i];
+      memcpy(CMSG_DATA(cmsg) + i * sizeof(int), &value, sizeof(int));
+    }
+  }
+  errno = 0;
+  int res = sendmsg(fd, &msg, 0);
+  THROW_ON_ERROR(res);
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_receiveFdsNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jobject buffer, jint offset,
+    jint len, jintArray fds, jint max) {
+  jbyte stack[MAX_STACK_BUFFER];
+  jint values[MAX_FDS];
+  union {
+    struct cmsghdr header;
+    char bytes[CMSG_SPACE(sizeof(int) * MAX_FDS)];
+  } control;
+  jbyte *bytes = message_bytes(env, buffer, offset, &len, stack);
+  struct iovec iov = {.iov_base = bytes, .iov_len = len};
+  struct msghdr msg;
+  memset(&msg, 0, sizeof(msg));
+  memset(&control, 0, sizeof(control));
+  msg.msg_iov = &iov;
+  msg.msg_iovlen = 1;
+  msg.msg_control = control.bytes;
+  msg.msg_controllen = sizeof(control.bytes);
+  int flags = 0;
+#ifdef MSG_CMSG_CLOEXEC
+  flags |= MSG_CMSG_CLOEXEC;
+#endif
+  errno = 0;
+  int res = recvmsg(fd, &msg, flags);
+  int err = errno;
+  if (res < 0)
+    return -err;
+  int received = 0;
+  struct cmsghdr *cmsg = CMSG_FIRSTHDR(&msg);
+  for (; cmsg; cmsg = CMSG_NXTHDR(&msg, cmsg)) {
+    if (cmsg->cmsg_level != SOL_SOCKET || cmsg->cmsg_type != SCM_RIGHTS)
+      continue;
+    int n = (cmsg->cmsg_len - CMSG_LEN(0)) / sizeof(int);
+    for (int i = 0; i < n; ++i) {
+      int value;
+      memcpy(&value, CMSG_DATA(cmsg) + i * sizeof(int), sizeof(int));
+      if (received < max && received < MAX_FDS)
+        values[received++] = value;
+      else
+        close(value);
+    }
+  }
+  if (msg.msg_flags & MSG_CTRUNC) {
+    // Some of the descriptors were lost, for instance because this process ran
+    // out of them, so the ones that arrived are no use to the caller.
+    for (int i = 0; i < received; ++i)
+      close(values[i]);
+    return -EMSGSIZE;
+  }
+  if (received > 0)
+    (*env)->SetIntArrayRegion(env, fds, 0, received, values);
+  if (bytes == stack && res > 0)
+    (*env)->SetByteArrayRegion(env, buffer, offset, res, stack);
+  return res;
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_readDirectNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jobject buffer, jint offset,
+    jint len) {
+  jbyte *bytes = (*env)->GetDirectBufferAddress(env, buffer);
+  if (!bytes)
+    return -EINVAL;
+  errno = 0;
+  int bytes_read = read(fd, bytes + offset, len);
+  THROW_ON_ERROR(bytes_read);
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_writeDirectNative(
+    JNIEnv *env, UNUSED jclass clazz, jint fd, jobject buffer, jint offset,
+    jint len) {
+  jbyte *bytes = (*env)->GetDirectBufferAddress(env, buffer);
+  if (!bytes)
+    return -EINVAL;
   errno = 0;
-  jbyte *bytes = (*env)->GetByteArrayElements(env, buffer, 0);
   int bytes_written = write(fd, bytes + offset, len);
-  (*env)->ReleaseByteArrayElements(env, buffer, bytes, JNI_ABORT);
   THROW_ON_ERROR(bytes_written);
 }
 
@@ -121,6 +592,258 @@ Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_shutdownNative(
   THROW_ON_ERROR(res);
 }
 
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_setSocketOptionNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd, jint level, jint option,
+    jint value) {
+  int v = value;
+  errno = 0;
+  int res = setsockopt(fd, level, option, &v, sizeof(v));
+  THROW_ON_ERROR(res);
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_setSocketTimeoutNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd, jint option,
+    jint timeout_millis) {
+  struct timeval tv;
+  tv.tv_sec = timeout_millis / 1000;
+  tv.tv_usec = (timeout_millis % 1000) * 1000;
+  errno = 0;
+  int res = setsockopt(fd, SOL_SOCKET, option, &tv, sizeof(tv));
+  THROW_ON_ERROR(res);
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_getSocketOptionNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd, jint level, jint option) {
+  int v = 0;
+  socklen_t len = sizeof(v);
+  errno = 0;
+  int res = getsockopt(fd, level, option, &v, &len);
+  return res == -1 ? -errno : v;
+}
+
+/*
+ * memfd_create is called through syscall because glibc only added a wrapper in
+ * 2.27, which is newer than some of the systems that the library is built on.
+ */
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_memfdCreateNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, UNUSED jstring name,
+    UNUSED jlong size) {
+#if defined(__linux__) && defined(SYS_memfd_create)
+  const char *chars = (*env)->GetStringUTFChars(env, name, NULL);
+  if (!chars)
+    return -ENOMEM;
+  errno = 0;
+  int fd = syscall(SYS_memfd_create, chars, 1 /* MFD_CLOEXEC */);
+  int err = errno;
+  (*env)->ReleaseStringUTFChars(env, name, chars);
+  if (fd == -1)
+    return -err;
+  if (ftruncate(fd, size) == -1) {
+    err = errno;
+    close(fd);
+    return -err;
+  }
+  return fd;
+#else
+  return -ENOSYS;
+#endif
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_eventfdCreateNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz) {
+#ifdef __linux__
+  errno = 0;
+  int res = eventfd(0, EFD_CLOEXEC);
+  THROW_ON_ERROR(res);
+#else
+  return -ENOSYS;
+#endif
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_setNonBlockingNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd, jboolean non_blocking) {
+  errno = 0;
+  int flags = fcntl(fd, F_GETFL);
+  if (flags == -1)
+    return -errno;
+  flags = non_blocking ? (flags | O_NONBLOCK) : (flags & ~O_NONBLOCK);
+  int res = fcntl(fd, F_SETFL, flags);
+  THROW_ON_ERROR(res);
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_getStatusFlagsNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, jint fd) {
+  errno = 0;
+  int res = fcntl(fd, F_GETFL);
+  THROW_ON_ERROR(res);
+}
+
+#define MAX_STACK_POLL_FDS 64
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_pollNative(
+    JNIEnv *env, UNUSED jclass clazz, jintArray fds, jintArray events,
+    jintArray revents, jint nfds, jint timeout) {
+  struct pollfd stack_pfds[MAX_STACK_POLL_FDS];
+  jint stack_values[MAX_STACK_POLL_FDS];
+  struct pollfd *pfds = stack_pfds;
+  jint *values = stack_values;
+  if (nfds > MAX_STACK_POLL_FDS) {
+    pfds = malloc(nfds * sizeof(struct pollfd));
+    values = malloc(nfds * sizeof(jint));
+    if (!pfds || !values) {
+      free(pfds);
+      free(values);
+      return -ENOMEM;
+    }
+  }
+  (*env)->GetIntArrayRegion(env, fds, 0, nfds, values);
+  for (int i = 0; i < nfds; ++i)
+    pfds[i].fd = values[i];
+  (*env)->GetIntArrayRegion(env, events, 0, nfds, values);
+  for (int i = 0; i < nfds; ++i) {
+    pfds[i].events = values[i];
+    pfds[i].revents = 0;
+  }
+  int res;
+  do {
+    errno = 0;
+    res = poll(pfds, nfds, timeout);
+  } while (res == -1 && errno == EINTR);
+  int err = errno;
+  if (res >= 0) {
+    for (int i = 0; i < nfds; ++i)
+      values[i] = pfds[i].revents;
+    (*env)->SetIntArrayRegion(env, revents, 0, nfds, values);
+  }
+  if (pfds != stack_pfds) {
+    free(pfds);
+    free(values);
+  }
+  return res < 0 ? -err : res;
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_socketPairNative(
+    JNIEnv *env, UNUSED jclass clazz, jint domain, jint type, jint protocol,
+    jintArray fds) {
+  int sv[2];
+  errno = 0;
+  int res = socketpair(domain, type, protocol, sv);
+  if (res == 0) {
+    jint values[2] = {sv[0], sv[1]};
+    (*env)->SetIntArrayRegion(env, fds, 0, 2, values);
+  }
+  THROW_ON_ERROR(res);
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_pipeNative(
+    JNIEnv *env, UNUSED jclass clazz, jintArray fds) {
+  int pfd[2];
+  errno = 0;
+  int res = pipe(pfd);
+  if (res == 0) {
+    jint values[2] = {pfd[0], pfd[1]};
+    (*env)->SetIntArrayRegion(env, fds, 0, 2, values);
+  }
+  THROW_ON_ERROR(res);
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_sendFileNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, UNUSED jint out_fd,
+    UNUSED jint in_fd, UNUSED jlong offset, UNUSED jint count) {
+#ifdef __linux__
+  off_t off = offset;
+  errno = 0;
+  ssize_t res = sendfile(out_fd, in_fd, &off, count);
+  THROW_ON_ERROR(res);
+#else
+  return -ENOSYS;
+#endif
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_spliceNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, UNUSED jint in_fd,
+    UNUSED jint out_fd, UNUSED jint count) {
+#ifdef __linux__
+  errno = 0;
+  ssize_t res = splice(in_fd, NULL, out_fd, NULL, count, SPLICE_F_MOVE);
+  THROW_ON_ERROR(res);
+#else
+  return -ENOSYS;
+#endif
+}
+
+#define MAX_EPOLL_EVENTS 256
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_epollCreateNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz) {
+#ifdef __linux__
+  errno = 0;
+  int res = epoll_create1(EPOLL_CLOEXEC);
+  THROW_ON_ERROR(res);
+#else
+  return -ENOSYS;
+#endif
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_epollCtlNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, UNUSED jint epfd,
+    UNUSED jint op, UNUSED jint fd, UNUSED jint events) {
+#ifdef __linux__
+  struct epoll_event event;
+  memset(&event, 0, sizeof(event));
+  event.events = events;
+  event.data.fd = fd;
+  errno = 0;
+  int res = epoll_ctl(epfd, op, fd, &event);
+  THROW_ON_ERROR(res);
+#else
+  return -ENOSYS;
+#endif
+}
+
+jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_epollWaitNative(
+    UNUSED JNIEnv *env, UNUSED jclass clazz, UNUSED jint epfd,
+    UNUSED jintArray fds, UNUSED jintArray events, UNUSED jint max,
+    UNUSED jint timeout) {
+#ifdef __linux__
+  struct epoll_event ready[MAX_EPOLL_EVENTS];
+  jint ready_fds[MAX_EPOLL_EVENTS];
+  jint ready_events[MAX_EPOLL_EVENTS];
+  if (max > MAX_EPOLL_EVENTS)
+    max = MAX_EPOLL_EVENTS;
+  errno = 0;
+  int res = epoll_wait(epfd, ready, max, timeout);
+  if (res < 0 && errno == EINTR)
+    return 0;
+  for (int i = 0; i < res; ++i) {
+    ready_fds[i] = ready[i].data.fd;
+    ready_events[i] = ready[i].events;
+  }
+  if (res > 0) {
+    (*env)->SetIntArrayRegion(env, fds, 0, res, ready_fds);
+    (*env)->SetIntArrayRegion(env, events, 0, res, ready_events);
+  }
+  THROW_ON_ERROR(res);
+#else
+  return -ENOSYS;
+#endif
+}
+
 jstring JNICALL
 Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_errString(
     JNIEnv *env, UNUSED jobject object, jint code) {
@@ -128,6 +851,12 @@ Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_errString(
   return (*env)->NewStringUTF(env, err);
 }
 
+JNIEXPORT jint JNICALL
+Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_eagain(
+    UNUSED JNIEnv *env, UNUSED jobject object) {
+  return EAGAIN;
+}
+
 JNIEXPORT jint JNICALL
 Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_maxSocketLength(
     UNUSED JNIEnv *env, UNUSED jobject object) {
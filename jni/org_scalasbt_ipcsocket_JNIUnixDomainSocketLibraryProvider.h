@@ -39,6 +39,14 @@ JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryPro
 JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_acceptNative
   (JNIEnv *, jobject, jint);
 
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    acceptBatchNative
+ * Signature: (I[IIZ)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_acceptBatchNative
+  (JNIEnv *, jobject, jint, jintArray, jint, jboolean);
+
 /*
  * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
  * Method:    connectNative
@@ -63,6 +71,62 @@ JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryPro
 JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_writeNative
   (JNIEnv *, jobject, jint, jbyteArray, jint, jint);
 
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    readDirectNative
+ * Signature: (ILjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_readDirectNative
+  (JNIEnv *, jobject, jint, jobject, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    writeDirectNative
+ * Signature: (ILjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_writeDirectNative
+  (JNIEnv *, jobject, jint, jobject, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    receiveMessageNative
+ * Signature: (ILjava/lang/Object;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_receiveMessageNative
+  (JNIEnv *, jobject, jint, jobject, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    vectorNative
+ * Signature: (I[Ljava/lang/Object;[I[IIZ)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_vectorNative
+  (JNIEnv *, jobject, jint, jobjectArray, jintArray, jintArray, jint, jboolean);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    messagesNative
+ * Signature: (I[Ljava/lang/Object;[I[IIZ)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_messagesNative
+  (JNIEnv *, jobject, jint, jobjectArray, jintArray, jintArray, jint, jboolean);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    sendFdsNative
+ * Signature: (ILjava/lang/Object;II[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_sendFdsNative
+  (JNIEnv *, jobject, jint, jobject, jint, jint, jintArray, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    receiveFdsNative
+ * Signature: (ILjava/lang/Object;II[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_receiveFdsNative
+  (JNIEnv *, jobject, jint, jobject, jint, jint, jintArray, jint);
+
 /*
  * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
  * Method:    closeNative
@@ -79,6 +143,126 @@ JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryPro
 JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_shutdownNative
   (JNIEnv *, jobject, jint, jint);
 
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    setSocketOptionNative
+ * Signature: (IIII)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_setSocketOptionNative
+  (JNIEnv *, jobject, jint, jint, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    setSocketTimeoutNative
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_setSocketTimeoutNative
+  (JNIEnv *, jobject, jint, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    getSocketOptionNative
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_getSocketOptionNative
+  (JNIEnv *, jobject, jint, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    memfdCreateNative
+ * Signature: (Ljava/lang/String;J)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_memfdCreateNative
+  (JNIEnv *, jobject, jstring, jlong);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    eventfdCreateNative
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_eventfdCreateNative
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    setNonBlockingNative
+ * Signature: (IZ)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_setNonBlockingNative
+  (JNIEnv *, jobject, jint, jboolean);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    getStatusFlagsNative
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_getStatusFlagsNative
+  (JNIEnv *, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    pollNative
+ * Signature: ([I[I[III)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_pollNative
+  (JNIEnv *, jobject, jintArray, jintArray, jintArray, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    socketPairNative
+ * Signature: (III[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_socketPairNative
+  (JNIEnv *, jobject, jint, jint, jint, jintArray);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    pipeNative
+ * Signature: ([I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_pipeNative
+  (JNIEnv *, jobject, jintArray);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    sendFileNative
+ * Signature: (IIJI)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_sendFileNative
+  (JNIEnv *, jobject, jint, jint, jlong, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    spliceNative
+ * Signature: (III)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_spliceNative
+  (JNIEnv *, jobject, jint, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    epollCreateNative
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_epollCreateNative
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    epollCtlNative
+ * Signature: (IIII)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_epollCtlNative
+  (JNIEnv *, jobject, jint, jint, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    epollWaitNative
+ * Signature: (I[I[III)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_epollWaitNative
+  (JNIEnv *, jobject, jint, jintArray, jintArray, jint, jint);
+
 /*
  * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
  * Method:    maxSocketLength
@@ -95,6 +279,14 @@ JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryPro
 JNIEXPORT jstring JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_errString
   (JNIEnv *, jobject, jint);
 
+/*
+ * Class:     org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider
+ * Method:    eagain
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_JNIUnixDomainSocketLibraryProvider_eagain
+  (JNIEnv *, jobject);
+
 #ifdef __cplusplus
 }
 #endif
@@ -13,10 +13,58 @@ extern "C" {
 #define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_AF_LOCAL 1L
 #undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SOCK_STREAM
 #define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SOCK_STREAM 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SOCK_DGRAM
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SOCK_DGRAM 2L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SOCK_SEQPACKET
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SOCK_SEQPACKET 5L
 #undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SHUT_RD
 #define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SHUT_RD 0L
 #undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SHUT_WR
 #define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SHUT_WR 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ENOMEM
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ENOMEM 12L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ENFILE
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ENFILE 23L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EMFILE
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EMFILE 24L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SCM_RIGHTS
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SCM_RIGHTS 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_F_SETFD
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_F_SETFD 2L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_F_GETFL
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_F_GETFL 3L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_F_SETFL
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_F_SETFL 4L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_FD_CLOEXEC
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_FD_CLOEXEC 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLIN
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLIN 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLOUT
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLOUT 4L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLERR
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLERR 8L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLHUP
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLHUP 16L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLNVAL
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_POLLNVAL 32L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLIN
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLIN 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLOUT
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLOUT 4L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLERR
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLERR 8L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLHUP
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLHUP 16L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLRDHUP
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLRDHUP 8192L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLONESHOT
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLLONESHOT 1073741824L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLL_CTL_ADD
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLL_CTL_ADD 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLL_CTL_DEL
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLL_CTL_DEL 2L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLL_CTL_MOD
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_EPOLL_CTL_MOD 3L
 /*
  * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
  * Method:    socket
@@ -62,7 +110,7 @@ JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_conne
  * Method:    read
  * Signature: (ILjava/nio/ByteBuffer;I)I
  */
-JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_read
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_read__ILjava_nio_ByteBuffer_2I
   (JNIEnv *, jclass, jint, jobject, jint);
 
 /*
@@ -70,7 +118,63 @@ JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_read
  * Method:    write
  * Signature: (ILjava/nio/ByteBuffer;I)I
  */
-JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_write
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_write__ILjava_nio_ByteBuffer_2I
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    read
+ * Signature: (ILcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_read__ILcom_sun_jna_Pointer_2I
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    write
+ * Signature: (ILcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_write__ILcom_sun_jna_Pointer_2I
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    recv
+ * Signature: (ILcom/sun/jna/Pointer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_recv
+  (JNIEnv *, jclass, jint, jobject, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    readv
+ * Signature: (ILcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_readv
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    writev
+ * Signature: (ILcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_writev
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    sendmsg
+ * Signature: (ILcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_sendmsg
+  (JNIEnv *, jclass, jint, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    recvmsg
+ * Signature: (ILcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_recvmsg
   (JNIEnv *, jclass, jint, jobject, jint);
 
 /*
@@ -89,6 +193,54 @@ JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_close
 JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_shutdown
   (JNIEnv *, jclass, jint, jint);
 
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    setsockopt
+ * Signature: (III[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_setsockopt__III_3II
+  (JNIEnv *, jclass, jint, jint, jint, jintArray, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    setsockopt
+ * Signature: (IIILcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_setsockopt__IIILcom_sun_jna_Pointer_2I
+  (JNIEnv *, jclass, jint, jint, jint, jobject, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    getsockopt
+ * Signature: (III[I[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_getsockopt
+  (JNIEnv *, jclass, jint, jint, jint, jintArray, jintArray);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    socketpair
+ * Signature: (III[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_socketpair
+  (JNIEnv *, jclass, jint, jint, jint, jintArray);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    poll
+ * Signature: (Lcom/sun/jna/Pointer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_poll
+  (JNIEnv *, jclass, jobject, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary
+ * Method:    pipe
+ * Signature: ([I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_pipe
+  (JNIEnv *, jclass, jintArray);
+
 #ifdef __cplusplus
 }
 #endif
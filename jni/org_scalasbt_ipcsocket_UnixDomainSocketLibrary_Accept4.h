@@ -0,0 +1,25 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4 */
+
+#ifndef _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4
+#define _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4_SOCK_NONBLOCK
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4_SOCK_NONBLOCK 2048L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4_SOCK_CLOEXEC
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4_SOCK_CLOEXEC 524288L
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Accept4
+ * Method:    accept4
+ * Signature: (ILcom/sun/jna/Pointer;Lcom/sun/jna/Pointer;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024Accept4_accept4
+  (JNIEnv *, jclass, jint, jobject, jobject, jint);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,39 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll */
+
+#ifndef _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll
+#define _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll_EPOLL_CLOEXEC
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll_EPOLL_CLOEXEC 524288L
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll
+ * Method:    epoll_create1
+ * Signature: (I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024Epoll_epoll_1create1
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll
+ * Method:    epoll_ctl
+ * Signature: (IIILcom/sun/jna/Pointer;)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024Epoll_epoll_1ctl
+  (JNIEnv *, jclass, jint, jint, jint, jobject);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Epoll
+ * Method:    epoll_wait
+ * Signature: (ILcom/sun/jna/Pointer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024Epoll_epoll_1wait
+  (JNIEnv *, jclass, jint, jobject, jint, jint);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
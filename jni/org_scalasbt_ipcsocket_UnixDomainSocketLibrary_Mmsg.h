@@ -0,0 +1,31 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Mmsg */
+
+#ifndef _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Mmsg
+#define _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Mmsg
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Mmsg_MSG_WAITFORONE
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Mmsg_MSG_WAITFORONE 65536L
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Mmsg
+ * Method:    sendmmsg
+ * Signature: (ILcom/sun/jna/Pointer;II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024Mmsg_sendmmsg
+  (JNIEnv *, jclass, jint, jobject, jint, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_Mmsg
+ * Method:    recvmmsg
+ * Signature: (ILcom/sun/jna/Pointer;IILcom/sun/jna/Pointer;)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024Mmsg_recvmmsg
+  (JNIEnv *, jclass, jint, jobject, jint, jint, jobject);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
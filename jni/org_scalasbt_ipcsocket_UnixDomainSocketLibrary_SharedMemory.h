@@ -0,0 +1,41 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory */
+
+#ifndef _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory
+#define _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory_MFD_CLOEXEC
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory_MFD_CLOEXEC 1L
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory_EFD_CLOEXEC
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory_EFD_CLOEXEC 524288L
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory
+ * Method:    memfd_create
+ * Signature: (Ljava/lang/String;I)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024SharedMemory_memfd_1create
+  (JNIEnv *, jclass, jstring, jint);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory
+ * Method:    ftruncate
+ * Signature: (ILcom/sun/jna/NativeLong;)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024SharedMemory_ftruncate
+  (JNIEnv *, jclass, jint, jobject);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_SharedMemory
+ * Method:    eventfd
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024SharedMemory_eventfd
+  (JNIEnv *, jclass, jint, jint);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,31 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ZeroCopy */
+
+#ifndef _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ZeroCopy
+#define _Included_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ZeroCopy
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ZeroCopy_SPLICE_F_MOVE
+#define org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ZeroCopy_SPLICE_F_MOVE 1L
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ZeroCopy
+ * Method:    sendfile
+ * Signature: (IILcom/sun/jna/ptr/NativeLongByReference;Lcom/sun/jna/NativeLong;)Lcom/sun/jna/NativeLong;
+ */
+JNIEXPORT jobject JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024ZeroCopy_sendfile
+  (JNIEnv *, jclass, jint, jint, jobject, jobject);
+
+/*
+ * Class:     org_scalasbt_ipcsocket_UnixDomainSocketLibrary_ZeroCopy
+ * Method:    splice
+ * Signature: (ILcom/sun/jna/Pointer;ILcom/sun/jna/Pointer;Lcom/sun/jna/NativeLong;I)Lcom/sun/jna/NativeLong;
+ */
+JNIEXPORT jobject JNICALL Java_org_scalasbt_ipcsocket_UnixDomainSocketLibrary_00024ZeroCopy_splice
+  (JNIEnv *, jclass, jint, jobject, jint, jobject, jobject, jint);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,51 @@
+package org.scalasbt.ipcsocket;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded pool of reusable buffers for the buffered socket streams, so that opening and closing
+ * many short-lived connections doesn't allocate a new buffer, or a new direct buffer, for each one.
+ * Buffers are pooled separately by capacity and by whether they are direct, for a limited number of
+ * capacities; buffers of other capacities are left to the garbage collector.
+ */
+final class BufferPool {
+  /** The maximum number of idle buffers of each capacity and kind that are kept. */
+  private static final int MAX_IDLE = 32;
+
+  /** The maximum number of distinct capacities of each kind that are pooled. */
+  private static final int MAX_CAPACITIES = 8;
+
+  private static final ConcurrentHashMap<Integer, ArrayBlockingQueue<ByteBuffer>> heap =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<Integer, ArrayBlockingQueue<ByteBuffer>> direct =
+      new ConcurrentHashMap<>();
+
+  private BufferPool() {}
+
+  /** Returns a cleared buffer with the specified capacity, reusing an idle one if possible. */
+  static ByteBuffer acquire(int capacity, boolean isDirect) {
+    final ArrayBlockingQueue<ByteBuffer> idle = (isDirect ? direct : heap).get(capacity);
+    final ByteBuffer buffer = idle == null ? null : idle.poll();
+    if (buffer != null) {
+      buffer.clear();
+      return buffer;
+    }
+    return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  /** Returns a buffer to the pool. The caller must not use {@code buffer} afterwards. */
+  static void release(ByteBuffer buffer) {
+    final ConcurrentHashMap<Integer, ArrayBlockingQueue<ByteBuffer>> pool =
+        buffer.isDirect() ? direct : heap;
+    ArrayBlockingQueue<ByteBuffer> idle = pool.get(buffer.capacity());
+    if (idle == null) {
+      if (pool.size() >= MAX_CAPACITIES) {
+        return;
+      }
+      idle = pool.computeIfAbsent(buffer.capacity(), c -> new ArrayBlockingQueue<>(MAX_IDLE));
+    }
+    idle.offer(buffer);
+  }
+}
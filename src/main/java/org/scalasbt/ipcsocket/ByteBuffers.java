@@ -0,0 +1,47 @@
+package org.scalasbt.ipcsocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for the vectored and batched I/O calls of the {@link UnixDomainSocketLibraryProvider}s.
+ */
+final class ByteBuffers {
+  /** The maximum number of buffers that are passed to a single vectored I/O call. */
+  static final int MAX_IOV = 64;
+
+  /** The maximum number of datagrams that are passed to a single batched I/O call. */
+  static final int MAX_BATCH = 256;
+
+  private ByteBuffers() {}
+
+  /** Returns the number of buffers, starting at {@code offset}, to pass to one vectored call. */
+  static int iovCount(int length) {
+    return Math.min(length, MAX_IOV);
+  }
+
+  /** Returns the number of datagrams, starting at {@code offset}, to pass to one batched call. */
+  static int batchCount(int length) {
+    return Math.min(length, MAX_BATCH);
+  }
+
+  /**
+   * Returns the number of bytes of {@code buffer} that can be transferred after {@code total} bytes
+   * have already been assigned to the same call, keeping each call below 2GB.
+   */
+  static int remaining(ByteBuffer buffer, long total) {
+    return (int) Math.min(buffer.remaining(), Integer.MAX_VALUE - total);
+  }
+
+  /**
+   * Advances the positions of {@code buffers[offset]} to {@code buffers[offset + count - 1]}, in
+   * order, by a total of {@code bytes}.
+   */
+  static void advance(ByteBuffer[] buffers, int offset, int count, long bytes) {
+    for (int i = offset; i < offset + count && bytes > 0; i++) {
+      final ByteBuffer buffer = buffers[i];
+      final int n = (int) Math.min(buffer.remaining(), bytes);
+      buffer.position(buffer.position() + n);
+      bytes -= n;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.FileDescriptor;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+
+/**
+ * Looks up the native descriptors behind JDK file streams and channels so that they can be passed
+ * to {@code sendfile(2)} and {@code splice(2)}. The JDK doesn't expose them, so they are read
+ * reflectively. On JDK 16 and later this requires {@code --add-opens java.base/java.io=ALL-UNNAMED}
+ * and, for channels, {@code --add-opens java.base/sun.nio.ch=ALL-UNNAMED}; without them every
+ * lookup returns -1 and callers fall back to copying.
+ */
+final class FileDescriptors {
+  private static final Field DESCRIPTOR_FD = field("java.io.FileDescriptor", "fd");
+  private static final Field CHANNEL_FD = field("sun.nio.ch.FileChannelImpl", "fd");
+
+  private FileDescriptors() {}
+
+  /** Returns the descriptor of {@code descriptor}, or -1 if it is invalid or can't be read. */
+  static int of(FileDescriptor descriptor) {
+    if (DESCRIPTOR_FD == null || descriptor == null || !descriptor.valid()) {
+      return -1;
+    }
+    try {
+      return DESCRIPTOR_FD.getInt(descriptor);
+    } catch (IllegalAccessException e) {
+      return -1;
+    }
+  }
+
+  /** Returns the descriptor of a channel opened by the JDK, or -1 if it can't be read. */
+  static int of(FileChannel channel) {
+    if (CHANNEL_FD == null || !CHANNEL_FD.getDeclaringClass().isInstance(channel)) {
+      return -1;
+    }
+    try {
+      return of((FileDescriptor) CHANNEL_FD.get(channel));
+    } catch (IllegalAccessException | ClassCastException e) {
+      return -1;
+    }
+  }
+
+  private static Field field(String className, String name) {
+    try {
+      final Field field = Class.forName(className).getDeclaredField(name);
+      field.setAccessible(true);
+      return field;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+}
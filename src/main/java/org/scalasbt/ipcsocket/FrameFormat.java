@@ -0,0 +1,18 @@
+package org.scalasbt.ipcsocket;
+
+/**
+ * How {@link FrameReader} and {@link FrameWriter} encode the length that precedes each frame. Both
+ * ends of a connection must use the same format.
+ */
+public enum FrameFormat {
+  /** A 4 byte, big endian length. */
+  FIXED_32,
+  /**
+   * An unsigned LEB128 varint of 1 to 5 bytes, as used by protobuf's delimited streams. Frames of
+   * up to 127 bytes need a single byte of header.
+   */
+  VARINT;
+
+  /** The size of the longest header. */
+  static final int MAX_HEADER_SIZE = 5;
+}
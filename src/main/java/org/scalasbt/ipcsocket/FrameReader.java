@@ -0,0 +1,155 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads length-prefixed frames, as written by a {@link FrameWriter}, from a {@link
+ * UnixDomainSocket}. The socket is read in large chunks into a single reusable direct buffer, so
+ * that many small frames are typically decoded from one {@code read(2)}, and each frame is returned
+ * as a view of that buffer rather than being copied into a new array.
+ *
+ * <p>The buffer grows to hold frames that are larger than it, up to the maximum frame size. A
+ * reader is not safe for use by multiple threads.
+ */
+public class FrameReader {
+  /** The default size of the read buffer. */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /** The default length of the largest frame that is accepted. */
+  public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  private final UnixDomainSocket socket;
+  private final FrameFormat format;
+  private final int maxFrameSize;
+  private ByteBuffer buffer;
+  // The view of buffer that is returned by next().
+  private ByteBuffer frame;
+  // The unconsumed bytes are buffer[start, end).
+  private int start;
+  private int end;
+
+  /**
+   * Creates a reader.
+   *
+   * @param socket a connected socket in blocking mode
+   * @param format how the length of each frame is encoded
+   * @param bufferSize the initial size of the read buffer
+   * @param maxFrameSize the length of the largest frame that is accepted. A longer frame fails the
+   *     reader with an {@link IOException}, since the stream can't be resynchronized.
+   */
+  public FrameReader(
+      UnixDomainSocket socket, FrameFormat format, int bufferSize, int maxFrameSize) {
+    if (bufferSize < FrameFormat.MAX_HEADER_SIZE) {
+      throw new IllegalArgumentException(
+          "bufferSize must be at least " + FrameFormat.MAX_HEADER_SIZE);
+    }
+    if (maxFrameSize < 0) {
+      throw new IllegalArgumentException("maxFrameSize must not be negative");
+    }
+    this.socket = socket;
+    this.format = format;
+    this.maxFrameSize = maxFrameSize;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.frame = buffer.duplicate();
+  }
+
+  public FrameReader(UnixDomainSocket socket, FrameFormat format) {
+    this(socket, format, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FRAME_SIZE);
+  }
+
+  /**
+   * Reads the next frame. The returned buffer holds the frame between its position and its limit.
+   * It is only valid until the next call, which reuses it and may overwrite its contents.
+   *
+   * @return the frame, or null if the peer closed the connection after the last complete frame
+   * @throws EOFException if the peer closed the connection in the middle of a frame
+   */
+  public ByteBuffer next() throws IOException {
+    int length;
+    int headerSize = 0;
+    while (true) {
+      length = 0;
+      if (format == FrameFormat.FIXED_32) {
+        if (end - start >= 4) {
+          length = buffer.getInt(start);
+          headerSize = 4;
+        }
+      } else {
+        for (int i = 0; i < end - start; i++) {
+          final byte b = buffer.get(start + i);
+          if (i == FrameFormat.MAX_HEADER_SIZE - 1 && (b & 0xF0) != 0) {
+            throw new IOException("Malformed frame length");
+          }
+          length |= (b & 0x7F) << (7 * i);
+          if (b >= 0) {
+            headerSize = i + 1;
+            break;
+          }
+        }
+      }
+      if (headerSize > 0) {
+        break;
+      }
+      if (!fill(FrameFormat.MAX_HEADER_SIZE)) {
+        return null;
+      }
+    }
+    if (length < 0 || length > maxFrameSize) {
+      throw new IOException("Frame of " + length + " bytes exceeds the maximum of " + maxFrameSize);
+    }
+    final int size = headerSize + length;
+    while (end - start < size) {
+      if (!fill(size)) {
+        throw new EOFException("Connection closed in the middle of a frame");
+      }
+    }
+    frame.limit(start + size).position(start + headerSize);
+    start += size;
+    return frame;
+  }
+
+  /**
+   * Reads more bytes from the socket, first making room for a frame of {@code size} bytes,
+   * including its header, after the unconsumed bytes.
+   *
+   * @return false if the connection was closed
+   * @throws EOFException if the connection was closed with a partial frame in the buffer
+   */
+  private boolean fill(int size) throws IOException {
+    if (buffer.capacity() - start < size) {
+      final int pending = end - start;
+      if (buffer.capacity() < size) {
+        final ByteBuffer larger =
+            ByteBuffer.allocateDirect(
+                Math.max(size, Math.min(2 * buffer.capacity(), maxFrameSize)));
+        buffer.limit(end).position(start);
+        larger.put(buffer);
+        buffer = larger;
+        frame = buffer.duplicate();
+      } else {
+        buffer.limit(end).position(start);
+        buffer.compact();
+      }
+      start = 0;
+      end = pending;
+    } else if (start == end) {
+      start = 0;
+      end = 0;
+    }
+    buffer.limit(buffer.capacity()).position(end);
+    final int result = socket.read(buffer);
+    if (result == -1) {
+      if (start == end) {
+        return false;
+      }
+      throw new EOFException("Connection closed in the middle of a frame");
+    }
+    if (result == 0) {
+      throw new IOException(socket.isClosed() ? "Socket is closed" : "Socket is non-blocking");
+    }
+    end = buffer.position();
+    return true;
+  }
+}
@@ -0,0 +1,84 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes length-prefixed frames to a {@link UnixDomainSocket}. Each frame is sent with a single
+ * gathering write of a reused header buffer and the caller's buffer, so the payload is neither
+ * copied nor wrapped. Frames written by a writer are read back by a {@link FrameReader} with the
+ * same {@link FrameFormat}.
+ *
+ * <p>A writer is safe for use by multiple threads; each frame is written atomically with respect to
+ * the others.
+ */
+public class FrameWriter {
+  private final UnixDomainSocket socket;
+  private final FrameFormat format;
+  private final int maxFrameSize;
+  private final ByteBuffer header = ByteBuffer.allocateDirect(FrameFormat.MAX_HEADER_SIZE);
+  private final ByteBuffer[] buffers = new ByteBuffer[2];
+
+  /**
+   * Creates a writer.
+   *
+   * @param socket a connected socket in blocking mode
+   * @param format how the length of each frame is encoded
+   * @param maxFrameSize the length of the largest frame that may be written, which should not
+   *     exceed the maximum of the reader
+   */
+  public FrameWriter(UnixDomainSocket socket, FrameFormat format, int maxFrameSize) {
+    if (maxFrameSize < 0) {
+      throw new IllegalArgumentException("maxFrameSize must not be negative");
+    }
+    this.socket = socket;
+    this.format = format;
+    this.maxFrameSize = maxFrameSize;
+    buffers[0] = header;
+  }
+
+  /** Creates a writer for frames of up to {@link FrameReader#DEFAULT_MAX_FRAME_SIZE} bytes. */
+  public FrameWriter(UnixDomainSocket socket, FrameFormat format) {
+    this(socket, format, FrameReader.DEFAULT_MAX_FRAME_SIZE);
+  }
+
+  /** Writes the remaining bytes of {@code frame} as a single frame, advancing its position. */
+  public synchronized void write(ByteBuffer frame) throws IOException {
+    final int length = frame.remaining();
+    if (length > maxFrameSize) {
+      throw new IOException("Frame of " + length + " bytes exceeds the maximum of " + maxFrameSize);
+    }
+    header.clear();
+    if (format == FrameFormat.FIXED_32) {
+      header.putInt(length);
+    } else {
+      int value = length;
+      while ((value & ~0x7F) != 0) {
+        header.put((byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      header.put((byte) value);
+    }
+    header.flip();
+    buffers[1] = frame;
+    try {
+      while (header.hasRemaining() || frame.hasRemaining()) {
+        if (socket.write(buffers, 0, 2) == 0 && socket.isClosed()) {
+          throw new IOException("Socket is closed");
+        }
+      }
+    } finally {
+      buffers[1] = null;
+    }
+  }
+
+  /** Writes {@code len} bytes of {@code b}, starting at {@code off}, as a single frame. */
+  public void write(byte[] b, int off, int len) throws IOException {
+    UnixDomainSocketChannel.checkBounds(b.length, off, len);
+    write(ByteBuffer.wrap(b, off, len));
+  }
+
+  public void write(byte[] b) throws IOException {
+    write(b, 0, b.length);
+  }
+}
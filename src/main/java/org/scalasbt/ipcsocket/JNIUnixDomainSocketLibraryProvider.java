@@ -1,5 +1,9 @@
 package org.scalasbt.ipcsocket;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
 class JNIUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvider {
   private static final JNIUnixDomainSocketLibraryProvider instance =
       new JNIUnixDomainSocketLibraryProvider();
@@ -21,7 +25,12 @@ class JNIUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
   }
 
   public int accept(int fd) throws NativeErrorException {
-    return returnOrThrow(acceptNative(fd), 0);
+    return returnOrUnavailable(acceptNative(fd), 0);
+  }
+
+  public int accept(int fd, int[] fds, boolean nonBlocking) throws NativeErrorException {
+    if (fds.length == 0) return 0;
+    return returnOrUnavailable(acceptBatchNative(fd, fds, fds.length, nonBlocking), 0);
   }
 
   public int connect(int fd, byte[] address, int len) throws NativeErrorException {
@@ -29,11 +38,181 @@ class JNIUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
   }
 
   public int read(int fd, byte[] buffer, int offset, int len) throws NativeErrorException {
-    return returnOrThrow(readNative(fd, buffer, offset, len), -1);
+    return returnOrUnavailable(readNative(fd, buffer, offset, len), -1);
   }
 
   public int write(int fd, byte[] buffer, int offset, int len) throws NativeErrorException {
-    return returnOrThrow(writeNative(fd, buffer, offset, len), 0);
+    return returnOrUnavailable(writeNative(fd, buffer, offset, len), 0);
+  }
+
+  public int read(int fd, ByteBuffer buffer) throws NativeErrorException {
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    if (len == 0) return 0;
+    final int result;
+    if (buffer.isDirect()) {
+      result = returnOrUnavailable(readDirectNative(fd, buffer, position, len), 0);
+    } else {
+      result = read(fd, buffer.array(), buffer.arrayOffset() + position, len);
+    }
+    if (result > 0) buffer.position(position + result);
+    return result;
+  }
+
+  public int write(int fd, ByteBuffer buffer) throws NativeErrorException {
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    if (len == 0) return 0;
+    final int result;
+    if (buffer.isDirect()) {
+      result = returnOrUnavailable(writeDirectNative(fd, buffer, position, len), 0);
+    } else if (buffer.hasArray()) {
+      result = write(fd, buffer.array(), buffer.arrayOffset() + position, len);
+    } else {
+      final byte[] bytes = new byte[len];
+      buffer.duplicate().get(bytes);
+      result = write(fd, bytes, 0, len);
+    }
+    if (result > 0) buffer.position(position + result);
+    return result;
+  }
+
+  public int receiveMessage(int fd, ByteBuffer buffer) throws NativeErrorException {
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    final int result;
+    if (buffer.isDirect()) {
+      result = returnOrUnavailable(receiveMessageNative(fd, buffer, position, len), 0);
+    } else {
+      final int offset = buffer.arrayOffset() + position;
+      result = returnOrUnavailable(receiveMessageNative(fd, buffer.array(), offset, len), 0);
+    }
+    if (result > 0) buffer.position(position + Math.min(result, len));
+    return result;
+  }
+
+  public long readv(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return vector(fd, buffers, offset, length, false);
+  }
+
+  public long writev(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return vector(fd, buffers, offset, length, true);
+  }
+
+  private long vector(int fd, ByteBuffer[] buffers, int offset, int length, boolean isWrite)
+      throws NativeErrorException {
+    final int count = ByteBuffers.iovCount(length);
+    final Object[] targets = new Object[count];
+    final int[] offsets = new int[count];
+    final int[] lengths = new int[count];
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      final ByteBuffer buffer = buffers[offset + i];
+      final int len = ByteBuffers.remaining(buffer, total);
+      if (buffer.isDirect()) {
+        targets[i] = buffer;
+        offsets[i] = buffer.position();
+      } else if (buffer.hasArray() || !isWrite) {
+        targets[i] = buffer.array();
+        offsets[i] = buffer.arrayOffset() + buffer.position();
+      } else {
+        final byte[] bytes = new byte[len];
+        buffer.duplicate().get(bytes);
+        targets[i] = bytes;
+      }
+      lengths[i] = len;
+      total += len;
+    }
+    if (total == 0) return 0;
+    final int result =
+        returnOrUnavailable(vectorNative(fd, targets, offsets, lengths, count, isWrite), 0);
+    ByteBuffers.advance(buffers, offset, count, result);
+    return result;
+  }
+
+  public int sendFileDescriptors(int fd, ByteBuffer buffer, int[] fds) throws NativeErrorException {
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    final int result;
+    if (buffer.isDirect()) {
+      result = returnOrUnavailable(sendFdsNative(fd, buffer, position, len, fds, fds.length), 0);
+    } else if (buffer.hasArray()) {
+      final int offset = buffer.arrayOffset() + position;
+      result =
+          returnOrUnavailable(sendFdsNative(fd, buffer.array(), offset, len, fds, fds.length), 0);
+    } else {
+      final byte[] bytes = new byte[len];
+      buffer.duplicate().get(bytes);
+      result = returnOrUnavailable(sendFdsNative(fd, bytes, 0, len, fds, fds.length), 0);
+    }
+    if (result > 0) buffer.position(position + result);
+    return result;
+  }
+
+  public int receiveFileDescriptors(int fd, ByteBuffer buffer, int[] fds)
+      throws NativeErrorException {
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    final Object target;
+    final int offset;
+    if (buffer.isDirect()) {
+      target = buffer;
+      offset = position;
+    } else {
+      target = buffer.array();
+      offset = buffer.arrayOffset() + position;
+    }
+    Arrays.fill(fds, -1);
+    final int result =
+        returnOrUnavailable(receiveFdsNative(fd, target, offset, len, fds, fds.length), 0);
+    if (result > 0) buffer.position(position + result);
+    return result;
+  }
+
+  public int sendMessages(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return messages(fd, buffers, offset, length, true);
+  }
+
+  public int receiveMessages(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return messages(fd, buffers, offset, length, false);
+  }
+
+  private int messages(int fd, ByteBuffer[] buffers, int offset, int length, boolean isSend)
+      throws NativeErrorException {
+    final int count = ByteBuffers.batchCount(length);
+    if (count == 0) return 0;
+    final Object[] targets = new Object[count];
+    final int[] offsets = new int[count];
+    final int[] lengths = new int[count];
+    for (int i = 0; i < count; i++) {
+      final ByteBuffer buffer = buffers[offset + i];
+      if (!isSend && buffer.isReadOnly()) {
+        throw new ReadOnlyBufferException();
+      }
+      if (buffer.isDirect()) {
+        targets[i] = buffer;
+        offsets[i] = buffer.position();
+      } else if (buffer.hasArray()) {
+        targets[i] = buffer.array();
+        offsets[i] = buffer.arrayOffset() + buffer.position();
+      } else {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        targets[i] = bytes;
+      }
+      lengths[i] = buffer.remaining();
+    }
+    final int result =
+        returnOrUnavailable(messagesNative(fd, targets, offsets, lengths, count, isSend), 0);
+    for (int i = 0; i < result; i++) {
+      final ByteBuffer buffer = buffers[offset + i];
+      buffer.position(buffer.position() + Math.min(lengths[i], buffer.remaining()));
+    }
+    return result;
   }
 
   public int close(int fd) throws NativeErrorException {
@@ -44,6 +223,73 @@ class JNIUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
     return returnOrThrow(shutdownNative(fd, how), 0);
   }
 
+  public int setSocketOption(int fd, int level, int option, int value) throws NativeErrorException {
+    return returnOrThrow(setSocketOptionNative(fd, level, option, value), 0);
+  }
+
+  public int setSocketTimeout(int fd, int option, int timeoutMillis) throws NativeErrorException {
+    return returnOrThrow(setSocketTimeoutNative(fd, option, timeoutMillis), 0);
+  }
+
+  public int getSocketOption(int fd, int level, int option) throws NativeErrorException {
+    return returnOrThrow(getSocketOptionNative(fd, level, option), 0);
+  }
+
+  public int memfdCreate(String name, long size) throws NativeErrorException {
+    return returnOrThrow(memfdCreateNative(name, size), 0);
+  }
+
+  public int eventfdCreate() throws NativeErrorException {
+    return returnOrThrow(eventfdCreateNative(), 0);
+  }
+
+  public int setNonBlocking(int fd, boolean nonBlocking) throws NativeErrorException {
+    return returnOrThrow(setNonBlockingNative(fd, nonBlocking), 0);
+  }
+
+  public int getStatusFlags(int fd) throws NativeErrorException {
+    return returnOrThrow(getStatusFlagsNative(fd), 0);
+  }
+
+  public int poll(int[] fds, int[] events, int[] revents, int timeoutMillis)
+      throws NativeErrorException {
+    return returnOrThrow(pollNative(fds, events, revents, fds.length, timeoutMillis), 0);
+  }
+
+  public int socketPair(int domain, int type, int protocol, int[] fds) throws NativeErrorException {
+    return returnOrThrow(socketPairNative(domain, type, protocol, fds), 0);
+  }
+
+  public int pipe(int[] fds) throws NativeErrorException {
+    return returnOrThrow(pipeNative(fds), 0);
+  }
+
+  public int sendFile(int outFd, int inFd, long offset, int count) throws NativeErrorException {
+    return returnOrUnavailable(sendFileNative(outFd, inFd, offset, count), 0);
+  }
+
+  public int splice(int inFd, int outFd, int count) throws NativeErrorException {
+    return returnOrUnavailable(spliceNative(inFd, outFd, count), 0);
+  }
+
+  public int epollCreate() throws NativeErrorException {
+    return returnOrThrow(epollCreateNative(), 0);
+  }
+
+  public int epollCtl(int epfd, int op, int fd, int events) throws NativeErrorException {
+    return returnOrThrow(epollCtlNative(epfd, op, fd, events), 0);
+  }
+
+  public int epollWait(int epfd, int[] fds, int[] events, int timeoutMillis)
+      throws NativeErrorException {
+    final int max = Math.min(fds.length, events.length);
+    return returnOrThrow(epollWaitNative(epfd, fds, events, max, timeoutMillis), 0);
+  }
+
+  private int returnOrUnavailable(int result, int threshold) throws NativeErrorException {
+    return result == -EAGAIN ? UNAVAILABLE : returnOrThrow(result, threshold);
+  }
+
   private int returnOrThrow(int result, int threshold) throws NativeErrorException {
     if (result < threshold) {
       final String message = "Error " + (-result) + ": " + errString(-result);
@@ -60,21 +306,73 @@ class JNIUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
 
   native int acceptNative(int fd);
 
+  native int acceptBatchNative(int fd, int[] fds, int count, boolean nonBlocking);
+
   native int connectNative(int fd, byte[] address, int len);
 
   native int readNative(int fd, byte[] buffer, int offset, int len);
 
   native int writeNative(int fd, byte[] buffer, int offset, int len);
 
+  native int readDirectNative(int fd, ByteBuffer buffer, int offset, int len);
+
+  native int writeDirectNative(int fd, ByteBuffer buffer, int offset, int len);
+
+  native int receiveMessageNative(int fd, Object buffer, int offset, int len);
+
+  native int vectorNative(
+      int fd, Object[] buffers, int[] offsets, int[] lengths, int count, boolean isWrite);
+
+  native int messagesNative(
+      int fd, Object[] buffers, int[] offsets, int[] lengths, int count, boolean isSend);
+
+  native int sendFdsNative(int fd, Object buffer, int offset, int len, int[] fds, int count);
+
+  native int receiveFdsNative(int fd, Object buffer, int offset, int len, int[] fds, int max);
+
   native int closeNative(int fd);
 
   native int shutdownNative(int fd, int how);
 
+  native int setSocketOptionNative(int fd, int level, int option, int value);
+
+  native int setSocketTimeoutNative(int fd, int option, int timeoutMillis);
+
+  native int getSocketOptionNative(int fd, int level, int option);
+
+  native int memfdCreateNative(String name, long size);
+
+  native int eventfdCreateNative();
+
+  native int setNonBlockingNative(int fd, boolean nonBlocking);
+
+  native int getStatusFlagsNative(int fd);
+
+  native int pollNative(int[] fds, int[] events, int[] revents, int nfds, int timeoutMillis);
+
+  native int socketPairNative(int domain, int type, int protocol, int[] fds);
+
+  native int pipeNative(int[] fds);
+
+  native int sendFileNative(int outFd, int inFd, long offset, int count);
+
+  native int spliceNative(int inFd, int outFd, int count);
+
+  native int epollCreateNative();
+
+  native int epollCtlNative(int epfd, int op, int fd, int events);
+
+  native int epollWaitNative(int epfd, int[] fds, int[] events, int max, int timeoutMillis);
+
   public native int maxSocketLength();
 
   native String errString(int error);
 
+  native int eagain();
+
   static {
     NativeLoader.load();
   }
+
+  private static final int EAGAIN = instance.eagain();
 }
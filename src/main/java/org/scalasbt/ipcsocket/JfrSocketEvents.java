@@ -0,0 +1,135 @@
+package org.scalasbt.ipcsocket;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Flight Recorder events of {@link SocketEvents}. This is the only class that refers to the
+ * {@code jdk.jfr} API, and it is only loaded once that API is known to be present.
+ */
+final class JfrSocketEvents {
+  private JfrSocketEvents() {}
+
+  static boolean isAvailable() {
+    return FlightRecorder.isAvailable();
+  }
+
+  static Object begin(int type) {
+    final SocketEvent event;
+    switch (type) {
+      case SocketEvents.READ:
+        event = new ReadEvent();
+        break;
+      case SocketEvents.WRITE:
+        event = new WriteEvent();
+        break;
+      case SocketEvents.ACCEPT:
+        event = new AcceptEvent();
+        break;
+      case SocketEvents.CONNECT:
+        event = new ConnectEvent();
+        break;
+      default:
+        event = new CloseEvent();
+    }
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  static void commit(Object e, int fd, String path, long result) {
+    final SocketEvent event = (SocketEvent) e;
+    event.end();
+    if (event.shouldCommit()) {
+      event.fd = fd;
+      event.path = path;
+      event.setResult(result);
+      event.commit();
+    }
+  }
+
+  @Category("ipcsocket")
+  @StackTrace(true)
+  abstract static class SocketEvent extends Event {
+    @Label("File Descriptor")
+    int fd;
+
+    @Label("Path")
+    @Description("The path of the socket, if it was created from one")
+    String path;
+
+    void setResult(long result) {}
+  }
+
+  @Name("org.scalasbt.ipcsocket.SocketRead")
+  @Label("Unix Domain Socket Read")
+  @Threshold("20 ms")
+  static final class ReadEvent extends SocketEvent {
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("End of Stream")
+    boolean endOfStream;
+
+    @Override
+    void setResult(long result) {
+      bytesRead = Math.max(result, 0);
+      endOfStream = result < 0;
+    }
+  }
+
+  @Name("org.scalasbt.ipcsocket.SocketWrite")
+  @Label("Unix Domain Socket Write")
+  @Threshold("20 ms")
+  static final class WriteEvent extends SocketEvent {
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Override
+    void setResult(long result) {
+      bytesWritten = result;
+    }
+  }
+
+  @Name("org.scalasbt.ipcsocket.SocketAccept")
+  @Label("Unix Domain Socket Accept")
+  @Threshold("20 ms")
+  static final class AcceptEvent extends SocketEvent {
+    @Label("Connections")
+    int connections;
+
+    @Override
+    void setResult(long result) {
+      connections = (int) result;
+    }
+  }
+
+  @Name("org.scalasbt.ipcsocket.SocketConnect")
+  @Label("Unix Domain Socket Connect")
+  @Threshold("0 ms")
+  static final class ConnectEvent extends SocketEvent {
+    @Label("Connected")
+    boolean connected;
+
+    @Override
+    void setResult(long result) {
+      connected = result != 0;
+    }
+  }
+
+  @Name("org.scalasbt.ipcsocket.SocketClose")
+  @Label("Unix Domain Socket Close")
+  @Threshold("0 ms")
+  static final class CloseEvent extends SocketEvent {}
+}
@@ -11,6 +11,13 @@ public class NativeErrorException extends Exception {
   public NativeErrorException(final int code, final String message) {
     this.code = code;
     this.message = message;
+    SocketMetrics.recordNativeError(code);
+  }
+
+  /** Returns the error of a call that the provider doesn't support. */
+  static NativeErrorException unsupported(String function) {
+    return new NativeErrorException(
+        UnixDomainSocketLibrary.ENOSYS, function + " is not supported by this provider");
   }
 
   public int returnCode() {
@@ -7,16 +7,21 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.FileVisitor;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
+import java.nio.file.LinkOption;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 class NativeLoader {
   private static final AtomicBoolean loaded = new AtomicBoolean(false);
@@ -31,9 +36,6 @@ class NativeLoader {
     isWindows = os.startsWith("windows");
   }
 
-  private static final String pid =
-      isWindows ? "" : ManagementFactory.getRuntimeMXBean().getName().replaceAll("@.*", "");
-
   private static Path tmpDir() {
     String prop = System.getProperty("sbt.ipcsocket.tmpdir");
     String tmp = System.getProperty("java.io.tmpdir");
@@ -71,35 +73,32 @@ class NativeLoader {
         final String resource = prefix + "/" + arch + "/" + libName;
         final URL url = NativeLoader.class.getClassLoader().getResource(resource);
         if (url == null) throw new UnsatisfiedLinkError(resource + " not found on classpath");
+        final byte[] library;
+        try (final InputStream in = url.openStream()) {
+          library = readFully(in);
+        } catch (final IOException e) {
+          throw new UnsatisfiedLinkError(e.getMessage());
+        }
+        Path output;
         try {
-          final Path base = Files.createDirectories(tmpDir());
-          final Path output = Files.createTempFile(base, tempFilePrefix, extension);
-          try (final InputStream in = url.openStream();
-              final FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
-            int total = 0;
-            int read = 0;
-            byte[] buffer = new byte[1024];
-            do {
-              read = in.read(buffer);
-              if (read > 0) channel.write(ByteBuffer.wrap(buffer, 0, read));
-            } while (read > 0);
-            channel.close();
-          } catch (final IOException ex) {
-            throw new UnsatisfiedLinkError();
-          }
-          output.toFile().deleteOnExit();
-          if (!pid.isEmpty()) {
-            final Path pidFile = Paths.get(output.toString() + ".pid");
-            Files.write(pidFile, pid.getBytes());
-            pidFile.toFile().deleteOnExit();
+          output = cachedLibrary(tmpDir().resolve("cache"), library, libName);
+        } catch (final IOException e) {
+          output = null;
+        }
+        final boolean temporary = output == null;
+        try {
+          if (temporary) {
+            output = temporaryLibrary(library, extension);
           }
           try {
             System.load(output.toString());
           } catch (final UnsatisfiedLinkError e) {
-            Files.deleteIfExists(output);
+            if (temporary) Files.deleteIfExists(output);
             throw e;
           }
           loaded.set(true);
+          // The temporary libraries of earlier JVMs are cleaned up even when this one uses the
+          // cache, which would otherwise leave them behind for good.
           final Thread thread = new Thread(new CleanupRunnable(), "ipcsocket-jni-cleanup");
           thread.setDaemon(true);
           thread.start();
@@ -112,6 +111,127 @@ class NativeLoader {
     }
   }
 
+  private static byte[] readFully(final InputStream in) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    int length = 0;
+    int read;
+    while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+    }
+    return Arrays.copyOf(buffer, length);
+  }
+
+  /**
+   * Returns the path of a file with the contents of {@code library} in a subdirectory of {@code
+   * cache} named after its SHA-256 hash, writing it only if it doesn't exist yet. Every JVM that
+   * loads the same library shares the file, so the library is extracted once rather than on every
+   * start, and no cleanup is necessary. The file is written to a temporary file first and then
+   * renamed, so that a concurrent JVM never sees it partially written. The hash of an existing file
+   * is compared with that of {@code library} before it is used, because {@code cache} may be in a
+   * shared temporary directory. On posix systems the cache is only used if it belongs to the
+   * current user.
+   */
+  static Path cachedLibrary(final Path cache, final byte[] library, final String libName)
+      throws IOException {
+    final boolean isPosix =
+        FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    if (!Files.isDirectory(cache)) {
+      Files.createDirectories(cache.getParent());
+      try {
+        if (isPosix) {
+          Files.createDirectory(
+              cache,
+              PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+          Files.createDirectory(cache);
+        }
+      } catch (final FileAlreadyExistsException e) {
+      }
+    }
+    if (isPosix
+        && !Files.getOwner(cache, LinkOption.NOFOLLOW_LINKS)
+            .getName()
+            .equals(System.getProperty("user.name"))) {
+      throw new IOException(cache + " is not owned by the current user");
+    }
+    final String hash = hash(library);
+    final Path dir = Files.createDirectories(cache.resolve(hash));
+    final Path target = dir.resolve(libName);
+    if (hasContents(target, library.length, hash)) {
+      return target;
+    }
+    final Path temp = Files.createTempFile(dir, libName, ".tmp");
+    try {
+      Files.write(temp, library);
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (final IOException e) {
+      Files.deleteIfExists(temp);
+      // On windows the rename fails if another JVM has loaded the library that it replaces.
+      if (!hasContents(target, library.length, hash)) throw e;
+    }
+    return target;
+  }
+
+  private static boolean hasContents(final Path file, final long size, final String hash)
+      throws IOException {
+    if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || Files.size(file) != size) {
+      return false;
+    }
+    final MessageDigest digest = sha256();
+    try (final InputStream in = Files.newInputStream(file, LinkOption.NOFOLLOW_LINKS)) {
+      final byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return toHex(digest.digest()).equals(hash);
+  }
+
+  private static String hash(final byte[] library) {
+    return toHex(sha256().digest(library));
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(final byte[] digest) {
+    final StringBuilder builder = new StringBuilder();
+    // Half of the digest keeps the path short for windows.
+    for (int i = 0; i < 16; i++) {
+      builder.append(String.format("%02x", digest[i] & 0xFF));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Writes {@code library} to a new temporary file that is deleted when the JVM exits, for when the
+   * cache can't be used.
+   */
+  private static Path temporaryLibrary(final byte[] library, final String extension)
+      throws IOException {
+    final Path base = Files.createDirectories(tmpDir());
+    final Path output = Files.createTempFile(base, tempFilePrefix, extension);
+    Files.write(output, library);
+    output.toFile().deleteOnExit();
+    final String pid =
+        isWindows ? "" : ManagementFactory.getRuntimeMXBean().getName().replaceAll("@.*", "");
+    if (!pid.isEmpty()) {
+      final Path pidFile = Paths.get(output.toString() + ".pid");
+      Files.write(pidFile, pid.getBytes());
+      pidFile.toFile().deleteOnExit();
+    }
+    return output;
+  }
+
   /**
    * This cleans up the temporary shared libraries that are created by NativeLoader. The
    * deleteOnExit calls don't work on windows because the classloader has open handles to the shared
@@ -18,61 +18,162 @@ limitations under the License.
 package org.scalasbt.ipcsocket;
 
 import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Encapsulates a file descriptor plus a reference count to ensure close requests only close the
  * file descriptor once the last reference to the file descriptor is released.
  *
- * <p>If not explicitly closed, the file descriptor will be closed when this object is finalized.
+ * <p>The reference count and the close state share a single atomic word, so {@link #acquire()} and
+ * {@link #release()} never block and a reader and a writer on the same descriptor don't contend on
+ * a monitor.
+ *
+ * <p>If not explicitly closed, the file descriptor will be closed by a background thread after this
+ * object becomes unreachable.
  */
 public class ReferenceCountedFileDescriptor {
-  private int fd;
-  private int fdRefCount;
-  private boolean closePending;
+  // The low bits of the state hold the reference count.
+  private static final int CLOSE_PENDING = 1 << 30;
+  private static final int CLOSED = 1 << 29;
+  private static final int COUNT_MASK = CLOSED - 1;
+
+  private final int fd;
+  private final AtomicInteger state = new AtomicInteger(0);
   private final UnixDomainSocketLibraryProvider provider;
+  private final Cleanup cleanup;
 
   public ReferenceCountedFileDescriptor(int fd, UnixDomainSocketLibraryProvider provider) {
-    this.provider = provider;
-    this.fd = fd;
-    this.fdRefCount = 0;
-    this.closePending = false;
+    this(fd, provider, null);
   }
 
-  protected void finalize() throws IOException {
-    close();
+  /** Runs {@code onClose}, unless it is null, right before the descriptor is closed. */
+  ReferenceCountedFileDescriptor(
+      int fd, UnixDomainSocketLibraryProvider provider, Runnable onClose) {
+    this.provider = provider;
+    this.fd = fd;
+    this.cleanup = new Cleanup(this, fd, state, provider, onClose);
   }
 
-  public synchronized int acquire() {
-    fdRefCount++;
-    return fd;
+  /** Adds a reference and returns the descriptor, or -1 if it has been closed. */
+  public int acquire() {
+    return (state.incrementAndGet() & CLOSED) == 0 ? fd : -1;
   }
 
-  public synchronized void release() throws IOException {
-    fdRefCount--;
-    if (fdRefCount == 0 && closePending && fd != -1) {
-      doClose();
+  public void release() throws IOException {
+    while (true) {
+      final int current = state.get();
+      int next = current - 1;
+      final boolean close =
+          (next & COUNT_MASK) == 0 && (next & CLOSE_PENDING) != 0 && (next & CLOSED) == 0;
+      if (close) next |= CLOSED;
+      if (state.compareAndSet(current, next)) {
+        if (close) doClose();
+        return;
+      }
     }
   }
 
-  public synchronized void close() throws IOException {
-    if (fd == -1 || closePending) {
-      return;
-    }
-
-    if (fdRefCount == 0) {
-      doClose();
-    } else {
-      // Another thread has the FD. We'll close it when they release the reference.
-      closePending = true;
+  public void close() throws IOException {
+    while (true) {
+      final int current = state.get();
+      if ((current & (CLOSE_PENDING | CLOSED)) != 0) {
+        return;
+      }
+      // Another thread may have the FD, in which case it is closed when they release the
+      // reference.
+      final boolean close = (current & COUNT_MASK) == 0;
+      final int next = current | CLOSE_PENDING | (close ? CLOSED : 0);
+      if (state.compareAndSet(current, next)) {
+        if (close) doClose();
+        return;
+      }
     }
   }
 
   private void doClose() throws IOException {
+    cleanup.cancel();
+    cleanup.beforeClose();
     try {
       provider.close(fd);
-      fd = -1;
     } catch (NativeErrorException e) {
       throw new IOException(e);
     }
   }
+
+  /**
+   * Closes the descriptor of a {@link ReferenceCountedFileDescriptor} that was never closed once it
+   * has become phantom reachable. This plays the role of {@code java.lang.ref.Cleaner}, which isn't
+   * available on Java 8, and holds everything that is needed to close the descriptor except the
+   * owner itself.
+   */
+  private static final class Cleanup extends PhantomReference<ReferenceCountedFileDescriptor> {
+    private static final ReferenceQueue<ReferenceCountedFileDescriptor> queue =
+        new ReferenceQueue<>();
+    // Keeps the pending cleanups reachable until they have run or been cancelled.
+    private static final Set<Cleanup> pending =
+        Collections.newSetFromMap(new ConcurrentHashMap<Cleanup, Boolean>());
+
+    static {
+      final Thread thread = new Thread(Cleanup::reap, "ipcsocket-fd-cleaner");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private final int fd;
+    private final AtomicInteger state;
+    private final UnixDomainSocketLibraryProvider provider;
+    private final Runnable onClose;
+
+    Cleanup(
+        ReferenceCountedFileDescriptor owner,
+        int fd,
+        AtomicInteger state,
+        UnixDomainSocketLibraryProvider provider,
+        Runnable onClose) {
+      super(owner, queue);
+      this.fd = fd;
+      this.state = state;
+      this.provider = provider;
+      this.onClose = onClose;
+      pending.add(this);
+    }
+
+    void beforeClose() {
+      if (onClose != null) {
+        onClose.run();
+      }
+    }
+
+    void cancel() {
+      pending.remove(this);
+      clear();
+    }
+
+    private void run() {
+      pending.remove(this);
+      // Any remaining references are held by code that can no longer release them.
+      if ((state.getAndUpdate(s -> s | CLOSE_PENDING | CLOSED) & CLOSED) == 0) {
+        beforeClose();
+        try {
+          provider.close(fd);
+        } catch (NativeErrorException e) {
+        }
+      }
+    }
+
+    private static void reap() {
+      while (true) {
+        try {
+          ((Cleanup) queue.remove()).run();
+        } catch (InterruptedException e) {
+        } catch (RuntimeException e) {
+        }
+      }
+    }
+  }
 }
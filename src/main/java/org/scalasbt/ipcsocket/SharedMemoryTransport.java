@@ -0,0 +1,558 @@
+package org.scalasbt.ipcsocket;
+
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Carries a pair of byte streams between two processes connected by a {@link UnixDomainSocket}
+ * through shared memory rather than through the socket, so that bulk transfers copy bytes in memory
+ * instead of making a system call for every read and write.
+ *
+ * <p>One side calls {@link #connect(UnixDomainSocket, int)}, which creates a {@code memfd} holding
+ * a ring buffer for each direction and four {@code eventfd} doorbells, and passes them to the peer
+ * over the socket with {@code SCM_RIGHTS}. The other side calls {@link #accept(UnixDomainSocket)}
+ * and maps the same memory. From then on a writer only makes a system call to ring the doorbell of
+ * a reader that is waiting for data, and a reader only to ring that of a writer waiting for space.
+ * The socket stays open as the control channel: if the peer process exits, its end of the socket is
+ * closed and a waiting side fails instead of waiting forever.
+ *
+ * <p>If either side can't use shared memory, because it isn't running on Linux, because the
+ * initiator asked for a capacity of 0, or because creating or mapping the memory failed, the sides
+ * agree to fall back to the socket and the streams read and write it directly. {@link #isShared()}
+ * reports which transport was negotiated.
+ *
+ * <p>The streams are safe for use by multiple threads, but each is meant to be used by one.
+ */
+public class SharedMemoryTransport implements Closeable {
+  /** The default capacity of each ring buffer. */
+  public static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+  /** The largest capacity of a ring buffer. */
+  public static final int MAX_CAPACITY = 1 << 29;
+
+  private static final int MAGIC = 0x49504353;
+  private static final int HANDSHAKE_SIZE = 8;
+  // Each ring starts with a header whose fields are on separate cache lines, followed by the data.
+  private static final int HEAD = 0;
+  private static final int TAIL = 64;
+  private static final int CONSUMER_WAITING = 128;
+  private static final int PRODUCER_WAITING = 192;
+  private static final int PRODUCER_CLOSED = 256;
+  private static final int CONSUMER_CLOSED = 320;
+  private static final int DATA = 384;
+  // sun.misc.Unsafe's volatile accessors for raw addresses, bound to the instance, or null if it
+  // isn't available. They are looked up reflectively because it isn't part of the Java 8 API that
+  // the library is compiled against.
+  private static final MethodHandle GET_LONG_VOLATILE =
+      unsafeAccessor("getLongVolatile", long.class, Object.class, long.class);
+  private static final MethodHandle PUT_LONG_VOLATILE =
+      unsafeAccessor("putLongVolatile", void.class, Object.class, long.class, long.class);
+
+  private final UnixDomainSocket socket;
+  private final InputStream in;
+  private final OutputStream out;
+  private final boolean shared;
+  // Keeps the mapping alive while the streams use its address.
+  private final MappedByteBuffer memory;
+
+  private SharedMemoryTransport(UnixDomainSocket socket) {
+    this.socket = socket;
+    this.in = socket.getInputStream();
+    this.out = new SocketOutputStream(socket);
+    this.shared = false;
+    this.memory = null;
+  }
+
+  private SharedMemoryTransport(
+      UnixDomainSocket socket,
+      MappedByteBuffer memory,
+      int capacity,
+      int[] doorbells,
+      boolean initiator)
+      throws IOException {
+    final UnixDomainSocketLibraryProvider provider = socket.getProvider();
+    final int socketFd = socket.getFd();
+    final ReferenceCountedFileDescriptor[] fds = new ReferenceCountedFileDescriptor[4];
+    for (int i = 0; i < fds.length; i++) {
+      fds[i] = new ReferenceCountedFileDescriptor(doorbells[i], provider);
+    }
+    final long address = Pointer.nativeValue(Native.getDirectBufferPointer(memory));
+    // Ring 0 carries the initiator's output and ring 1 the acceptor's. Each ring has a data and a
+    // space doorbell.
+    final int outRing = initiator ? 0 : 1;
+    final int inRing = 1 - outRing;
+    final Ring output =
+        new Ring(
+            provider, memory, address, outRing, capacity, fds[2 * outRing], fds[2 * outRing + 1]);
+    final Ring input =
+        new Ring(provider, memory, address, inRing, capacity, fds[2 * inRing], fds[2 * inRing + 1]);
+    this.socket = socket;
+    this.in = new RingInputStream(input, socketFd);
+    this.out = new RingOutputStream(output, socketFd);
+    this.shared = true;
+    this.memory = memory;
+  }
+
+  /**
+   * Offers the peer a shared memory transport with ring buffers of at least {@code capacity} bytes
+   * and waits for it to {@link #accept(UnixDomainSocket) accept}.
+   *
+   * @param socket a connected socket in blocking mode that isn't used for anything else
+   * @param capacity the capacity of each ring buffer, which is rounded up to a power of two, or 0
+   *     to use the socket
+   */
+  public static SharedMemoryTransport connect(UnixDomainSocket socket, int capacity)
+      throws IOException {
+    if (capacity < 0 || capacity > MAX_CAPACITY) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity);
+    }
+    final UnixDomainSocketLibraryProvider provider = socket.getProvider();
+    int size = capacity == 0 ? 0 : Integer.highestOneBit(capacity - 1) << 1;
+    if (size == 0 && capacity > 0) {
+      size = 1;
+    }
+    int memfd = -1;
+    final int[] doorbells = {-1, -1, -1, -1};
+    MappedByteBuffer memory = null;
+    if (size > 0 && isSupported()) {
+      try {
+        memfd = provider.memfdCreate("ipcsocket", 2L * (DATA + size));
+        for (int i = 0; i < doorbells.length; i++) {
+          doorbells[i] = provider.eventfdCreate();
+        }
+        memory = map(memfd, 2L * (DATA + size));
+      } catch (NativeErrorException | IOException e) {
+        memory = null;
+      }
+    }
+    if (memory == null) {
+      size = 0;
+    }
+    try {
+      final ByteBuffer handshake = ByteBuffer.allocate(HANDSHAKE_SIZE);
+      handshake.putInt(MAGIC).putInt(size).flip();
+      if (size > 0) {
+        socket.sendFileDescriptors(
+            new int[] {memfd, doorbells[0], doorbells[1], doorbells[2], doorbells[3]}, handshake);
+      }
+      while (handshake.hasRemaining()) {
+        socket.write(handshake);
+      }
+      final int reply = socket.getInputStream().read();
+      if (reply == -1) {
+        throw new EOFException("The peer closed the connection during the handshake");
+      }
+      if (reply == 1 && size > 0) {
+        final SharedMemoryTransport transport =
+            new SharedMemoryTransport(socket, memory, size, doorbells, true);
+        doorbells[0] = doorbells[1] = doorbells[2] = doorbells[3] = -1;
+        return transport;
+      }
+      return new SharedMemoryTransport(socket);
+    } finally {
+      closeAll(provider, memfd, doorbells);
+    }
+  }
+
+  /**
+   * Waits for the peer to {@link #connect(UnixDomainSocket, int) offer} a shared memory transport
+   * and accepts it if this side can map the memory.
+   *
+   * @param socket a connected socket in blocking mode that isn't used for anything else
+   */
+  public static SharedMemoryTransport accept(UnixDomainSocket socket) throws IOException {
+    final UnixDomainSocketLibraryProvider provider = socket.getProvider();
+    final ByteBuffer handshake = ByteBuffer.allocate(HANDSHAKE_SIZE);
+    int[] fds = new int[0];
+    try {
+      while (handshake.hasRemaining()) {
+        final int[] received = socket.receiveFileDescriptors(handshake);
+        if (received == null) {
+          throw new EOFException("The peer closed the connection during the handshake");
+        }
+        if (received.length > 0) {
+          closeAll(provider, -1, fds);
+          fds = received;
+        }
+      }
+      handshake.flip();
+      if (handshake.getInt() != MAGIC) {
+        throw new IOException("The peer didn't offer a shared memory transport");
+      }
+      final int size = handshake.getInt();
+      MappedByteBuffer memory = null;
+      if (size > 0 && Integer.bitCount(size) == 1 && fds.length == 5 && isSupported()) {
+        try {
+          memory = map(fds[0], 2L * (DATA + size));
+        } catch (IOException e) {
+          memory = null;
+        }
+      }
+      socket.getOutputStream().write(memory == null ? 0 : 1);
+      if (memory == null) {
+        return new SharedMemoryTransport(socket);
+      }
+      final int[] doorbells = {fds[1], fds[2], fds[3], fds[4]};
+      final SharedMemoryTransport transport =
+          new SharedMemoryTransport(socket, memory, size, doorbells, false);
+      fds = new int[] {fds[0]};
+      return transport;
+    } finally {
+      closeAll(provider, -1, fds);
+    }
+  }
+
+  /** Returns true if the streams use shared memory, or false if they fell back to the socket. */
+  public boolean isShared() {
+    return shared;
+  }
+
+  /** Returns the stream of bytes written by the peer. */
+  public InputStream getInputStream() {
+    return in;
+  }
+
+  /**
+   * Returns the stream of bytes to the peer. Closing it makes the peer's input stream reach its end
+   * once it has read everything before.
+   */
+  public OutputStream getOutputStream() {
+    return out;
+  }
+
+  /** Closes both streams and the socket. */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (shared) {
+        // Wakes a thread of this side that is waiting for its doorbell.
+        socket.shutdownInput();
+        out.close();
+        in.close();
+      }
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static boolean isSupported() {
+    return Platform.isLinux() && GET_LONG_VOLATILE != null && PUT_LONG_VOLATILE != null;
+  }
+
+  private static MappedByteBuffer map(int fd, long size) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            Paths.get("/proc/self/fd/" + fd), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private static void closeAll(UnixDomainSocketLibraryProvider provider, int fd, int[] fds) {
+    for (int i = -1; i < fds.length; i++) {
+      final int toClose = i == -1 ? fd : fds[i];
+      if (toClose != -1) {
+        try {
+          provider.close(toClose);
+        } catch (NativeErrorException e) {
+        }
+      }
+    }
+  }
+
+  private static MethodHandle unsafeAccessor(String name, Class<?> result, Class<?>... params) {
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(unsafeClass, name, MethodType.methodType(result, params))
+          .bindTo(field.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A single producer, single consumer ring buffer. The head and tail only ever grow; their
+   * difference is the number of bytes in the ring. A side that has to wait sets its waiting flag,
+   * checks the ring again and then waits for its doorbell, and the other side rings the doorbell
+   * after an update if it sees the flag, so a wakeup can't be lost.
+   */
+  private static final class Ring {
+    private final UnixDomainSocketLibraryProvider provider;
+    // Only used by the stream that owns the ring, under its lock.
+    private final ByteBuffer data;
+    private final long header;
+    private final int capacity;
+    private final ReferenceCountedFileDescriptor dataDoorbell;
+    private final ReferenceCountedFileDescriptor spaceDoorbell;
+    private final byte[] signal = {1, 0, 0, 0, 0, 0, 0, 0};
+    private final byte[] drain = new byte[8];
+
+    Ring(
+        UnixDomainSocketLibraryProvider provider,
+        MappedByteBuffer memory,
+        long address,
+        int index,
+        int capacity,
+        ReferenceCountedFileDescriptor dataDoorbell,
+        ReferenceCountedFileDescriptor spaceDoorbell) {
+      this.provider = provider;
+      final int start = index * (DATA + capacity);
+      final ByteBuffer view = memory.duplicate();
+      view.limit(start + DATA + capacity).position(start + DATA);
+      this.data = view.slice();
+      this.header = address + start;
+      this.capacity = capacity;
+      this.dataDoorbell = dataDoorbell;
+      this.spaceDoorbell = spaceDoorbell;
+    }
+
+    long get(int field) {
+      try {
+        return (long) GET_LONG_VOLATILE.invokeExact((Object) null, header + field);
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+
+    void set(int field, long value) {
+      try {
+        PUT_LONG_VOLATILE.invokeExact((Object) null, header + field, value);
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+
+    /** Rings {@code doorbell} if the other side set {@code waitingField}. */
+    void wake(int waitingField, ReferenceCountedFileDescriptor doorbell) throws IOException {
+      if (get(waitingField) != 0) {
+        ring(doorbell);
+      }
+    }
+
+    void ring(ReferenceCountedFileDescriptor doorbell) throws IOException {
+      try {
+        final int fd = doorbell.acquire();
+        if (fd != -1) {
+          provider.write(fd, signal, 0, signal.length);
+        }
+      } catch (NativeErrorException e) {
+        throw new IOException(e);
+      } finally {
+        doorbell.release();
+      }
+    }
+
+    /**
+     * Waits until {@code doorbell} is rung or the socket becomes readable, which only happens once
+     * the peer closed it.
+     *
+     * @return false if the socket became readable without the doorbell ringing
+     */
+    boolean await(ReferenceCountedFileDescriptor doorbell, int socketFd) throws IOException {
+      try {
+        final int fd = doorbell.acquire();
+        if (fd == -1) {
+          throw new IOException("Transport is closed");
+        }
+        final int[] revents = new int[2];
+        provider.poll(
+            new int[] {fd, socketFd},
+            new int[] {UnixDomainSocketLibrary.POLLIN, UnixDomainSocketLibrary.POLLIN},
+            revents,
+            -1);
+        if (revents[0] != 0) {
+          provider.read(fd, drain, 0, drain.length);
+          return true;
+        }
+        return revents[1] == 0;
+      } catch (NativeErrorException e) {
+        throw new IOException(e);
+      } finally {
+        doorbell.release();
+      }
+    }
+
+    void closeDoorbells() throws IOException {
+      dataDoorbell.close();
+      spaceDoorbell.close();
+    }
+  }
+
+  private static final class RingInputStream extends InputStream {
+    private final Ring ring;
+    private final int socketFd;
+    private final int mask;
+    private final byte[] single = new byte[1];
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private long head;
+
+    RingInputStream(Ring ring, int socketFd) {
+      this.ring = ring;
+      this.socketFd = socketFd;
+      this.mask = ring.capacity - 1;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+      return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+      if (closed.get()) {
+        throw new IOException("Stream is closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      long tail = ring.get(TAIL);
+      if (tail == head) {
+        ring.set(CONSUMER_WAITING, 1);
+        try {
+          while ((tail = ring.get(TAIL)) == head) {
+            if (ring.get(PRODUCER_CLOSED) != 0) {
+              if ((tail = ring.get(TAIL)) == head) {
+                return -1;
+              }
+              break;
+            }
+            if (!ring.await(ring.dataDoorbell, socketFd) && ring.get(TAIL) == head) {
+              if (ring.get(PRODUCER_CLOSED) != 0) {
+                return -1;
+              }
+              throw new EOFException("The peer closed the connection");
+            }
+          }
+        } finally {
+          ring.set(CONSUMER_WAITING, 0);
+        }
+      }
+      final int offset = (int) head & mask;
+      final int count = (int) Math.min(Math.min(tail - head, len), ring.capacity - offset);
+      ring.data.position(offset);
+      ring.data.get(b, off, count);
+      head += count;
+      ring.set(HEAD, head);
+      ring.wake(PRODUCER_WAITING, ring.spaceDoorbell);
+      return count;
+    }
+
+    @Override
+    public synchronized int available() {
+      return closed.get() ? 0 : (int) (ring.get(TAIL) - head);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed.compareAndSet(false, true)) {
+        ring.set(CONSUMER_CLOSED, 1);
+        ring.ring(ring.spaceDoorbell);
+        ring.closeDoorbells();
+      }
+    }
+  }
+
+  /** Writes to the socket, and shuts down its output when closed like a ring would. */
+  private static final class SocketOutputStream extends FilterOutputStream {
+    private final UnixDomainSocket socket;
+
+    SocketOutputStream(UnixDomainSocket socket) {
+      super(socket.getOutputStream());
+      this.socket = socket;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.shutdownOutput();
+    }
+  }
+
+  private static final class RingOutputStream extends OutputStream {
+    private final Ring ring;
+    private final int socketFd;
+    private final int mask;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private long tail;
+
+    RingOutputStream(Ring ring, int socketFd) {
+      this.ring = ring;
+      this.socketFd = socketFd;
+      this.mask = ring.capacity - 1;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+      if (closed.get()) {
+        throw new IOException("Stream is closed");
+      }
+      while (len > 0) {
+        long free = ring.capacity - (tail - ring.get(HEAD));
+        if (free == 0) {
+          ring.set(PRODUCER_WAITING, 1);
+          try {
+            while ((free = ring.capacity - (tail - ring.get(HEAD))) == 0) {
+              if (ring.get(CONSUMER_CLOSED) != 0) {
+                break;
+              }
+              if (!ring.await(ring.spaceDoorbell, socketFd)) {
+                throw new IOException("The peer closed the connection");
+              }
+            }
+          } finally {
+            ring.set(PRODUCER_WAITING, 0);
+          }
+        }
+        if (ring.get(CONSUMER_CLOSED) != 0) {
+          throw new IOException("The peer closed its input");
+        }
+        final int offset = (int) tail & mask;
+        final int count = (int) Math.min(Math.min(free, len), ring.capacity - offset);
+        ring.data.position(offset);
+        ring.data.put(b, off, count);
+        tail += count;
+        off += count;
+        len -= count;
+        ring.set(TAIL, tail);
+        ring.wake(CONSUMER_WAITING, ring.dataDoorbell);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed.compareAndSet(false, true)) {
+        ring.set(PRODUCER_CLOSED, 1);
+        ring.ring(ring.dataDoorbell);
+        ring.closeDoorbells();
+      }
+    }
+  }
+}
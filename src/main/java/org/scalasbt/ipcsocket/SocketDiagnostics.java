@@ -0,0 +1,113 @@
+package org.scalasbt.ipcsocket;
+
+import com.sun.jna.Platform;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Queries the Linux {@code sock_diag(7)} netlink interface for the state of a Unix domain socket
+ * that isn't available through {@code getsockopt(2)}. The netlink socket is driven through the
+ * ordinary provider calls, so this works the same with JNA and JNI. The kernel only answers if it
+ * was built with {@code CONFIG_UNIX_DIAG}; otherwise, and on other platforms, every query returns
+ * -1.
+ */
+final class SocketDiagnostics {
+  private static final int AF_NETLINK = 16;
+  private static final int NETLINK_SOCK_DIAG = 4;
+  private static final int SOCK_DIAG_BY_FAMILY = 20;
+  private static final int NLM_F_REQUEST = 1;
+  private static final int NLMSG_ERROR = 2;
+  private static final int NLMSG_HEADER_SIZE = 16;
+  private static final int UNIX_DIAG_MSG_SIZE = 16;
+  private static final int TCP_LISTEN = 10;
+  private static final int UDIAG_SHOW_RQLEN = 0x10;
+  private static final int UNIX_DIAG_RQLEN = 4;
+  private static final Pattern SOCKET_LINK = Pattern.compile("socket:\\[(\\d+)\\]");
+
+  private SocketDiagnostics() {}
+
+  /**
+   * Returns the number of connections that wait in the backlog of the listening socket {@code fd}
+   * to be accepted, or -1 if the kernel doesn't report it.
+   */
+  static int acceptQueueDepth(UnixDomainSocketLibraryProvider provider, int fd) {
+    if (!Platform.isLinux()) {
+      return -1;
+    }
+    final long inode = inode(fd);
+    if (inode == -1) {
+      return -1;
+    }
+    final int diagFd;
+    try {
+      diagFd = provider.socket(AF_NETLINK, UnixDomainSocketLibrary.SOCK_DGRAM, NETLINK_SOCK_DIAG);
+    } catch (NativeErrorException e) {
+      return -1;
+    }
+    try {
+      // struct nlmsghdr followed by struct unix_diag_req. Without NLM_F_DUMP the kernel looks up
+      // the socket by inode; a cookie of all ones skips the cookie check.
+      final ByteBuffer request =
+          ByteBuffer.allocateDirect(NLMSG_HEADER_SIZE + 24).order(ByteOrder.nativeOrder());
+      request.putInt(request.capacity());
+      request.putShort((short) SOCK_DIAG_BY_FAMILY).putShort((short) NLM_F_REQUEST);
+      request.putInt(1).putInt(0);
+      request.put((byte) UnixDomainSocketLibrary.AF_LOCAL).put((byte) 0).putShort((short) 0);
+      request.putInt(1 << TCP_LISTEN).putInt((int) inode).putInt(UDIAG_SHOW_RQLEN);
+      request.putInt(-1).putInt(-1);
+      request.flip();
+      provider.write(diagFd, request);
+      final ByteBuffer response = ByteBuffer.allocateDirect(8192).order(ByteOrder.nativeOrder());
+      if (provider.read(diagFd, response) <= 0) {
+        return -1;
+      }
+      response.flip();
+      return queuedConnections(response);
+    } catch (NativeErrorException e) {
+      return -1;
+    } finally {
+      try {
+        provider.close(diagFd);
+      } catch (NativeErrorException e) {
+      }
+    }
+  }
+
+  /** Finds the UNIX_DIAG_RQLEN attribute, whose first field is the accept queue length. */
+  private static int queuedConnections(ByteBuffer response) {
+    if (response.remaining() < NLMSG_HEADER_SIZE + UNIX_DIAG_MSG_SIZE
+        || response.getShort(4) == NLMSG_ERROR) {
+      return -1;
+    }
+    final int end = Math.min(response.getInt(0), response.remaining());
+    int offset = NLMSG_HEADER_SIZE + UNIX_DIAG_MSG_SIZE;
+    while (offset + 4 <= end) {
+      final int length = response.getShort(offset) & 0xFFFF;
+      final int type = response.getShort(offset + 2) & 0xFFFF;
+      if (length < 4) {
+        return -1;
+      }
+      if (type == UNIX_DIAG_RQLEN && length >= 12) {
+        return response.getInt(offset + 4);
+      }
+      offset += (length + 3) & ~3;
+    }
+    return -1;
+  }
+
+  /** Returns the inode that identifies the socket {@code fd} to the kernel, or -1. */
+  private static long inode(int fd) {
+    try {
+      final String link = Files.readSymbolicLink(Paths.get("/proc/self/fd/" + fd)).toString();
+      final Matcher matcher = SOCKET_LINK.matcher(link);
+      return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    } catch (IOException | RuntimeException e) {
+      return -1;
+    }
+  }
+}
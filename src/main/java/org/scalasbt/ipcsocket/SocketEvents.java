@@ -0,0 +1,50 @@
+package org.scalasbt.ipcsocket;
+
+/**
+ * Emits JDK Flight Recorder events for socket operations, since the JDK's own socket events don't
+ * fire for sockets that are implemented with native calls. The events are only loaded on JVMs that
+ * have the {@code jdk.jfr} API, which includes Java 8 from update 262, so this class never refers
+ * to it directly. Setting the system property {@code sbt.ipcsocket.jfr} to {@code false} turns the
+ * events off.
+ *
+ * <p>An operation calls {@link #begin(int)} before it starts and {@link #commit(Object, int,
+ * String, long)} once it completed. If no recording has the event enabled, {@code begin} returns
+ * null and committing it costs nothing.
+ */
+final class SocketEvents {
+  static final int READ = 0;
+  static final int WRITE = 1;
+  static final int ACCEPT = 2;
+  static final int CONNECT = 3;
+  static final int CLOSE = 4;
+
+  private static final boolean ENABLED =
+      !"false".equals(System.getProperty("sbt.ipcsocket.jfr")) && isAvailable();
+
+  private SocketEvents() {}
+
+  /** Starts timing an operation of {@code type}, returning null if its event isn't enabled. */
+  static Object begin(int type) {
+    return ENABLED ? JfrSocketEvents.begin(type) : null;
+  }
+
+  /**
+   * Commits {@code event} for the descriptor {@code fd} if the operation took longer than the
+   * event's threshold. {@code result} is the number of bytes read or written, -1 at the end of the
+   * stream, the number of connections accepted, or whether a connect succeeded.
+   */
+  static void commit(Object event, int fd, String path, long result) {
+    if (event != null) {
+      JfrSocketEvents.commit(event, fd, path, result);
+    }
+  }
+
+  private static boolean isAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event", false, SocketEvents.class.getClassLoader());
+      return JfrSocketEvents.isAvailable();
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+}
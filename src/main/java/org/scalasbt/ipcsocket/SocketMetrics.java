@@ -0,0 +1,508 @@
+package org.scalasbt.ipcsocket;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Counts the I/O of all the Unix domain sockets in this process: the bytes and operations read and
+ * written, accepted connections, successful and failed connects, the errors returned by native
+ * calls by {@code errno}, and the distribution of the time spent in each kind of operation.
+ *
+ * <p>The counters are striped, so recording from many threads doesn't contend, and the latencies
+ * are kept in power of two buckets, so recording one is a few increments. Setting the system
+ * property {@code sbt.ipcsocket.metrics} to {@code false} turns recording off entirely. {@link
+ * #snapshot()} returns a copy of the current values, and {@link #registerMBean()} exposes them
+ * through JMX, which happens at startup if the system property {@code sbt.ipcsocket.jmx} is set.
+ *
+ * <p>Each socket also keeps {@link Counters} of its own I/O, which {@link
+ * UnixDomainSocket#getMetrics()} and {@link UnixDomainServerSocket#getMetrics()} return. Latencies
+ * are only kept for the whole process.
+ */
+public final class SocketMetrics implements SocketMetricsMXBean {
+  /** The name of the MBean registered by {@link #registerMBean()}. */
+  public static final String OBJECT_NAME = "org.scalasbt.ipcsocket:type=SocketMetrics";
+
+  static final boolean ENABLED = !"false".equals(System.getProperty("sbt.ipcsocket.metrics"));
+
+  private static final SocketMetrics INSTANCE = new SocketMetrics();
+
+  static {
+    if (ENABLED && Boolean.getBoolean("sbt.ipcsocket.jmx")) {
+      try {
+        registerMBean();
+      } catch (JMException | RuntimeException e) {
+        // JMX isn't usable in this JVM; the metrics remain available programmatically.
+      }
+    }
+  }
+
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder readOps = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder writeOps = new LongAdder();
+  private final LongAdder accepts = new LongAdder();
+  private final LongAdder connects = new LongAdder();
+  private final LongAdder connectFailures = new LongAdder();
+  private final ConcurrentHashMap<Integer, LongAdder> nativeErrors = new ConcurrentHashMap<>();
+  private final Histogram readLatency = new Histogram();
+  private final Histogram writeLatency = new Histogram();
+  private final Histogram acceptLatency = new Histogram();
+  private final Histogram connectLatency = new Histogram();
+
+  private SocketMetrics() {}
+
+  /** Returns the metrics of this process. */
+  public static SocketMetrics get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server under {@link #OBJECT_NAME}, unless they
+   * are registered already.
+   */
+  public static synchronized ObjectName registerMBean() throws JMException {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = new ObjectName(OBJECT_NAME);
+    if (!server.isRegistered(name)) {
+      server.registerMBean(INSTANCE, name);
+    }
+    return name;
+  }
+
+  /** Returns a copy of the current values. */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  /** Sets every counter back to zero and empties the latency distributions. */
+  public void reset() {
+    bytesRead.reset();
+    readOps.reset();
+    bytesWritten.reset();
+    writeOps.reset();
+    accepts.reset();
+    connects.reset();
+    connectFailures.reset();
+    nativeErrors.clear();
+    readLatency.reset();
+    writeLatency.reset();
+    acceptLatency.reset();
+    connectLatency.reset();
+  }
+
+  /** Returns the start time to pass to one of the record methods. */
+  static long start() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records a read from the socket with {@code counters} that started at {@code start} and returned
+   * {@code bytes}.
+   */
+  static void recordRead(Counters counters, long start, long bytes) {
+    if (ENABLED) {
+      INSTANCE.readLatency.record(System.nanoTime() - start);
+      INSTANCE.readOps.increment();
+      counters.readOps.increment();
+      if (bytes > 0) {
+        INSTANCE.bytesRead.add(bytes);
+        counters.bytesRead.add(bytes);
+      }
+    }
+  }
+
+  /**
+   * Records a write to the socket with {@code counters} that started at {@code start} and wrote
+   * {@code bytes}.
+   */
+  static void recordWrite(Counters counters, long start, long bytes) {
+    if (ENABLED) {
+      INSTANCE.writeLatency.record(System.nanoTime() - start);
+      INSTANCE.writeOps.increment();
+      counters.writeOps.increment();
+      if (bytes > 0) {
+        INSTANCE.bytesWritten.add(bytes);
+        counters.bytesWritten.add(bytes);
+      }
+    }
+  }
+
+  /**
+   * Records an accept by the server socket with {@code counters} that started at {@code start} and
+   * accepted {@code count} connections.
+   */
+  static void recordAccept(Counters counters, long start, int count) {
+    if (ENABLED) {
+      INSTANCE.acceptLatency.record(System.nanoTime() - start);
+      INSTANCE.accepts.add(count);
+      counters.accepts.add(count);
+    }
+  }
+
+  /** Records a connect that started at {@code start}. */
+  static void recordConnect(long start, boolean connected) {
+    if (ENABLED) {
+      INSTANCE.connectLatency.record(System.nanoTime() - start);
+      (connected ? INSTANCE.connects : INSTANCE.connectFailures).increment();
+    }
+  }
+
+  /** Records an error returned by a native call. */
+  static void recordNativeError(int errno) {
+    if (ENABLED) {
+      INSTANCE.nativeErrors.computeIfAbsent(errno, e -> new LongAdder()).increment();
+    }
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getReadOps() {
+    return readOps.sum();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public long getWriteOps() {
+    return writeOps.sum();
+  }
+
+  @Override
+  public long getAccepts() {
+    return accepts.sum();
+  }
+
+  @Override
+  public long getConnects() {
+    return connects.sum();
+  }
+
+  @Override
+  public long getConnectFailures() {
+    return connectFailures.sum();
+  }
+
+  @Override
+  public Map<Integer, Long> getNativeErrors() {
+    final Map<Integer, Long> result = new TreeMap<>();
+    nativeErrors.forEach((errno, count) -> result.put(errno, count.sum()));
+    return Collections.unmodifiableMap(result);
+  }
+
+  @Override
+  public Latency getReadLatency() {
+    return readLatency.latency();
+  }
+
+  @Override
+  public Latency getWriteLatency() {
+    return writeLatency.latency();
+  }
+
+  @Override
+  public Latency getAcceptLatency() {
+    return acceptLatency.latency();
+  }
+
+  @Override
+  public Latency getConnectLatency() {
+    return connectLatency.latency();
+  }
+
+  /** A copy of the values of the {@link SocketMetrics} at the time it was taken. */
+  public static final class Snapshot implements SocketMetricsMXBean {
+    private final long bytesRead;
+    private final long readOps;
+    private final long bytesWritten;
+    private final long writeOps;
+    private final long accepts;
+    private final long connects;
+    private final long connectFailures;
+    private final Map<Integer, Long> nativeErrors;
+    private final Latency readLatency;
+    private final Latency writeLatency;
+    private final Latency acceptLatency;
+    private final Latency connectLatency;
+
+    private Snapshot(SocketMetrics metrics) {
+      bytesRead = metrics.getBytesRead();
+      readOps = metrics.getReadOps();
+      bytesWritten = metrics.getBytesWritten();
+      writeOps = metrics.getWriteOps();
+      accepts = metrics.getAccepts();
+      connects = metrics.getConnects();
+      connectFailures = metrics.getConnectFailures();
+      nativeErrors = metrics.getNativeErrors();
+      readLatency = metrics.getReadLatency();
+      writeLatency = metrics.getWriteLatency();
+      acceptLatency = metrics.getAcceptLatency();
+      connectLatency = metrics.getConnectLatency();
+    }
+
+    @Override
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    @Override
+    public long getReadOps() {
+      return readOps;
+    }
+
+    @Override
+    public long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    @Override
+    public long getWriteOps() {
+      return writeOps;
+    }
+
+    @Override
+    public long getAccepts() {
+      return accepts;
+    }
+
+    @Override
+    public long getConnects() {
+      return connects;
+    }
+
+    @Override
+    public long getConnectFailures() {
+      return connectFailures;
+    }
+
+    @Override
+    public Map<Integer, Long> getNativeErrors() {
+      return nativeErrors;
+    }
+
+    @Override
+    public Latency getReadLatency() {
+      return readLatency;
+    }
+
+    @Override
+    public Latency getWriteLatency() {
+      return writeLatency;
+    }
+
+    @Override
+    public Latency getAcceptLatency() {
+      return acceptLatency;
+    }
+
+    @Override
+    public Latency getConnectLatency() {
+      return connectLatency;
+    }
+  }
+
+  /** The I/O counters of a single socket, which are updated as the socket is used. */
+  public static final class Counters {
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder readOps = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder writeOps = new LongAdder();
+    private final LongAdder accepts = new LongAdder();
+
+    Counters() {}
+
+    /** The number of bytes read from the socket. */
+    public long getBytesRead() {
+      return bytesRead.sum();
+    }
+
+    /** The number of read operations, including those that returned no bytes. */
+    public long getReadOps() {
+      return readOps.sum();
+    }
+
+    /** The number of bytes written to the socket. */
+    public long getBytesWritten() {
+      return bytesWritten.sum();
+    }
+
+    /** The number of write operations. */
+    public long getWriteOps() {
+      return writeOps.sum();
+    }
+
+    /** The number of connections accepted, if this is a server socket. */
+    public long getAccepts() {
+      return accepts.sum();
+    }
+
+    @Override
+    public String toString() {
+      return "Counters(bytesRead="
+          + getBytesRead()
+          + ", readOps="
+          + getReadOps()
+          + ", bytesWritten="
+          + getBytesWritten()
+          + ", writeOps="
+          + getWriteOps()
+          + ", accepts="
+          + getAccepts()
+          + ")";
+    }
+  }
+
+  /**
+   * The distribution of the durations of one kind of operation. Percentiles are the upper bound of
+   * the power of two bucket that holds them, so they overstate the true value by less than a factor
+   * of two.
+   */
+  public static final class Latency {
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+
+    public Latency(
+        long count, long totalNanos, long maxNanos, long p50Nanos, long p99Nanos, long p999Nanos) {
+      this.count = count;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+      this.p50Nanos = p50Nanos;
+      this.p99Nanos = p99Nanos;
+      this.p999Nanos = p999Nanos;
+    }
+
+    /** Reconstructs a latency from its JMX representation. */
+    public static Latency from(CompositeData data) {
+      return new Latency(
+          (Long) data.get("count"),
+          (Long) data.get("totalNanos"),
+          (Long) data.get("maxNanos"),
+          (Long) data.get("p50Nanos"),
+          (Long) data.get("p99Nanos"),
+          (Long) data.get("p999Nanos"));
+    }
+
+    /** The number of operations. */
+    public long getCount() {
+      return count;
+    }
+
+    /** The total time spent in the operations. */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /** The duration of the longest operation. */
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+
+    public long getP50Nanos() {
+      return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+      return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+      return p999Nanos;
+    }
+
+    @Override
+    public String toString() {
+      return "Latency(count="
+          + count
+          + ", totalNanos="
+          + totalNanos
+          + ", maxNanos="
+          + maxNanos
+          + ", p50Nanos="
+          + p50Nanos
+          + ", p99Nanos="
+          + p99Nanos
+          + ", p999Nanos="
+          + p999Nanos
+          + ")";
+    }
+  }
+
+  /** Counts durations in buckets whose upper bounds are successive powers of two. */
+  private static final class Histogram {
+    // Bucket i holds the durations d with 2^(i-1) <= d < 2^i, and bucket 0 those of 0. Each bucket
+    // is striped on its own, so that threads recording similar durations don't contend.
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      if (nanos < 0) {
+        nanos = 0;
+      }
+      buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    void reset() {
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+      totalNanos.reset();
+      maxNanos.reset();
+    }
+
+    Latency latency() {
+      final long[] counts = new long[buckets.length];
+      long count = 0;
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = buckets[i].sum();
+        count += counts[i];
+      }
+      return new Latency(
+          count,
+          totalNanos.sum(),
+          maxNanos.get(),
+          percentile(counts, count, 0.5),
+          percentile(counts, count, 0.99),
+          percentile(counts, count, 0.999));
+    }
+
+    private static long percentile(long[] counts, long count, double fraction) {
+      final long rank = (long) Math.ceil(count * fraction);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return i == 0 ? 0 : i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+      }
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package org.scalasbt.ipcsocket;
+
+import java.util.Map;
+
+/**
+ * The I/O counters and latency distributions of the Unix domain sockets in this process, as exposed
+ * through JMX by {@link SocketMetrics#registerMBean()}.
+ */
+public interface SocketMetricsMXBean {
+  /** The number of bytes read from sockets. */
+  long getBytesRead();
+
+  /** The number of read operations, including those that returned no bytes. */
+  long getReadOps();
+
+  /** The number of bytes written to sockets. */
+  long getBytesWritten();
+
+  /** The number of write operations. */
+  long getWriteOps();
+
+  /** The number of connections accepted by server sockets. */
+  long getAccepts();
+
+  /** The number of client sockets that connected. */
+  long getConnects();
+
+  /** The number of client sockets that failed to connect. */
+  long getConnectFailures();
+
+  /** The number of errors returned by native calls, keyed by {@code errno}. */
+  Map<Integer, Long> getNativeErrors();
+
+  /** The time spent in read operations, including any time spent waiting for data. */
+  SocketMetrics.Latency getReadLatency();
+
+  /** The time spent in write operations, including any time spent waiting for buffer space. */
+  SocketMetrics.Latency getWriteLatency();
+
+  /** The time spent in accept operations, including any time spent waiting for a connection. */
+  SocketMetrics.Latency getAcceptLatency();
+
+  /** The time spent connecting, successfully or not. */
+  SocketMetrics.Latency getConnectLatency();
+}
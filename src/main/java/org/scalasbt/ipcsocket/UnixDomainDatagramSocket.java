@@ -0,0 +1,185 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A connectionless Unix domain socket ({@code SOCK_DGRAM}). A socket that is {@link #bind(String)
+ * bound} to a path receives the datagrams that are sent to that path, and a socket that is {@link
+ * #connect(String) connected} to a path sends datagrams to it. Each datagram is delivered whole, in
+ * order, and independently of the others, so a slow receiver never sees a partial message.
+ *
+ * <p>The batch methods move many datagrams with a single {@code sendmmsg(2)} or {@code recvmmsg(2)}
+ * call on Linux. Other platforms send and receive the datagrams of a batch one at a time.
+ */
+public class UnixDomainDatagramSocket implements Closeable {
+  private final UnixDomainSocketLibraryProvider provider;
+  private final ReferenceCountedFileDescriptor fd;
+  private volatile boolean isClosed;
+
+  /** Creates an unbound, unconnected datagram socket. */
+  public UnixDomainDatagramSocket(boolean useJNI) throws IOException {
+    provider = UnixDomainSocketLibraryProvider.get(useJNI);
+    try {
+      int socketFd =
+          provider.socket(UnixDomainSocketLibrary.PF_LOCAL, UnixDomainSocketLibrary.SOCK_DGRAM, 0);
+      this.fd = new ReferenceCountedFileDescriptor(socketFd, provider);
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    }
+  }
+
+  public UnixDomainDatagramSocket() throws IOException {
+    this(false);
+  }
+
+  /** Binds the socket to {@code path} so that it receives the datagrams sent to that path. */
+  public void bind(String path) throws IOException {
+    byte[] address = path.getBytes();
+    try {
+      provider.bind(acquire(), address, address.length);
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /** Connects the socket to the socket bound to {@code path}, which receives all sent datagrams. */
+  public void connect(String path) throws IOException {
+    byte[] address = path.getBytes();
+    try {
+      provider.connect(acquire(), address, address.length);
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Puts the socket in non-blocking mode, or back in blocking mode. In non-blocking mode the send
+   * methods return 0 instead of waiting for the receiver to drain its queue, and the receive
+   * methods return 0 if no datagrams are queued.
+   */
+  public void configureBlocking(boolean block) throws IOException {
+    try {
+      provider.setNonBlocking(acquire(), !block);
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Sends the remaining bytes of {@code datagram} as a single datagram, advancing its position.
+   *
+   * @return the number of bytes sent, or 0 if the socket is in non-blocking mode and the datagram
+   *     could not be sent without blocking
+   */
+  public int send(ByteBuffer datagram) throws IOException {
+    try {
+      int result = provider.write(acquire(), datagram);
+      return result == UnixDomainSocketLibraryProvider.UNAVAILABLE ? 0 : result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Receives a single datagram into {@code dst}, advancing its position by the number of bytes
+   * stored. If the datagram is longer than {@code dst.remaining()}, the rest of it is discarded.
+   *
+   * @return the length of the datagram, which on Linux is larger than the number of bytes stored if
+   *     the datagram was truncated, or 0 if the socket is in non-blocking mode and no datagram is
+   *     queued
+   */
+  public int receive(ByteBuffer dst) throws IOException {
+    try {
+      int result = provider.receiveMessage(acquire(), dst);
+      return result == UnixDomainSocketLibraryProvider.UNAVAILABLE ? 0 : result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Sends each of {@code datagrams[offset]} to {@code datagrams[offset + length - 1]} as a separate
+   * datagram, advancing the position of each buffer that was sent to its limit.
+   *
+   * @return the number of datagrams sent. A socket in non-blocking mode may send fewer than {@code
+   *     length} datagrams.
+   */
+  public int sendBatch(ByteBuffer[] datagrams, int offset, int length) throws IOException {
+    UnixDomainSocketChannel.checkBounds(datagrams.length, offset, length);
+    try {
+      int socketFd = acquire();
+      int sent = 0;
+      while (sent < length) {
+        int result = provider.sendMessages(socketFd, datagrams, offset + sent, length - sent);
+        if (result == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+          break;
+        }
+        sent += result;
+      }
+      return sent;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  public int sendBatch(ByteBuffer[] datagrams) throws IOException {
+    return sendBatch(datagrams, 0, datagrams.length);
+  }
+
+  /**
+   * Receives up to {@code length} datagrams, one into each of {@code dsts[offset]} to {@code
+   * dsts[offset + length - 1]} in order, advancing the position of each buffer by the number of
+   * bytes stored. Waits until at least one datagram is queued and then takes as many of the queued
+   * datagrams as fit. Datagrams that are longer than their buffer are truncated.
+   *
+   * @return the number of datagrams received, or 0 if the socket is in non-blocking mode and no
+   *     datagram is queued
+   */
+  public int receiveBatch(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    UnixDomainSocketChannel.checkBounds(dsts.length, offset, length);
+    try {
+      int result = provider.receiveMessages(acquire(), dsts, offset, length);
+      return result == UnixDomainSocketLibraryProvider.UNAVAILABLE ? 0 : result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  public int receiveBatch(ByteBuffer[] dsts) throws IOException {
+    return receiveBatch(dsts, 0, dsts.length);
+  }
+
+  public boolean isClosed() {
+    return isClosed;
+  }
+
+  @Override
+  public void close() throws IOException {
+    isClosed = true;
+    fd.close();
+  }
+
+  private int acquire() throws IOException {
+    int socketFd = fd.acquire();
+    if (socketFd == -1) {
+      throw new IOException("Socket is closed");
+    }
+    return socketFd;
+  }
+}
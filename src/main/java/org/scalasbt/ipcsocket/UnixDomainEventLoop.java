@@ -0,0 +1,495 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multiplexes many {@link UnixDomainSocket} connections over a small, fixed number of threads using
+ * Linux epoll. Each thread owns an epoll instance. Listening sockets registered with {@link
+ * #register(UnixDomainServerSocket, AcceptHandler)} are watched by the first thread and accepted
+ * connections are spread over all of the threads in round robin order.
+ *
+ * <p>Events are level triggered and handlers are invoked on the event loop thread that owns the
+ * connection, so handlers must not block. Registered sockets are put in non-blocking mode: {@link
+ * Connection#read(ByteBuffer)} returns 0 once the socket has been drained and {@link
+ * Connection#write(ByteBuffer)} may write only part of its buffer, in which case the handler should
+ * add {@link #OP_WRITE} to the connection's interest set and finish the write in {@link
+ * ConnectionHandler#onWritable(Connection)}.
+ *
+ * <p>This class is only supported on Linux.
+ */
+public class UnixDomainEventLoop implements Closeable {
+  /** Interest in, or readiness of, a connection for reading. */
+  public static final int OP_READ = UnixDomainSocketLibrary.EPOLLIN;
+  /** Interest in, or readiness of, a connection for writing. */
+  public static final int OP_WRITE = UnixDomainSocketLibrary.EPOLLOUT;
+
+  private static final int HANGUP =
+      UnixDomainSocketLibrary.EPOLLHUP
+          | UnixDomainSocketLibrary.EPOLLERR
+          | UnixDomainSocketLibrary.EPOLLRDHUP;
+  private static final int MAX_EVENTS = 64;
+  private static final int ACCEPT_BATCH_SIZE = 64;
+  private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+  /** Handles connections accepted from a registered {@link UnixDomainServerSocket}. */
+  public interface AcceptHandler {
+    /**
+     * Invoked on an event loop thread for each accepted connection.
+     *
+     * @return the handler for the connection, or {@code null} to close it
+     */
+    ConnectionHandler onAccept(Connection connection) throws IOException;
+
+    /**
+     * Invoked on an event loop thread when accepting a connection failed. If the process or the
+     * system ran out of file descriptors or memory, the server socket is not watched for 100
+     * milliseconds afterwards, since the pending connections would otherwise be retried in a busy
+     * loop.
+     */
+    default void onAcceptFailed(IOException exception) {}
+  }
+
+  /** Handles readiness events for a single {@link Connection}. */
+  public interface ConnectionHandler {
+    /** Invoked when the connection has data available or the peer has hung up. */
+    void onReadable(Connection connection) throws IOException;
+
+    /** Invoked when the connection is writable and {@link #OP_WRITE} is in its interest set. */
+    default void onWritable(Connection connection) throws IOException {}
+
+    /** Invoked once after the connection has been closed. */
+    default void onClose(Connection connection) {}
+  }
+
+  private final UnixDomainSocketLibraryProvider provider;
+  private final Worker[] workers;
+  private final AtomicInteger next = new AtomicInteger(0);
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+
+  /** Starts an event loop with the specified number of threads. */
+  public UnixDomainEventLoop(int threads, boolean useJNI) throws IOException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive: " + threads);
+    }
+    this.provider = UnixDomainSocketLibraryProvider.get(useJNI);
+    this.workers = new Worker[threads];
+    try {
+      for (int i = 0; i < threads; i++) {
+        workers[i] = new Worker(i);
+      }
+    } catch (IOException e) {
+      for (Worker worker : workers) {
+        if (worker != null) worker.closeDescriptors();
+      }
+      throw e;
+    }
+    for (Worker worker : workers) {
+      worker.thread.start();
+    }
+  }
+
+  /** Starts a single threaded event loop. */
+  public UnixDomainEventLoop(boolean useJNI) throws IOException {
+    this(1, useJNI);
+  }
+
+  /**
+   * Watches a bound server socket for incoming connections. The server socket must not be used for
+   * blocking calls to {@link UnixDomainServerSocket#accept()} once it has been registered.
+   */
+  public void register(UnixDomainServerSocket serverSocket, AcceptHandler handler)
+      throws IOException {
+    if (!serverSocket.isBound()) {
+      throw new IllegalStateException("Socket is not bound");
+    }
+    serverSocket.setNonBlocking(true);
+    final Acceptor acceptor = new Acceptor(serverSocket, handler);
+    acceptor.worker.add(acceptor.fd, acceptor, OP_READ);
+  }
+
+  /** Puts a connected socket in non-blocking mode and registers it for read events. */
+  public Connection register(UnixDomainSocket socket, ConnectionHandler handler)
+      throws IOException {
+    socket.setNonBlocking(true);
+    final Connection connection = new Connection(nextWorker(), socket);
+    connection.handler = handler;
+    connection.worker.add(connection.fd, connection, OP_READ);
+    return connection;
+  }
+
+  private Worker nextWorker() {
+    return workers[Math.floorMod(next.getAndIncrement(), workers.length)];
+  }
+
+  /**
+   * Stops all of the event loop threads and closes every connection that is registered with them.
+   * Registered server sockets are not closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed.compareAndSet(false, true)) {
+      for (Worker worker : workers) {
+        worker.wakeup();
+      }
+      for (Worker worker : workers) {
+        if (worker.thread != Thread.currentThread()) {
+          try {
+            worker.thread.join();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    }
+  }
+
+  private abstract static class Registration {
+    abstract void dispatch(int events);
+
+    abstract void close();
+  }
+
+  private final class Acceptor extends Registration {
+    private final UnixDomainServerSocket serverSocket;
+    private final AcceptHandler handler;
+    private final int fd;
+    private final Worker worker = workers[0];
+    // The System.nanoTime() at which the server socket is watched again after a pause.
+    private long resumeAt;
+
+    Acceptor(UnixDomainServerSocket serverSocket, AcceptHandler handler) {
+      this.serverSocket = serverSocket;
+      this.handler = handler;
+      this.fd = serverSocket.getFd();
+    }
+
+    @Override
+    void dispatch(int events) {
+      List<UnixDomainSocket> sockets;
+      while ((sockets = acceptBatch()) != null && !sockets.isEmpty()) {
+        for (UnixDomainSocket socket : sockets) {
+          final Connection connection;
+          try {
+            connection = new Connection(nextWorker(), socket);
+          } catch (IOException e) {
+            try {
+              socket.close();
+            } catch (IOException ex) {
+            }
+            continue;
+          }
+          try {
+            connection.handler = handler.onAccept(connection);
+            if (connection.handler == null) {
+              connection.close();
+            } else {
+              connection.worker.add(connection.fd, connection, OP_READ);
+            }
+          } catch (IOException | RuntimeException e) {
+            connection.close();
+          }
+        }
+      }
+    }
+
+    /**
+     * Accepts the pending connections as non-blocking sockets, returning null if accepting failed,
+     * in which case the failure was reported and the caller should wait for the next event.
+     */
+    private List<UnixDomainSocket> acceptBatch() {
+      try {
+        return serverSocket.doAccept(ACCEPT_BATCH_SIZE, true);
+      } catch (IOException e) {
+        if (isExhausted(e)) {
+          pause();
+        }
+        report(e);
+      } catch (IllegalStateException e) {
+        // The server socket was closed without being removed from the event loop first.
+        close();
+        report(new IOException(e.getMessage(), e));
+      }
+      return null;
+    }
+
+    private boolean isExhausted(IOException e) {
+      if (!(e.getCause() instanceof NativeErrorException)) {
+        return false;
+      }
+      final int errno = ((NativeErrorException) e.getCause()).returnCode();
+      return errno == UnixDomainSocketLibrary.EMFILE
+          || errno == UnixDomainSocketLibrary.ENFILE
+          || errno == UnixDomainSocketLibrary.ENOBUFS
+          || errno == UnixDomainSocketLibrary.ENOMEM;
+    }
+
+    private void report(IOException e) {
+      try {
+        handler.onAcceptFailed(e);
+      } catch (RuntimeException ex) {
+      }
+    }
+
+    /** Stops watching the server socket until {@link #resume()} is called by the worker. */
+    private void pause() {
+      try {
+        worker.control(UnixDomainSocketLibrary.EPOLL_CTL_MOD, fd, 0);
+      } catch (IOException e) {
+        return;
+      }
+      resumeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACCEPT_BACKOFF_MILLIS);
+      worker.paused.add(this);
+    }
+
+    void resume() {
+      try {
+        worker.control(UnixDomainSocketLibrary.EPOLL_CTL_MOD, fd, OP_READ);
+      } catch (IOException e) {
+        // The server socket has been closed.
+      }
+    }
+
+    @Override
+    void close() {
+      if (worker.registrations.remove(fd, this)) {
+        try {
+          worker.control(UnixDomainSocketLibrary.EPOLL_CTL_DEL, fd, 0);
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  /** A connection that is registered with a {@link UnixDomainEventLoop}. */
+  public final class Connection extends Registration {
+    private final Worker worker;
+    private final UnixDomainSocket socket;
+    private final int fd;
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+    private volatile ConnectionHandler handler;
+    private volatile int interestOps = OP_READ;
+    private volatile Object attachment;
+
+    private Connection(Worker worker, UnixDomainSocket socket) throws IOException {
+      this.worker = worker;
+      this.socket = socket;
+      this.fd = socket.getFd();
+    }
+
+    public UnixDomainSocket socket() {
+      return socket;
+    }
+
+    /**
+     * Reads available bytes into {@code dst} without blocking.
+     *
+     * @return the number of bytes read, 0 if no bytes are available, or -1 if the peer has closed
+     *     the connection
+     */
+    public int read(ByteBuffer dst) throws IOException {
+      return socket.read(dst);
+    }
+
+    /**
+     * Writes as many of the remaining bytes of {@code src} as the socket will accept without
+     * blocking.
+     */
+    public int write(ByteBuffer src) throws IOException {
+      return socket.write(src);
+    }
+
+    public int interestOps() {
+      return interestOps;
+    }
+
+    /** Sets the interest set to a combination of {@link #OP_READ} and {@link #OP_WRITE}. */
+    public void interestOps(int ops) throws IOException {
+      if ((ops & ~(OP_READ | OP_WRITE)) != 0) {
+        throw new IllegalArgumentException("Invalid interest set: " + ops);
+      }
+      if (isClosed.get()) {
+        throw new IOException("Connection is closed");
+      }
+      interestOps = ops;
+      worker.control(UnixDomainSocketLibrary.EPOLL_CTL_MOD, fd, ops);
+    }
+
+    public Object attachment() {
+      return attachment;
+    }
+
+    public void attach(Object attachment) {
+      this.attachment = attachment;
+    }
+
+    public boolean isOpen() {
+      return !isClosed.get();
+    }
+
+    @Override
+    void dispatch(int events) {
+      final ConnectionHandler h = handler;
+      try {
+        if ((events & (OP_READ | HANGUP)) != 0) {
+          if ((interestOps & OP_READ) != 0) {
+            h.onReadable(this);
+          } else if ((events & HANGUP) != 0) {
+            close();
+          }
+        }
+        if ((events & OP_WRITE) != 0 && isOpen()) {
+          h.onWritable(this);
+        }
+      } catch (IOException | RuntimeException e) {
+        close();
+      }
+    }
+
+    /** Removes the connection from the event loop and closes its socket. */
+    @Override
+    public void close() {
+      if (isClosed.compareAndSet(false, true)) {
+        if (worker.registrations.remove(fd, this)) {
+          try {
+            worker.control(UnixDomainSocketLibrary.EPOLL_CTL_DEL, fd, 0);
+          } catch (IOException e) {
+          }
+        }
+        try {
+          socket.close();
+        } catch (IOException e) {
+        }
+        final ConnectionHandler h = handler;
+        if (h != null) {
+          h.onClose(this);
+        }
+      }
+    }
+  }
+
+  private final class Worker implements Runnable {
+    private int epfd = -1;
+    private final int[] wakeup = new int[] {-1, -1};
+    private final Map<Integer, Registration> registrations = new ConcurrentHashMap<>();
+    // Acceptors that stopped watching their server socket, only accessed by the worker thread.
+    private final List<Acceptor> paused = new ArrayList<>();
+    private final Thread thread;
+
+    Worker(int index) throws IOException {
+      try {
+        epfd = provider.epollCreate();
+        try {
+          provider.socketPair(
+              UnixDomainSocketLibrary.AF_LOCAL, UnixDomainSocketLibrary.SOCK_STREAM, 0, wakeup);
+          provider.epollCtl(epfd, UnixDomainSocketLibrary.EPOLL_CTL_ADD, wakeup[0], OP_READ);
+        } catch (NativeErrorException e) {
+          closeDescriptors();
+          throw e;
+        }
+      } catch (NativeErrorException e) {
+        throw new IOException(e);
+      }
+      thread = new Thread(this, "ipcsocket-event-loop-" + index);
+      thread.setDaemon(true);
+    }
+
+    void add(int fd, Registration registration, int events) throws IOException {
+      if (closed.get()) {
+        throw new IOException("Event loop is closed");
+      }
+      registrations.put(fd, registration);
+      try {
+        control(UnixDomainSocketLibrary.EPOLL_CTL_ADD, fd, events);
+      } catch (IOException e) {
+        registrations.remove(fd, registration);
+        throw e;
+      }
+    }
+
+    void control(int op, int fd, int events) throws IOException {
+      try {
+        provider.epollCtl(epfd, op, fd, events);
+      } catch (NativeErrorException e) {
+        throw new IOException(e);
+      }
+    }
+
+    void wakeup() {
+      try {
+        provider.write(wakeup[1], new byte[] {1}, 0, 1);
+      } catch (NativeErrorException e) {
+      }
+    }
+
+    @Override
+    public void run() {
+      final int[] fds = new int[MAX_EVENTS];
+      final int[] events = new int[MAX_EVENTS];
+      try {
+        while (!closed.get()) {
+          final int count = provider.epollWait(epfd, fds, events, resumePaused());
+          for (int i = 0; i < count && !closed.get(); i++) {
+            final Registration registration = registrations.get(fds[i]);
+            if (registration != null) {
+              registration.dispatch(events[i]);
+            }
+          }
+        }
+      } catch (NativeErrorException e) {
+        try {
+          UnixDomainEventLoop.this.close();
+        } catch (IOException ex) {
+        }
+      } finally {
+        final List<Registration> remaining = new ArrayList<>(registrations.values());
+        for (Registration registration : remaining) {
+          registration.close();
+        }
+        registrations.clear();
+        closeDescriptors();
+      }
+    }
+
+    /**
+     * Watches the server sockets of the paused acceptors whose backoff has elapsed again.
+     *
+     * @return the timeout of the next wait, until the next acceptor is due or -1 if none is paused
+     */
+    private int resumePaused() {
+      long timeout = -1;
+      final long now = System.nanoTime();
+      for (int i = paused.size() - 1; i >= 0; i--) {
+        final Acceptor acceptor = paused.get(i);
+        final long remaining = acceptor.resumeAt - now;
+        if (remaining <= 0) {
+          paused.remove(i);
+          acceptor.resume();
+        } else {
+          final long millis = TimeUnit.NANOSECONDS.toMillis(remaining) + 1;
+          timeout = timeout == -1 ? millis : Math.min(timeout, millis);
+        }
+      }
+      return (int) timeout;
+    }
+
+    void closeDescriptors() {
+      for (int fd : new int[] {wakeup[0], wakeup[1], epfd}) {
+        if (fd != -1) {
+          try {
+            provider.close(fd);
+          } catch (NativeErrorException e) {
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,479 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carries many independent, bidirectional byte streams over a single connected {@link
+ * UnixDomainSocket}, so that concurrent sessions between a client and a server don't each need
+ * their own socket and server thread.
+ *
+ * <p>Each side of the connection wraps its socket in a multiplexer, the client with {@code
+ * isClient} set and the server without. Either side can {@link #openStream() open} a stream, which
+ * the other side receives from {@link #accept()}. Streams are flow controlled independently: a side
+ * may only send as many bytes on a stream as the peer has granted it credit for, and the peer
+ * grants more credit as its application reads. A slow reader therefore stalls only its own stream.
+ * Outgoing data is interleaved fairly, one frame of at most {@link #MAX_FRAME_SIZE} bytes per
+ * stream in turn, and control frames are sent ahead of data, so a small message on one stream is
+ * never queued behind bulk traffic on another.
+ *
+ * <p>Every frame starts with a 9 byte header: the stream id (4 bytes), the frame type (1 byte) and
+ * the payload length (4 bytes), all big endian. Client streams have odd ids and server streams even
+ * ids.
+ */
+public class UnixDomainMultiplexer implements Closeable {
+  /** The largest payload that is sent in a single frame. */
+  public static final int MAX_FRAME_SIZE = 16 * 1024;
+
+  /** The number of bytes that a side may send on a new stream before it receives more credit. */
+  public static final int DEFAULT_WINDOW = 256 * 1024;
+
+  private static final byte OPEN = 0;
+  private static final byte DATA = 1;
+  private static final byte CREDIT = 2;
+  private static final byte FIN = 3;
+  private static final int HEADER_SIZE = 9;
+  // Queued after the data of a stream whose output has ended.
+  private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+  private final UnixDomainSocket socket;
+  private final int window;
+  private final AtomicInteger nextId;
+  private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+  private final ArrayDeque<Stream> accepted = new ArrayDeque<>();
+  // The writer's queues are guarded by the multiplexer's monitor.
+  private final ArrayDeque<ByteBuffer> control = new ArrayDeque<>();
+  private final ArrayDeque<Stream> ready = new ArrayDeque<>();
+  private final Thread reader;
+  private final Thread writer;
+  private volatile IOException failure;
+
+  /** Starts multiplexing over {@code socket} with the default flow control window. */
+  public UnixDomainMultiplexer(UnixDomainSocket socket, boolean isClient) {
+    this(socket, isClient, DEFAULT_WINDOW);
+  }
+
+  /**
+   * Starts multiplexing over {@code socket}.
+   *
+   * @param socket a connected socket that is used only by this multiplexer from now on
+   * @param isClient whether this is the client side of the connection, which determines the ids of
+   *     the streams that it opens
+   * @param window the number of bytes that the peer may send on each stream before this side grants
+   *     it more credit. Both sides must use the same window.
+   */
+  public UnixDomainMultiplexer(UnixDomainSocket socket, boolean isClient, int window) {
+    if (window < MAX_FRAME_SIZE) {
+      throw new IllegalArgumentException("window must be at least " + MAX_FRAME_SIZE);
+    }
+    this.socket = socket;
+    this.window = window;
+    this.nextId = new AtomicInteger(isClient ? 1 : 2);
+    this.reader = new Thread(this::readFrames, "ipcsocket-mux-reader");
+    this.writer = new Thread(this::writeFrames, "ipcsocket-mux-writer");
+    reader.setDaemon(true);
+    writer.setDaemon(true);
+    reader.start();
+    writer.start();
+  }
+
+  /** Opens a new stream. The peer receives it from {@link #accept()}. */
+  public Stream openStream() throws IOException {
+    ensureOpen();
+    final Stream stream = new Stream(nextId.getAndAdd(2));
+    streams.put(stream.id, stream);
+    sendControl(stream.id, OPEN, 0);
+    return stream;
+  }
+
+  /**
+   * Waits for the peer to open a stream.
+   *
+   * @throws IOException if the multiplexer is closed, or fails, before the peer opens a stream
+   */
+  public synchronized Stream accept() throws IOException, InterruptedException {
+    while (accepted.isEmpty()) {
+      ensureOpen();
+      wait();
+    }
+    return accepted.poll();
+  }
+
+  /** Closes the socket. Every stream fails with an {@link IOException} from then on. */
+  @Override
+  public void close() throws IOException {
+    fail(new IOException("Multiplexer is closed"));
+  }
+
+  public boolean isClosed() {
+    return failure != null;
+  }
+
+  private void ensureOpen() throws IOException {
+    final IOException e = failure;
+    if (e != null) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private void fail(IOException cause) {
+    synchronized (this) {
+      if (failure != null) {
+        return;
+      }
+      failure = cause;
+      notifyAll();
+    }
+    for (Stream stream : streams.values()) {
+      synchronized (stream) {
+        stream.notifyAll();
+      }
+    }
+    // Closing alone is deferred while the reader is blocked on the socket, so shut it down first
+    // to wake the reader and to tell the peer that the connection is gone.
+    try {
+      socket.shutdownInput();
+      socket.shutdownOutput();
+    } catch (IOException e) {
+    }
+    try {
+      socket.close();
+    } catch (IOException e) {
+    }
+  }
+
+  private static ByteBuffer header(int id, byte type, int length) {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(id).put(type).putInt(length).flip();
+    return header;
+  }
+
+  private synchronized void sendControl(int id, byte type, int credit) {
+    final ByteBuffer frame;
+    if (type == CREDIT) {
+      frame = ByteBuffer.allocate(HEADER_SIZE + 4);
+      frame.putInt(id).put(type).putInt(4).putInt(credit).flip();
+    } else {
+      frame = header(id, type, 0);
+    }
+    control.add(frame);
+    notifyAll();
+  }
+
+  /** Queues a chunk of data, or the end of the stream if {@code chunk} is null. */
+  private synchronized void sendData(Stream stream, ByteBuffer chunk) {
+    if (stream.pending.isEmpty()) {
+      ready.add(stream);
+    }
+    stream.pending.add(chunk == null ? END_OF_STREAM : chunk);
+    notifyAll();
+  }
+
+  /**
+   * Sends queued frames. Control frames go first, then one data frame from each stream that has
+   * data queued, in turn.
+   */
+  private void writeFrames() {
+    final ByteBuffer[] frame = new ByteBuffer[2];
+    try {
+      while (true) {
+        synchronized (this) {
+          while (control.isEmpty() && ready.isEmpty() && failure == null) {
+            wait();
+          }
+          if (failure != null) {
+            return;
+          }
+          if (!control.isEmpty()) {
+            frame[0] = control.poll();
+            frame[1] = null;
+          } else {
+            final Stream stream = ready.poll();
+            final ByteBuffer next = stream.pending.poll();
+            if (!stream.pending.isEmpty()) {
+              ready.add(stream);
+            }
+            if (next == END_OF_STREAM) {
+              frame[0] = header(stream.id, FIN, 0);
+              frame[1] = null;
+            } else {
+              frame[0] = header(stream.id, DATA, next.remaining());
+              frame[1] = next;
+            }
+          }
+        }
+        final int count = frame[1] == null ? 1 : 2;
+        while (frame[0].hasRemaining() || (count == 2 && frame[1].hasRemaining())) {
+          socket.write(frame, 0, count);
+          if (socket.isClosed()) {
+            throw new IOException("Socket is closed");
+          }
+        }
+      }
+    } catch (IOException e) {
+      fail(e);
+    } catch (InterruptedException e) {
+      fail(new IOException(e));
+    }
+  }
+
+  /** Reads frames from the socket and dispatches them to their streams. */
+  private void readFrames() {
+    try (DataInputStream in =
+        new DataInputStream(socket.getBufferedInputStream(2 * MAX_FRAME_SIZE, false))) {
+      while (true) {
+        final int id;
+        try {
+          id = in.readInt();
+        } catch (EOFException e) {
+          fail(new IOException("Connection closed by peer"));
+          return;
+        }
+        final byte type = in.readByte();
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+          throw new IOException("Invalid frame length " + length);
+        }
+        final byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (type == OPEN) {
+          final Stream stream = new Stream(id);
+          if (streams.putIfAbsent(id, stream) != null) {
+            throw new IOException("Stream " + id + " is already open");
+          }
+          synchronized (this) {
+            accepted.add(stream);
+            notifyAll();
+          }
+          continue;
+        }
+        final Stream stream = streams.get(id);
+        if (stream == null) {
+          // The stream was closed by this side; drop whatever the peer had already sent.
+          continue;
+        }
+        synchronized (stream) {
+          switch (type) {
+            case DATA:
+              if (length > stream.receiveWindow) {
+                throw new IOException("Stream " + id + " exceeded its flow control window");
+              }
+              if (stream.isClosed) {
+                // Nobody will read the data, so give the credit straight back to keep the peer's
+                // writes from stalling.
+                sendControl(id, CREDIT, length);
+              } else if (length > 0) {
+                stream.receiveWindow -= length;
+                stream.inbound.add(payload);
+              }
+              break;
+            case CREDIT:
+              stream.sendCredit += ByteBuffer.wrap(payload).getInt();
+              break;
+            case FIN:
+              stream.remoteClosed = true;
+              stream.release();
+              break;
+            default:
+              throw new IOException("Invalid frame type " + type);
+          }
+          stream.notifyAll();
+        }
+      }
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /** A bidirectional stream that is multiplexed with others over a single socket. */
+  public final class Stream implements Closeable {
+    private final int id;
+    private final ArrayDeque<byte[]> inbound = new ArrayDeque<>();
+    // Guarded by the multiplexer's monitor.
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private final InputStream in = new StreamInputStream();
+    private final OutputStream out = new StreamOutputStream();
+    // The remaining fields are guarded by the stream's monitor.
+    private int offset;
+    private int sendCredit = window;
+    private int receiveWindow = window;
+    private int consumed;
+    private boolean remoteClosed;
+    private boolean localClosed;
+    private boolean isClosed;
+
+    private Stream(int id) {
+      this.id = id;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    /** Returns the stream of bytes that the peer writes to this stream. */
+    public InputStream getInputStream() {
+      return in;
+    }
+
+    /**
+     * Returns the stream of bytes to send to the peer. Closing it tells the peer that no more bytes
+     * will be sent, while bytes can still be read from the peer.
+     */
+    public OutputStream getOutputStream() {
+      return out;
+    }
+
+    /** Ends the output of this stream and discards any input that hasn't been read. */
+    @Override
+    public void close() throws IOException {
+      int credit = 0;
+      synchronized (this) {
+        if (!isClosed) {
+          isClosed = true;
+          credit = consumed - offset;
+          for (byte[] chunk : inbound) {
+            credit += chunk.length;
+          }
+          inbound.clear();
+          offset = 0;
+          consumed = 0;
+          if (remoteClosed) {
+            credit = 0;
+          }
+          notifyAll();
+        }
+      }
+      if (credit > 0) {
+        sendControl(id, CREDIT, credit);
+      }
+      out.close();
+    }
+
+    /** Forgets the stream once both sides have ended their output. */
+    private void release() {
+      if (localClosed && remoteClosed) {
+        streams.remove(id, this);
+      }
+    }
+
+    private class StreamInputStream extends InputStream {
+      @Override
+      public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : 0xFF & b[0];
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        UnixDomainSocketChannel.checkBounds(b.length, off, len);
+        if (len == 0) {
+          return 0;
+        }
+        int credit = 0;
+        final int count;
+        synchronized (Stream.this) {
+          try {
+            while (inbound.isEmpty() && !remoteClosed && !isClosed) {
+              ensureOpen();
+              Stream.this.wait();
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+          }
+          if (inbound.isEmpty()) {
+            return -1;
+          }
+          final byte[] chunk = inbound.peek();
+          count = Math.min(len, chunk.length - offset);
+          System.arraycopy(chunk, offset, b, off, count);
+          offset += count;
+          if (offset == chunk.length) {
+            inbound.poll();
+            offset = 0;
+          }
+          consumed += count;
+          receiveWindow += count;
+          // Grant credit in batches rather than for every read.
+          if (consumed >= window / 2 && !remoteClosed) {
+            credit = consumed;
+            consumed = 0;
+          }
+        }
+        if (credit > 0) {
+          sendControl(id, CREDIT, credit);
+        }
+        return count;
+      }
+
+      @Override
+      public int available() {
+        synchronized (Stream.this) {
+          return inbound.isEmpty() ? 0 : inbound.peek().length - offset;
+        }
+      }
+    }
+
+    private class StreamOutputStream extends OutputStream {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        UnixDomainSocketChannel.checkBounds(b.length, off, len);
+        while (len > 0) {
+          final int chunk;
+          synchronized (Stream.this) {
+            try {
+              while (sendCredit == 0 && !localClosed) {
+                ensureOpen();
+                Stream.this.wait();
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new InterruptedIOException();
+            }
+            if (localClosed) {
+              throw new IOException("Stream " + id + " is closed");
+            }
+            ensureOpen();
+            chunk = Math.min(Math.min(len, sendCredit), MAX_FRAME_SIZE);
+            sendCredit -= chunk;
+          }
+          final byte[] copy = new byte[chunk];
+          System.arraycopy(b, off, copy, 0, chunk);
+          sendData(Stream.this, ByteBuffer.wrap(copy));
+          off += chunk;
+          len -= chunk;
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        synchronized (Stream.this) {
+          if (localClosed) {
+            return;
+          }
+          localClosed = true;
+          release();
+          Stream.this.notifyAll();
+        }
+        if (failure == null) {
+          sendData(Stream.this, null);
+        }
+      }
+    }
+  }
+}
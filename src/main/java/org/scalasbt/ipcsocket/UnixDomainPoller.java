@@ -0,0 +1,343 @@
+package org.scalasbt.ipcsocket;
+
+import com.sun.jna.Platform;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks threads that are waiting for a non-blocking descriptor to become ready, instead of letting
+ * them block in a system call. A single daemon thread per direction waits for all the descriptors
+ * that have waiters and unparks them as their descriptors become ready, so a blocked virtual thread
+ * releases its carrier thread. This mirrors the read and write pollers that the JDK uses for its
+ * own sockets.
+ *
+ * <p>On Linux the thread waits on an epoll instance. A descriptor stays in its interest list once
+ * added and is re-armed with {@code EPOLL_CTL_MOD} for each wait, so waiting costs a single {@code
+ * epoll_ctl(2)} call. Other platforms wait with {@code poll(2)} on the descriptors that have
+ * waiters, and a pipe that wakes the thread whenever a descriptor is added. Any number of threads
+ * may wait for the same descriptor; they are all unparked once it is ready.
+ */
+final class UnixDomainPoller {
+  private static final int FALLBACK_TIMEOUT_MILLIS = 100;
+  private static final int MAX_EVENTS = 64;
+
+  private static final Map<String, UnixDomainPoller> pollers = new HashMap<>();
+
+  private final UnixDomainSocketLibraryProvider provider;
+  private final int events;
+  private final ConcurrentHashMap<Integer, Registration> registrations = new ConcurrentHashMap<>();
+  private final int epfd;
+  private final int[] wakeupPipe = new int[] {-1, -1};
+
+  private static final class Waiter {
+    final Thread thread = Thread.currentThread();
+    volatile boolean ready;
+  }
+
+  /** The threads waiting for one descriptor, guarded by the registration's monitor. */
+  private static final class Registration {
+    final List<Waiter> waiters = new ArrayList<>(1);
+    // Whether the descriptor is in the epoll interest list.
+    boolean registered;
+    // Whether the descriptor is being closed, in which case nobody should wait for it.
+    boolean closed;
+
+    void wakeup() {
+      for (Waiter waiter : waiters) {
+        waiter.ready = true;
+        LockSupport.unpark(waiter.thread);
+      }
+      waiters.clear();
+    }
+  }
+
+  private UnixDomainPoller(UnixDomainSocketLibraryProvider provider, int events, String name)
+      throws IOException {
+    this.provider = provider;
+    this.events = events;
+    try {
+      if (Platform.isLinux()) {
+        epfd = provider.epollCreate();
+      } else {
+        epfd = -1;
+        provider.pipe(wakeupPipe);
+        provider.setNonBlocking(wakeupPipe[0], true);
+        provider.setNonBlocking(wakeupPipe[1], true);
+      }
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    }
+    final Thread thread = new Thread(epfd == -1 ? this::runPoll : this::runEpoll, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Returns the poller for {@code events}, either {@code POLLIN} or {@code POLLOUT}. */
+  static UnixDomainPoller get(UnixDomainSocketLibraryProvider provider, int events)
+      throws IOException {
+    final String name = name(provider, events);
+    synchronized (pollers) {
+      UnixDomainPoller poller = pollers.get(name);
+      if (poller == null) {
+        poller = new UnixDomainPoller(provider, events, name);
+        pollers.put(name, poller);
+      }
+      return poller;
+    }
+  }
+
+  private static String name(UnixDomainSocketLibraryProvider provider, int events) {
+    return "ipcsocket-poller-"
+        + (provider instanceof JNIUnixDomainSocketLibraryProvider ? "jni-" : "jna-")
+        + (events == UnixDomainSocketLibrary.POLLIN ? "read" : "write");
+  }
+
+  /**
+   * Parks the current thread until {@code fd} is ready, {@link #wakeup(int)} is called for it or
+   * {@code deadline} passes. The caller must retry its operation afterwards, since readiness may be
+   * spurious.
+   *
+   * @param deadline the {@link System#nanoTime()} at which to stop waiting, or 0 to wait
+   *     indefinitely
+   * @param closed whether the owner of {@code fd} has been closed, which is checked once the thread
+   *     is registered as a waiter, so that a close that raced with this call can't be missed
+   * @return false if the deadline has passed
+   * @throws InterruptedIOException if the thread is interrupted while waiting
+   */
+  boolean await(int fd, long deadline, BooleanSupplier closed) throws IOException {
+    final Waiter waiter = new Waiter();
+    final Registration registration = registrations.computeIfAbsent(fd, k -> new Registration());
+    synchronized (registration) {
+      if (registration.closed) {
+        return true;
+      }
+      registration.waiters.add(waiter);
+      try {
+        arm(fd, registration);
+      } catch (IOException e) {
+        registration.waiters.remove(waiter);
+        throw e;
+      }
+    }
+    if (closed.getAsBoolean()) {
+      synchronized (registration) {
+        registration.waiters.remove(waiter);
+      }
+      return true;
+    }
+    try {
+      while (!waiter.ready && !Thread.currentThread().isInterrupted()) {
+        if (deadline == 0) {
+          LockSupport.park(this);
+        } else {
+          final long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          LockSupport.parkNanos(this, remaining);
+        }
+      }
+    } finally {
+      if (!waiter.ready) {
+        synchronized (registration) {
+          registration.waiters.remove(waiter);
+        }
+      }
+    }
+    if (!waiter.ready && Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Interrupted while waiting for descriptor " + fd);
+    }
+    return waiter.ready;
+  }
+
+  /** Makes the polling thread watch {@code fd}, with the registration's monitor held. */
+  private void arm(int fd, Registration registration) throws IOException {
+    if (epfd == -1) {
+      // The polling thread only watches descriptors that had waiters when it last started polling.
+      if (registration.waiters.size() == 1) {
+        signal();
+      }
+      return;
+    }
+    final int interest = events | UnixDomainSocketLibrary.EPOLLONESHOT;
+    try {
+      provider.epollCtl(
+          epfd,
+          registration.registered
+              ? UnixDomainSocketLibrary.EPOLL_CTL_MOD
+              : UnixDomainSocketLibrary.EPOLL_CTL_ADD,
+          fd,
+          interest);
+    } catch (NativeErrorException e) {
+      // The descriptor was closed, which removed it from the interest list, and its number was
+      // reused, or it is still in the list through a duplicate of a closed descriptor.
+      try {
+        provider.epollCtl(
+            epfd,
+            registration.registered
+                ? UnixDomainSocketLibrary.EPOLL_CTL_ADD
+                : UnixDomainSocketLibrary.EPOLL_CTL_MOD,
+            fd,
+            interest);
+      } catch (NativeErrorException retryException) {
+        throw new IOException(retryException);
+      }
+    }
+    registration.registered = true;
+  }
+
+  /** Unparks the threads that are waiting for {@code fd}. */
+  void wakeup(int fd) {
+    final Registration registration = registrations.get(fd);
+    if (registration != null) {
+      synchronized (registration) {
+        registration.wakeup();
+      }
+    }
+  }
+
+  /**
+   * Unparks the threads that are waiting for {@code fd}, in both directions, because it is being
+   * closed. Until {@link #released} is called for it, threads that try to wait for {@code fd}
+   * return at once.
+   */
+  static void wakeupAll(UnixDomainSocketLibraryProvider provider, int fd) {
+    for (int events : new int[] {UnixDomainSocketLibrary.POLLIN, UnixDomainSocketLibrary.POLLOUT}) {
+      final UnixDomainPoller poller;
+      synchronized (pollers) {
+        poller = pollers.get(name(provider, events));
+      }
+      if (poller != null) {
+        poller.forget(fd);
+      }
+    }
+  }
+
+  /**
+   * Forgets about {@code fd} once it is about to be closed, so that its number can be reused. Must
+   * be called before the descriptor is closed if {@link #wakeupAll} was called for it.
+   */
+  static void released(UnixDomainSocketLibraryProvider provider, int fd) {
+    for (int events : new int[] {UnixDomainSocketLibrary.POLLIN, UnixDomainSocketLibrary.POLLOUT}) {
+      final UnixDomainPoller poller;
+      synchronized (pollers) {
+        poller = pollers.get(name(provider, events));
+      }
+      if (poller != null) {
+        poller.registrations.computeIfPresent(
+            fd,
+            (k, registration) -> {
+              synchronized (registration) {
+                return registration.closed ? null : registration;
+              }
+            });
+      }
+    }
+  }
+
+  private void forget(int fd) {
+    // The closed registration stays behind as a tombstone, so that a thread that is about to wait
+    // for the descriptor doesn't register it afresh and park until the descriptor is released.
+    final Registration registration = registrations.computeIfAbsent(fd, k -> new Registration());
+    synchronized (registration) {
+      registration.closed = true;
+      if (registration.registered) {
+        registration.registered = false;
+        try {
+          provider.epollCtl(epfd, UnixDomainSocketLibrary.EPOLL_CTL_DEL, fd, 0);
+        } catch (NativeErrorException e) {
+          // The descriptor has already been closed, which removes it from the interest list.
+        }
+      }
+      registration.wakeup();
+    }
+  }
+
+  private void runEpoll() {
+    final int[] fds = new int[MAX_EVENTS];
+    final int[] ready = new int[MAX_EVENTS];
+    while (true) {
+      try {
+        final int count = provider.epollWait(epfd, fds, ready, -1);
+        for (int i = 0; i < count; i++) {
+          wakeup(fds[i]);
+        }
+      } catch (NativeErrorException e) {
+        // Errors are only reported for an invalid epoll instance, which can't happen while the
+        // poller is alive. Wake everybody so that they retry rather than hang.
+        wakeupEverybody();
+      }
+    }
+  }
+
+  private void runPoll() {
+    int[] fds = new int[0];
+    int[] interest = new int[0];
+    int[] ready = new int[0];
+    while (true) {
+      final List<Integer> waited = new ArrayList<>();
+      waited.add(wakeupPipe[0]);
+      registrations.forEach(
+          (fd, registration) -> {
+            synchronized (registration) {
+              if (!registration.waiters.isEmpty()) {
+                waited.add(fd);
+              }
+            }
+          });
+      if (fds.length != waited.size()) {
+        fds = new int[waited.size()];
+        interest = new int[waited.size()];
+        ready = new int[waited.size()];
+      }
+      for (int i = 0; i < fds.length; i++) {
+        fds[i] = waited.get(i);
+        interest[i] = i == 0 ? UnixDomainSocketLibrary.POLLIN : events;
+        ready[i] = 0;
+      }
+      try {
+        provider.poll(fds, interest, ready, -1);
+        if (ready[0] != 0) {
+          drainWakeupPipe();
+        }
+        for (int i = 1; i < fds.length; i++) {
+          if (ready[i] != 0) {
+            wakeup(fds[i]);
+          }
+        }
+      } catch (NativeErrorException e) {
+        wakeupEverybody();
+      }
+    }
+  }
+
+  /** Interrupts the {@code poll(2)} of the polling thread so that it picks up new descriptors. */
+  private void signal() throws IOException {
+    try {
+      // A full pipe already has a wakeup pending, in which case the write is unavailable.
+      provider.write(wakeupPipe[1], new byte[1], 0, 1);
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void drainWakeupPipe() throws NativeErrorException {
+    final byte[] buffer = new byte[64];
+    while (provider.read(wakeupPipe[0], buffer, 0, buffer.length) > 0) {}
+  }
+
+  private void wakeupEverybody() {
+    for (Integer fd : registrations.keySet()) {
+      wakeup(fd);
+    }
+    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FALLBACK_TIMEOUT_MILLIS));
+  }
+}
@@ -0,0 +1,58 @@
+package org.scalasbt.ipcsocket;
+
+import java.net.ProtocolFamily;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.spi.AbstractSelector;
+import java.nio.channels.spi.SelectorProvider;
+
+/**
+ * The provider of {@link UnixDomainSocketChannel} and {@link UnixDomainServerSocketChannel}. It
+ * can't open selectors or channels: registering one of these channels with a selector of another
+ * provider throws an {@link java.nio.channels.IllegalSelectorException}, and {@code
+ * provider().openSelector()} throws an {@link UnsupportedOperationException} that points to {@link
+ * UnixDomainEventLoop}, which waits for the readiness of many sockets instead.
+ */
+final class UnixDomainSelectorProvider extends SelectorProvider {
+  static final UnixDomainSelectorProvider INSTANCE = new UnixDomainSelectorProvider();
+
+  private UnixDomainSelectorProvider() {}
+
+  private static UnsupportedOperationException unsupported() {
+    return new UnsupportedOperationException(
+        "Unix domain socket channels can't be used with a Selector, use UnixDomainEventLoop"
+            + " to wait for many sockets");
+  }
+
+  @Override
+  public DatagramChannel openDatagramChannel() {
+    throw unsupported();
+  }
+
+  @Override
+  public DatagramChannel openDatagramChannel(ProtocolFamily family) {
+    throw unsupported();
+  }
+
+  @Override
+  public Pipe openPipe() {
+    throw unsupported();
+  }
+
+  @Override
+  public AbstractSelector openSelector() {
+    throw unsupported();
+  }
+
+  @Override
+  public ServerSocketChannel openServerSocketChannel() {
+    throw unsupported();
+  }
+
+  @Override
+  public SocketChannel openSocketChannel() {
+    throw unsupported();
+  }
+}
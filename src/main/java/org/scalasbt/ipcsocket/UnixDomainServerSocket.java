@@ -21,6 +21,17 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -28,10 +39,13 @@ import java.util.concurrent.atomic.AtomicInteger;
  * of {@link UnixDomainSocket} from {@link #accept()}.
  */
 public class UnixDomainServerSocket extends ServerSocket {
-  private static final int DEFAULT_BACKLOG = 50;
-  private static final int PF_LOCAL = 1;
-  private static final int AF_LOCAL = 1;
-  private static final int SOCK_STREAM = 1;
+  /**
+   * The listen backlog of the constructors that don't take one. It is the value of the {@code
+   * sbt.ipcsocket.backlog} system property if that is set. Otherwise it is {@code
+   * net.core.somaxconn} on Linux, the largest backlog that the kernel allows, but at least 50, and
+   * 128 elsewhere.
+   */
+  static final int DEFAULT_BACKLOG = defaultBacklog();
 
   // We use an AtomicInteger to prevent a race in this situation which
   // could happen if fd were just an int:
@@ -55,11 +69,18 @@ public class UnixDomainServerSocket extends ServerSocket {
   // being called on an unrelated fd (which may or may not fail).
   private final AtomicInteger fd;
 
-  private final int backlog;
+  private int backlog;
   private boolean isBound;
   private boolean isClosed;
   private final UnixDomainSocketLibraryProvider provider;
   private final boolean useJNI;
+  private String path;
+  private UnixDomainServerSocketChannel channel;
+  private final SocketMetrics.Counters metrics = new SocketMetrics.Counters();
+  private volatile boolean usePoller;
+  private volatile boolean nonBlocking;
+  private volatile int soTimeout;
+  private volatile int receiveBufferSize;
 
   public static class UnixDomainServerSocketAddress extends SocketAddress {
     private final String path;
@@ -105,11 +126,39 @@ public class UnixDomainServerSocket extends ServerSocket {
    * listen backlog.
    */
   public UnixDomainServerSocket(int backlog, String path, boolean useJNI) throws IOException {
+    this(backlog, path, useJNI, UnixDomainSocketLibrary.SOCK_STREAM);
+  }
+
+  /**
+   * Constructs and binds a Unix domain server socket of the specified type to the specified path.
+   * With {@link UnixDomainSocketLibrary#SOCK_SEQPACKET}, the accepted sockets preserve message
+   * boundaries, see {@link UnixDomainSocket#sendMessage(ByteBuffer)}.
+   */
+  public UnixDomainServerSocket(int backlog, String path, boolean useJNI, int socketType)
+      throws IOException {
+    this(backlog, path, useJNI, socketType, UnixDomainSocketLibraryProvider.get(useJNI));
+  }
+
+  /**
+   * Like {@link #UnixDomainServerSocket(int, String, boolean, int)}, but makes the calls on the
+   * listening socket through {@code provider}. The accepted sockets use the provider selected by
+   * {@code useJNI}.
+   */
+  UnixDomainServerSocket(
+      int backlog,
+      String path,
+      boolean useJNI,
+      int socketType,
+      UnixDomainSocketLibraryProvider provider)
+      throws IOException {
     try {
       this.useJNI = useJNI;
-      provider = UnixDomainSocketLibraryProvider.get(useJNI);
-      fd = new AtomicInteger(provider.socket(PF_LOCAL, SOCK_STREAM, 0));
+      this.provider = provider;
+      fd = new AtomicInteger(provider.socket(UnixDomainSocketLibrary.PF_LOCAL, socketType, 0));
       this.backlog = backlog;
+      if (UnixDomainSocket.DEFAULT_USE_POLLER) {
+        setUsePoller(true);
+      }
       if (path != null) {
         bind(new UnixDomainServerSocketAddress(path));
       }
@@ -118,6 +167,23 @@ public class UnixDomainServerSocket extends ServerSocket {
     }
   }
 
+  private static int defaultBacklog() {
+    final Integer configured = Integer.getInteger("sbt.ipcsocket.backlog");
+    if (configured != null && configured > 0) {
+      return configured;
+    }
+    try {
+      final byte[] somaxconn = Files.readAllBytes(Paths.get("/proc/sys/net/core/somaxconn"));
+      final int value = Integer.parseInt(new String(somaxconn, StandardCharsets.US_ASCII).trim());
+      if (value > 0) {
+        // Never go below the fixed default of earlier versions.
+        return Math.max(value, 50);
+      }
+    } catch (IOException | RuntimeException e) {
+    }
+    return 128;
+  }
+
   public synchronized void bind(SocketAddress endpoint) throws IOException {
     if (!(endpoint instanceof UnixDomainServerSocketAddress)) {
       throw new IllegalArgumentException(
@@ -135,13 +201,95 @@ public class UnixDomainServerSocket extends ServerSocket {
       int socketFd = fd.get();
       provider.bind(socketFd, address, address.length);
       provider.listen(socketFd, backlog);
+      path = unEndpoint.getPath();
       isBound = true;
     } catch (NativeErrorException e) {
       throw new IOException(e);
     }
   }
 
+  /**
+   * Changes the listen backlog. A bound socket calls {@code listen(2)} again, which resizes its
+   * backlog without dropping the connections that are already queued. The kernel silently limits
+   * the backlog to {@code net.core.somaxconn} on Linux and {@code kern.ipc.somaxconn} on macOS.
+   */
+  public synchronized void setBacklog(int backlog) throws IOException {
+    if (backlog < 1) {
+      throw new IllegalArgumentException("backlog must be positive");
+    }
+    if (isClosed) {
+      throw new SocketException("Socket is closed");
+    }
+    if (isBound) {
+      try {
+        provider.listen(fd.get(), backlog);
+      } catch (NativeErrorException e) {
+        throw new IOException(e);
+      }
+    }
+    this.backlog = backlog;
+  }
+
+  /** Returns the requested listen backlog, before the kernel's limit is applied. */
+  public synchronized int getBacklog() {
+    return backlog;
+  }
+
+  /**
+   * Returns the number of connections that are waiting in the listen backlog to be accepted, or -1
+   * if the platform doesn't report it. Linux reports it through {@code sock_diag(7)}. Once the
+   * queue is full, new clients fail with {@code EAGAIN} until the server catches up, so a depth
+   * that approaches the backlog means that the server accepts too slowly or the backlog is too
+   * small.
+   */
+  public int getAcceptQueueDepth() throws IOException {
+    final int serverFd = fd.get();
+    if (serverFd == -1) {
+      throw new SocketException("Socket is closed");
+    }
+    return SocketDiagnostics.acceptQueueDepth(provider, serverFd);
+  }
+
   public Socket accept() throws IOException {
+    final UnixDomainSocket socket = doAccept();
+    if (socket == null) {
+      throw new IllegalBlockingModeException();
+    }
+    return socket;
+  }
+
+  /**
+   * Accepts every pending connection, up to {@code max}, with a single native call where the
+   * platform allows it. Waits for the first connection like {@link #accept()}, and then takes only
+   * the connections that are already queued, so a burst of clients that connect at once is accepted
+   * without a round trip per client.
+   */
+  public List<UnixDomainSocket> acceptBatch(int max) throws IOException {
+    if (max < 1) {
+      throw new IllegalArgumentException("max must be positive");
+    }
+    final List<UnixDomainSocket> sockets = doAccept(max, false);
+    if (sockets.isEmpty()) {
+      throw new IllegalBlockingModeException();
+    }
+    return sockets;
+  }
+
+  /**
+   * Accepts a connection, returning {@code null} if the socket is in non-blocking mode and there is
+   * no pending connection.
+   */
+  UnixDomainSocket doAccept() throws IOException {
+    final List<UnixDomainSocket> sockets = doAccept(1, false);
+    return sockets.isEmpty() ? null : sockets.get(0);
+  }
+
+  /**
+   * Accepts up to {@code max} connections, returning an empty list if the socket is in non-blocking
+   * mode and there is no pending connection. The accepted sockets are in non-blocking mode if
+   * {@code nonBlockingSockets} is set.
+   */
+  List<UnixDomainSocket> doAccept(int max, boolean nonBlockingSockets) throws IOException {
     // We explicitly do not make this method synchronized, since the
     // call to UnixDomainSocketLibrary.accept() will block
     // indefinitely, causing another thread's call to close() to deadlock.
@@ -153,23 +301,226 @@ public class UnixDomainServerSocket extends ServerSocket {
         throw new IllegalStateException("Socket is already closed");
       }
     }
+    final int[] clientFds = new int[max];
+    final int count;
+    final boolean poller = usePoller;
     try {
-      int clientFd = provider.accept(fd.get());
-      return new UnixDomainSocket(clientFd, useJNI);
+      int serverFd = fd.get();
+      final long start = SocketMetrics.start();
+      final Object event = SocketEvents.begin(SocketEvents.ACCEPT);
+      final int timeout = soTimeout;
+      final long deadline =
+          timeout <= 0 || nonBlocking
+              ? 0
+              : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+      int result;
+      while ((result = provider.accept(serverFd, clientFds, poller || nonBlockingSockets))
+          == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+        if (nonBlocking) {
+          return Collections.emptyList();
+        }
+        if (!poller) {
+          // The socket is in non-blocking mode while it has a timeout, so that a connection taken
+          // by another thread between the poll and the accept doesn't block this one. Without a
+          // timeout, another thread is taking a batch, which briefly does the same.
+          provider.poll(
+              new int[] {serverFd},
+              new int[] {UnixDomainSocketLibrary.POLLIN},
+              new int[1],
+              remainingMillis(deadline));
+          continue;
+        }
+        if (!UnixDomainPoller.get(provider, UnixDomainSocketLibrary.POLLIN)
+            .await(serverFd, deadline, () -> fd.get() == -1)) {
+          throw new SocketTimeoutException("Accept timed out");
+        }
+        if (isClosed()) {
+          throw new SocketException("Socket is closed");
+        }
+      }
+      count = result;
+      SocketMetrics.recordAccept(metrics, start, count);
+      SocketEvents.commit(event, serverFd, path, count);
     } catch (NativeErrorException e) {
       throw new IOException(e);
     }
+    final List<UnixDomainSocket> sockets = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      sockets.add(new UnixDomainSocket(clientFds[i], useJNI, poller, nonBlockingSockets));
+    }
+    if (receiveBufferSize > 0) {
+      try {
+        for (UnixDomainSocket socket : sockets) {
+          socket.setReceiveBufferSize(receiveBufferSize);
+        }
+      } catch (IOException e) {
+        for (UnixDomainSocket socket : sockets) {
+          socket.close();
+        }
+        throw e;
+      }
+    }
+    return sockets;
   }
 
-  public synchronized void close() throws IOException {
-    if (isClosed) {
-      throw new IllegalStateException("Socket is already closed");
+  /**
+   * Waits for a pending connection for at most the {@link #setSoTimeout(int) timeout} if the socket
+   * is blocking. Sockets that use the poller wait for the returned deadline instead.
+   *
+   * @return the {@link System#nanoTime()} deadline for the poller, or 0 if there is none
+   * @throws SocketTimeoutException if no connection arrived in time
+   */
+  /**
+   * Returns the poll timeout that is left until the {@link System#nanoTime()} {@code deadline}, or
+   * -1 to wait indefinitely if it is 0.
+   *
+   * @throws SocketTimeoutException if the deadline has passed
+   */
+  private static int remainingMillis(long deadline) throws SocketTimeoutException {
+    if (deadline == 0) {
+      return -1;
+    }
+    final long remaining = deadline - System.nanoTime();
+    if (remaining <= 0) {
+      throw new SocketTimeoutException("Accept timed out");
+    }
+    return (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+  }
+
+  /**
+   * Limits how long {@link #accept()} waits for a connection before throwing a {@link
+   * SocketTimeoutException}. The socket remains usable after a timeout. A timeout of 0 waits
+   * indefinitely. While a timeout is set, the listening socket is in non-blocking mode, so that
+   * threads that lose a connection to another one keep to their timeout.
+   */
+  @Override
+  public void setSoTimeout(int timeout) throws SocketException {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout can't be negative");
+    }
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
     }
+    soTimeout = timeout;
     try {
+      updateBlocking();
+    } catch (IOException e) {
+      throw new SocketException(e.getMessage());
+    }
+  }
 
-      // Ensure any pending call to accept() fails.
-      provider.close(fd.getAndSet(-1));
-      isClosed = true;
+  @Override
+  public int getSoTimeout() throws IOException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+    return soTimeout;
+  }
+
+  /**
+   * Sets {@code SO_RCVBUF} on the listening socket and on every socket that it accepts from now on.
+   */
+  @Override
+  public void setReceiveBufferSize(int size) throws SocketException {
+    try {
+      provider.setSocketOption(
+          fd.get(),
+          UnixDomainSocketLibrary.SOL_SOCKET,
+          UnixDomainSocketLibrary.SO_RCVBUF,
+          UnixDomainSocket.positive(size));
+      receiveBufferSize = size;
+    } catch (NativeErrorException e) {
+      throw new SocketException(e.getMessage());
+    }
+  }
+
+  @Override
+  public int getReceiveBufferSize() throws SocketException {
+    try {
+      return provider.getSocketOption(
+          fd.get(), UnixDomainSocketLibrary.SOL_SOCKET, UnixDomainSocketLibrary.SO_RCVBUF);
+    } catch (NativeErrorException e) {
+      throw new SocketException(e.getMessage());
+    }
+  }
+
+  public void close() throws IOException {
+    final UnixDomainServerSocketChannel c;
+    synchronized (this) {
+      if (isClosed) {
+        throw new IllegalStateException("Socket is already closed");
+      }
+      try {
+
+        // Ensure any pending call to accept() fails.
+        final int serverFd = fd.getAndSet(-1);
+        if (usePoller) {
+          UnixDomainPoller.wakeupAll(provider, serverFd);
+          UnixDomainPoller.released(provider, serverFd);
+        }
+        provider.close(serverFd);
+        isClosed = true;
+      } catch (NativeErrorException e) {
+        throw new IOException(e);
+      }
+      c = channel;
+    }
+    if (c != null) {
+      c.close();
+    }
+  }
+
+  public synchronized boolean isBound() {
+    return isBound;
+  }
+
+  public synchronized boolean isClosed() {
+    return isClosed;
+  }
+
+  /** Returns the {@link UnixDomainServerSocketChannel} that shares this socket's descriptor. */
+  public synchronized UnixDomainServerSocketChannel getChannel() {
+    if (channel == null) {
+      channel = new UnixDomainServerSocketChannel(this);
+    }
+    return channel;
+  }
+
+  synchronized String getPath() {
+    return path;
+  }
+
+  int getFd() {
+    return fd.get();
+  }
+
+  void setNonBlocking(boolean nonBlocking) throws IOException {
+    this.nonBlocking = nonBlocking;
+    updateBlocking();
+  }
+
+  /**
+   * Makes {@link #accept()} wait for connections on a shared poller rather than inside a system
+   * call, and makes the accepted sockets do the same. See {@link
+   * UnixDomainSocket#setUsePoller(boolean)}.
+   */
+  public void setUsePoller(boolean usePoller) throws IOException {
+    this.usePoller = usePoller;
+    updateBlocking();
+  }
+
+  public boolean getUsePoller() {
+    return usePoller;
+  }
+
+  /** Returns the I/O counters of this server socket, see {@link SocketMetrics}. */
+  public SocketMetrics.Counters getMetrics() {
+    return metrics;
+  }
+
+  private void updateBlocking() throws IOException {
+    try {
+      provider.setNonBlocking(fd.get(), usePoller || nonBlocking || soTimeout > 0);
     } catch (NativeErrorException e) {
       throw new IOException(e);
     }
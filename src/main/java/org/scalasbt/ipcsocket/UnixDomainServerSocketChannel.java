@@ -0,0 +1,122 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A {@link ServerSocketChannel} backed by a {@link UnixDomainServerSocket} whose {@link #accept()}
+ * returns instances of {@link UnixDomainSocketChannel}. The channel and the server socket share a
+ * single file descriptor, so closing either one closes both. In non-blocking mode, {@link
+ * #accept()} returns {@code null} if there is no pending connection. The channel cannot be
+ * registered with a {@link java.nio.channels.Selector}, which throws an {@link
+ * java.nio.channels.IllegalSelectorException}; use {@link UnixDomainEventLoop} instead.
+ */
+public class UnixDomainServerSocketChannel extends ServerSocketChannel {
+  private final UnixDomainServerSocket serverSocket;
+
+  UnixDomainServerSocketChannel(UnixDomainServerSocket serverSocket) {
+    super(UnixDomainSelectorProvider.INSTANCE);
+    this.serverSocket = serverSocket;
+  }
+
+  /** Opens a channel that is bound to the Unix domain socket at {@code path}. */
+  public static UnixDomainServerSocketChannel open(String path, boolean useJNI) throws IOException {
+    return new UnixDomainServerSocket(path, useJNI).getChannel();
+  }
+
+  public static UnixDomainServerSocketChannel open(String path) throws IOException {
+    return open(path, false);
+  }
+
+  /**
+   * Binds the channel to a {@link UnixDomainServerSocket.UnixDomainServerSocketAddress}. A {@code
+   * backlog} of 0 or less keeps the backlog of the underlying server socket.
+   */
+  @Override
+  public ServerSocketChannel bind(SocketAddress local, int backlog) throws IOException {
+    ensureOpen();
+    if (backlog > 0) {
+      serverSocket.setBacklog(backlog);
+    }
+    serverSocket.bind(local);
+    return this;
+  }
+
+  @Override
+  public <T> ServerSocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+    checkOption(name);
+    if (!(value instanceof Integer)) {
+      throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+    }
+    serverSocket.setReceiveBufferSize((Integer) value);
+    return this;
+  }
+
+  @Override
+  public <T> T getOption(SocketOption<T> name) throws IOException {
+    checkOption(name);
+    return name.type().cast(serverSocket.getReceiveBufferSize());
+  }
+
+  @Override
+  public Set<SocketOption<?>> supportedOptions() {
+    return Collections.<SocketOption<?>>singleton(StandardSocketOptions.SO_RCVBUF);
+  }
+
+  private void checkOption(SocketOption<?> name) throws ClosedChannelException {
+    if (name != StandardSocketOptions.SO_RCVBUF) {
+      throw new UnsupportedOperationException("'" + name + "' not supported");
+    }
+    ensureOpen();
+  }
+
+  @Override
+  public UnixDomainServerSocket socket() {
+    return serverSocket;
+  }
+
+  @Override
+  public UnixDomainSocketChannel accept() throws IOException {
+    ensureOpen();
+    boolean completed = false;
+    try {
+      begin();
+      final UnixDomainSocket socket = serverSocket.doAccept();
+      completed = true;
+      return socket == null ? null : socket.getChannel();
+    } finally {
+      end(completed);
+    }
+  }
+
+  @Override
+  public SocketAddress getLocalAddress() throws IOException {
+    ensureOpen();
+    final String path = serverSocket.getPath();
+    return path == null ? null : new UnixDomainServerSocket.UnixDomainServerSocketAddress(path);
+  }
+
+  @Override
+  protected void implCloseSelectableChannel() throws IOException {
+    if (!serverSocket.isClosed()) {
+      serverSocket.close();
+    }
+  }
+
+  @Override
+  protected void implConfigureBlocking(boolean block) throws IOException {
+    serverSocket.setNonBlocking(!block);
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+}
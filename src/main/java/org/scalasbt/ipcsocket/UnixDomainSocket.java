@@ -17,15 +17,30 @@ limitations under the License.
 */
 package org.scalasbt.ipcsocket;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
 
 import java.net.Socket;
+import java.net.SocketOption;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Implements a {@link Socket} backed by a native Unix domain socket.
@@ -35,26 +50,94 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Socket#getRemoteSocketAddress()}.
  */
 public class UnixDomainSocket extends Socket {
+  /** The maximum number of descriptors that can be passed with {@link #sendFileDescriptors}. */
+  public static final int MAX_FILE_DESCRIPTORS = 253;
+
+  /** The buffer size of the streams returned by {@link #getBufferedInputStream()} and friends. */
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * Whether new sockets use the shared poller, see {@link #setUsePoller(boolean)}. Set the {@code
+   * sbt.ipcsocket.usePoller} system property to {@code true} to enable it by default, which also
+   * makes the constructors wait for a full listen backlog without blocking the thread.
+   */
+  static final boolean DEFAULT_USE_POLLER = Boolean.getBoolean("sbt.ipcsocket.usePoller");
+
+  private static final long CONNECT_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long MAX_CONNECT_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(64);
+
+  /** Controls when a buffered output stream writes its buffer to the socket. */
+  public enum FlushPolicy {
+    /** Only when the buffer is full or the stream is flushed or closed. */
+    EXPLICIT,
+    /** Additionally at the end of each write that contains a newline. */
+    LINE,
+    /** Additionally at the end of each write, coalescing the bytes of a single write call. */
+    WRITE
+  }
+
   private final UnixDomainSocketLibraryProvider provider;
   private final ReferenceCountedFileDescriptor fd;
   private final InputStream is;
   private final OutputStream os;
   private final String path;
+  private UnixDomainSocketChannel channel;
+  private BufferedSocketInputStream bufferedIs;
+  private BufferedSocketOutputStream bufferedOs;
+  private final SocketMetrics.Counters metrics = new SocketMetrics.Counters();
+  private volatile boolean usePoller;
+  private volatile boolean nonBlocking;
+  private volatile int soTimeout;
   private static final int SHUT_RD = 0;
   private static final int SHUT_WR = 1;
+  private static final int SPLICE_CHUNK = 64 * 1024;
 
   /** Creates a Unix domain socket backed by a file path. */
   public UnixDomainSocket(String path, boolean useJNI) throws IOException {
+    this(path, useJNI, UnixDomainSocketLibrary.SOCK_STREAM);
+  }
+
+  /**
+   * Creates a Unix domain socket of the specified type backed by a file path. A {@link
+   * UnixDomainSocketLibrary#SOCK_SEQPACKET} socket must connect to a server socket of the same type
+   * and preserves message boundaries, see {@link #sendMessage(ByteBuffer)}.
+   */
+  public UnixDomainSocket(String path, boolean useJNI, int socketType) throws IOException {
+    this(path, useJNI, socketType, 0);
+  }
+
+  /**
+   * Creates a Unix domain socket of the specified type backed by a file path, waiting at most
+   * {@code connectTimeoutMillis} for the server to make room in its listen backlog. A timeout of 0
+   * waits indefinitely.
+   *
+   * @throws SocketTimeoutException if the connection wasn't accepted into the backlog in time
+   */
+  public UnixDomainSocket(String path, boolean useJNI, int socketType, int connectTimeoutMillis)
+      throws IOException {
+    if (connectTimeoutMillis < 0) {
+      throw new IllegalArgumentException("connectTimeoutMillis can't be negative");
+    }
     try {
       this.path = path;
       provider = UnixDomainSocketLibraryProvider.get(useJNI);
       AtomicInteger fd =
-          new AtomicInteger(
-              provider.socket(
-                  UnixDomainSocketLibrary.PF_LOCAL, UnixDomainSocketLibrary.SOCK_STREAM, 0));
+          new AtomicInteger(provider.socket(UnixDomainSocketLibrary.PF_LOCAL, socketType, 0));
       int socketFd = fd.get();
-      provider.connect(socketFd, path.getBytes(), path.length());
-      this.fd = new ReferenceCountedFileDescriptor(socketFd, provider);
+      final long start = SocketMetrics.start();
+      final Object event = SocketEvents.begin(SocketEvents.CONNECT);
+      try {
+        connect(socketFd, path, connectTimeoutMillis);
+      } catch (IOException | NativeErrorException e) {
+        SocketMetrics.recordConnect(start, false);
+        SocketEvents.commit(event, socketFd, path, 0);
+        provider.close(socketFd);
+        throw e;
+      }
+      SocketMetrics.recordConnect(start, true);
+      SocketEvents.commit(event, socketFd, path, 1);
+      this.fd = newFileDescriptor(socketFd, provider);
+      this.usePoller = DEFAULT_USE_POLLER;
       this.is = new UnixDomainSocketInputStream();
       this.os = new UnixDomainSocketOutputStream();
     } catch (NativeErrorException e) {
@@ -70,11 +153,79 @@ public class UnixDomainSocket extends Socket {
   public UnixDomainSocket(int fd, boolean useJNI) {
     provider = UnixDomainSocketLibraryProvider.get(useJNI);
     this.path = null;
-    this.fd = new ReferenceCountedFileDescriptor(fd, provider);
+    this.fd = newFileDescriptor(fd, provider);
     this.is = new UnixDomainSocketInputStream();
     this.os = new UnixDomainSocketOutputStream();
   }
 
+  /**
+   * Creates a socket for a descriptor that was accepted already in non-blocking mode if either
+   * {@code usePoller} or {@code nonBlocking} is set, so no further system call is needed.
+   */
+  UnixDomainSocket(int fd, boolean useJNI, boolean usePoller, boolean nonBlocking) {
+    this(fd, useJNI);
+    this.usePoller = usePoller;
+    this.nonBlocking = nonBlocking;
+  }
+
+  /**
+   * Connects {@code socketFd} to {@code path}. A Unix domain socket waits in {@code connect(2)}
+   * while the server's listen backlog is full, and with a timeout it waits for at most the socket's
+   * send timeout, so the kernel wakes it as soon as the server makes room. There is no descriptor
+   * to poll for that, however, so a socket that uses the poller must not block and instead retries
+   * a non-blocking connect, parking the thread for exponentially longer between attempts.
+   */
+  private void connect(int socketFd, String path, int timeoutMillis)
+      throws IOException, NativeErrorException {
+    if (!DEFAULT_USE_POLLER) {
+      if (timeoutMillis > 0) {
+        provider.setSocketTimeout(socketFd, UnixDomainSocketLibrary.SO_SNDTIMEO, timeoutMillis);
+      }
+      try {
+        provider.connect(socketFd, path.getBytes(), path.length());
+      } catch (NativeErrorException e) {
+        if (timeoutMillis > 0 && e.returnCode() == UnixDomainSocketLibrary.EAGAIN) {
+          throw new SocketTimeoutException("Connect timed out");
+        }
+        throw e;
+      }
+      if (timeoutMillis > 0) {
+        provider.setSocketTimeout(socketFd, UnixDomainSocketLibrary.SO_SNDTIMEO, 0);
+      }
+      return;
+    }
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    long backoff = CONNECT_RETRY_NANOS;
+    provider.setNonBlocking(socketFd, true);
+    while (true) {
+      try {
+        provider.connect(socketFd, path.getBytes(), path.length());
+        return;
+      } catch (NativeErrorException e) {
+        if (e.returnCode() != UnixDomainSocketLibrary.EAGAIN) {
+          throw e;
+        }
+      }
+      long park = backoff;
+      if (timeoutMillis > 0) {
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          throw new SocketTimeoutException("Connect timed out");
+        }
+        park = Math.min(park, remaining);
+      }
+      LockSupport.parkNanos(park);
+      backoff = Math.min(backoff * 2, MAX_CONNECT_RETRY_NANOS);
+    }
+  }
+
+  /** Wraps {@code fd}, which the poller must forget about before it is closed. */
+  private static ReferenceCountedFileDescriptor newFileDescriptor(
+      int fd, UnixDomainSocketLibraryProvider provider) {
+    return new ReferenceCountedFileDescriptor(
+        fd, provider, () -> UnixDomainPoller.released(provider, fd));
+  }
+
   public UnixDomainSocket(int fd) {
     this(fd, false);
   }
@@ -87,6 +238,688 @@ public class UnixDomainSocket extends Socket {
     return os;
   }
 
+  /**
+   * Returns an input stream that reads from the socket through a pooled buffer, so that reading a
+   * line or a header one byte at a time doesn't make a system call per byte. The stream is created
+   * by the first call to this method or {@link #getBufferedInputStream()}; later calls return the
+   * same stream and ignore their arguments. Closing the stream, or the socket, returns its buffer
+   * to the pool; closing the stream doesn't close the socket. Bytes that the stream has buffered
+   * are not visible to the other read methods of this socket.
+   *
+   * @param bufferSize the capacity of the buffer
+   * @param direct whether to use a direct buffer, which the kernel fills without an intermediate
+   *     copy
+   */
+  public synchronized InputStream getBufferedInputStream(int bufferSize, boolean direct) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+    }
+    if (bufferedIs == null) {
+      bufferedIs = new BufferedSocketInputStream(BufferPool.acquire(bufferSize, direct));
+    }
+    return bufferedIs;
+  }
+
+  public InputStream getBufferedInputStream() {
+    return getBufferedInputStream(DEFAULT_BUFFER_SIZE, false);
+  }
+
+  /**
+   * Returns an output stream that collects small writes in a pooled buffer and writes them to the
+   * socket according to {@code flushPolicy}. The stream is created by the first call to this method
+   * or {@link #getBufferedOutputStream()}; later calls return the same stream and ignore their
+   * arguments. Closing the stream flushes it and returns its buffer to the pool but doesn't close
+   * the socket. Closing the socket returns the buffer to the pool too, and discards the bytes that
+   * haven't been flushed.
+   *
+   * @param bufferSize the capacity of the buffer
+   * @param direct whether to use a direct buffer, which is handed to the kernel without an
+   *     intermediate copy
+   * @param flushPolicy when to write the buffer to the socket
+   */
+  public synchronized OutputStream getBufferedOutputStream(
+      int bufferSize, boolean direct, FlushPolicy flushPolicy) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+    }
+    Objects.requireNonNull(flushPolicy, "flushPolicy");
+    if (bufferedOs == null) {
+      bufferedOs =
+          new BufferedSocketOutputStream(BufferPool.acquire(bufferSize, direct), flushPolicy);
+    }
+    return bufferedOs;
+  }
+
+  public OutputStream getBufferedOutputStream() {
+    return getBufferedOutputStream(DEFAULT_BUFFER_SIZE, false, FlushPolicy.EXPLICIT);
+  }
+
+  /**
+   * Reads bytes from the socket into {@code dst}, advancing its position. A direct buffer is filled
+   * by the kernel without an intermediate copy through the java heap.
+   *
+   * @return the number of bytes read, or -1 if the end of the stream has been reached. A socket in
+   *     non-blocking mode returns 0 if no bytes are available.
+   */
+  public int read(ByteBuffer dst) throws IOException {
+    return read(dst, 0);
+  }
+
+  private int read(ByteBuffer dst, int timeoutMillis) throws IOException {
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+    try {
+      int fdToRead = fd.acquire();
+      if (fdToRead == -1) {
+        return -1;
+      }
+      final long start = SocketMetrics.start();
+      final Object event = SocketEvents.begin(SocketEvents.READ);
+      final long deadline = pollReadable(fdToRead, timeoutMillis);
+      int result;
+      while ((result = provider.read(fdToRead, dst))
+          == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+        if (!awaitReady(fdToRead, UnixDomainSocketLibrary.POLLIN, deadline)) {
+          return 0;
+        }
+      }
+      SocketMetrics.recordRead(metrics, start, result);
+      result = result == 0 ? -1 : result;
+      SocketEvents.commit(event, fdToRead, path, result);
+      return result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Writes the remaining bytes of {@code src} to the socket, advancing its position. A direct
+   * buffer is handed to the kernel without an intermediate copy through the java heap.
+   *
+   * @return the number of bytes written. A socket in non-blocking mode may write fewer bytes than
+   *     remain in {@code src}.
+   */
+  public int write(ByteBuffer src) throws IOException {
+    try {
+      int fdToWrite = fd.acquire();
+      if (fdToWrite == -1) {
+        return 0;
+      }
+      final long start = SocketMetrics.start();
+      final Object event = SocketEvents.begin(SocketEvents.WRITE);
+      int written = 0;
+      while (src.hasRemaining()) {
+        int result = provider.write(fdToWrite, src);
+        if (result == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+          if (awaitReady(fdToWrite, UnixDomainSocketLibrary.POLLOUT)) {
+            continue;
+          }
+          break;
+        }
+        written += result;
+      }
+      SocketMetrics.recordWrite(metrics, start, written);
+      SocketEvents.commit(event, fdToWrite, path, written);
+      return written;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Sends the remaining bytes of {@code message} as a single message, advancing its position. On a
+   * {@link UnixDomainSocketLibrary#SOCK_SEQPACKET} socket the message is delivered whole to one
+   * call of {@link #receiveMessage(ByteBuffer)} by the peer, so no framing is needed. Empty
+   * messages can't be told apart from the end of the stream and are rejected.
+   *
+   * @return the length of the message, or 0 if the socket is in non-blocking mode and the message
+   *     could not be sent without blocking
+   */
+  public int sendMessage(ByteBuffer message) throws IOException {
+    if (!message.hasRemaining()) {
+      throw new IllegalArgumentException("message must not be empty");
+    }
+    try {
+      int fdToWrite = fd.acquire();
+      if (fdToWrite == -1) {
+        return 0;
+      }
+      final long start = SocketMetrics.start();
+      int result;
+      while ((result = provider.write(fdToWrite, message))
+          == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+        if (!awaitReady(fdToWrite, UnixDomainSocketLibrary.POLLOUT)) {
+          return 0;
+        }
+      }
+      SocketMetrics.recordWrite(metrics, start, result);
+      return result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Receives the next message sent with {@link #sendMessage(ByteBuffer)} into {@code dst},
+   * advancing its position by the number of bytes stored. If the message is longer than {@code
+   * dst.remaining()}, the rest of it is discarded.
+   *
+   * @return the length of the message, which on Linux is larger than the number of bytes stored if
+   *     the message was truncated, -1 if the end of the stream has been reached, or 0 if the socket
+   *     is in non-blocking mode and no message is available
+   */
+  public int receiveMessage(ByteBuffer dst) throws IOException {
+    try {
+      int fdToRead = fd.acquire();
+      if (fdToRead == -1) {
+        return -1;
+      }
+      final long start = SocketMetrics.start();
+      final long deadline = pollReadable(fdToRead, soTimeout);
+      int result;
+      while ((result = provider.receiveMessage(fdToRead, dst))
+          == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+        if (!awaitReady(fdToRead, UnixDomainSocketLibrary.POLLIN, deadline)) {
+          return 0;
+        }
+      }
+      SocketMetrics.recordRead(metrics, start, result);
+      return result == 0 ? -1 : result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Reads bytes from the socket into {@code dsts[offset]} to {@code dsts[offset + length - 1]} with
+   * a single scattering read, filling each buffer in turn.
+   *
+   * @return the number of bytes read, or -1 if the end of the stream has been reached. A socket in
+   *     non-blocking mode returns 0 if no bytes are available.
+   */
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    UnixDomainSocketChannel.checkBounds(dsts.length, offset, length);
+    while (length > 0 && !dsts[offset].hasRemaining()) {
+      offset++;
+      length--;
+    }
+    if (length == 0) {
+      return 0;
+    }
+    try {
+      int fdToRead = fd.acquire();
+      if (fdToRead == -1) {
+        return -1;
+      }
+      final long start = SocketMetrics.start();
+      final Object event = SocketEvents.begin(SocketEvents.READ);
+      long result;
+      while ((result = provider.readv(fdToRead, dsts, offset, length))
+          == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+        if (!awaitReady(fdToRead, UnixDomainSocketLibrary.POLLIN)) {
+          return 0;
+        }
+      }
+      SocketMetrics.recordRead(metrics, start, result);
+      result = result == 0 ? -1 : result;
+      SocketEvents.commit(event, fdToRead, path, result);
+      return result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  public long read(ByteBuffer[] dsts) throws IOException {
+    return read(dsts, 0, dsts.length);
+  }
+
+  /**
+   * Writes the remaining bytes of {@code srcs[offset]} to {@code srcs[offset + length - 1]} to the
+   * socket with gathering writes, so that a header and a body held in separate buffers are
+   * typically sent with a single system call.
+   *
+   * @return the number of bytes written. A socket in non-blocking mode may write fewer bytes than
+   *     remain in {@code srcs}.
+   */
+  public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    UnixDomainSocketChannel.checkBounds(srcs.length, offset, length);
+    try {
+      int fdToWrite = fd.acquire();
+      if (fdToWrite == -1) {
+        return 0;
+      }
+      final long start = SocketMetrics.start();
+      final Object event = SocketEvents.begin(SocketEvents.WRITE);
+      long written = 0;
+      while (true) {
+        while (length > 0 && !srcs[offset].hasRemaining()) {
+          offset++;
+          length--;
+        }
+        if (length == 0) {
+          break;
+        }
+        long result = provider.writev(fdToWrite, srcs, offset, length);
+        if (result == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+          if (awaitReady(fdToWrite, UnixDomainSocketLibrary.POLLOUT)) {
+            continue;
+          }
+          break;
+        }
+        written += result;
+      }
+      SocketMetrics.recordWrite(metrics, start, written);
+      SocketEvents.commit(event, fdToWrite, path, written);
+      return written;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  public long write(ByteBuffer[] srcs) throws IOException {
+    return write(srcs, 0, srcs.length);
+  }
+
+  /**
+   * Writes up to {@code count} bytes of {@code src}, starting at {@code position}, to the socket.
+   * On Linux the bytes are copied from the page cache to the socket by the kernel with {@code
+   * sendfile(2)}. Elsewhere, or if the descriptor of {@code src} can't be determined, they are
+   * copied through a direct buffer. The position of {@code src} is not modified.
+   *
+   * @return the number of bytes written, which is less than {@code count} only if the end of the
+   *     file was reached or the socket is in non-blocking mode
+   */
+  public long transferFrom(FileChannel src, long position, long count) throws IOException {
+    if (position < 0 || count < 0) {
+      throw new IllegalArgumentException("position: " + position + ", count: " + count);
+    }
+    final int fileFd = FileDescriptors.of(src);
+    if (fileFd != -1) {
+      long transferred = 0;
+      try {
+        int socketFd = fd.acquire();
+        if (socketFd == -1) {
+          return 0;
+        }
+        final long start = SocketMetrics.start();
+        while (transferred < count) {
+          int chunk = (int) Math.min(count - transferred, Integer.MAX_VALUE);
+          int result = provider.sendFile(socketFd, fileFd, position + transferred, chunk);
+          if (result == UnixDomainSocketLibraryProvider.UNAVAILABLE
+              && awaitReady(socketFd, UnixDomainSocketLibrary.POLLOUT)) {
+            continue;
+          }
+          if (result == UnixDomainSocketLibraryProvider.UNAVAILABLE || result == 0) {
+            break;
+          }
+          transferred += result;
+        }
+        SocketMetrics.recordWrite(metrics, start, transferred);
+        return transferred;
+      } catch (NativeErrorException e) {
+        // The kernel may refuse some descriptors, e.g. files that can't be mapped. Copying
+        // reports the error again if it wasn't caused by sendfile itself.
+        if (transferred > 0) {
+          throw new IOException(e);
+        }
+      } finally {
+        fd.release();
+      }
+    }
+    return src.transferTo(position, count, getChannel());
+  }
+
+  /**
+   * Writes bytes from {@code payload} to the socket with {@code fds} attached, so that the peer
+   * receives duplicates of the descriptors from {@link #receiveFileDescriptors(ByteBuffer)}. The
+   * descriptors remain open in this process. A stream socket doesn't preserve message boundaries,
+   * so the descriptors travel with the first byte written and {@code payload} must not be empty.
+   *
+   * @return the number of bytes written. Any bytes of {@code payload} that remain can be written
+   *     without descriptors. A socket in non-blocking mode returns 0 if it isn't ready, in which
+   *     case the descriptors were not sent.
+   */
+  public int sendFileDescriptors(int[] fds, ByteBuffer payload) throws IOException {
+    if (fds.length > MAX_FILE_DESCRIPTORS) {
+      throw new IllegalArgumentException(
+          "Cannot send " + fds.length + " descriptors, the maximum is " + MAX_FILE_DESCRIPTORS);
+    }
+    if (!payload.hasRemaining()) {
+      throw new IllegalArgumentException("payload must not be empty");
+    }
+    try {
+      int fdToWrite = fd.acquire();
+      if (fdToWrite == -1) {
+        return 0;
+      }
+      int result;
+      while ((result = provider.sendFileDescriptors(fdToWrite, payload, fds))
+          == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+        if (!awaitReady(fdToWrite, UnixDomainSocketLibrary.POLLOUT)) {
+          return 0;
+        }
+      }
+      return result;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Reads bytes from the socket into {@code payload}, advancing its position, along with any
+   * descriptors that the peer attached to them with {@link #sendFileDescriptors(int[],
+   * ByteBuffer)}. The received descriptors belong to the caller, which must close them. A received
+   * socket can be wrapped with {@link #UnixDomainSocket(int, boolean)}. On Linux the descriptors
+   * are close-on-exec.
+   *
+   * @return the received descriptors, an empty array if no descriptors were attached to the bytes
+   *     that were read, or {@code null} if the end of the stream has been reached. A socket in
+   *     non-blocking mode returns an empty array without reading if no bytes are available.
+   */
+  public int[] receiveFileDescriptors(ByteBuffer payload) throws IOException {
+    if (!payload.hasRemaining()) {
+      throw new IllegalArgumentException("payload must not be full");
+    }
+    try {
+      int fdToRead = fd.acquire();
+      if (fdToRead == -1) {
+        return null;
+      }
+      final int[] fds = new int[MAX_FILE_DESCRIPTORS];
+      int result;
+      while ((result = provider.receiveFileDescriptors(fdToRead, payload, fds))
+          == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+        if (!awaitReady(fdToRead, UnixDomainSocketLibrary.POLLIN)) {
+          return new int[0];
+        }
+      }
+      int count = 0;
+      while (count < fds.length && fds[count] != -1) {
+        count++;
+      }
+      if (result == 0 && count == 0) {
+        return null;
+      }
+      return Arrays.copyOf(fds, count);
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /** Returns the {@link UnixDomainSocketChannel} that shares this socket's descriptor. */
+  public synchronized UnixDomainSocketChannel getChannel() {
+    if (channel == null) {
+      channel = new UnixDomainSocketChannel(this);
+    }
+    return channel;
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  UnixDomainSocketLibraryProvider getProvider() {
+    return provider;
+  }
+
+  int getFd() throws IOException {
+    try {
+      return fd.acquire();
+    } finally {
+      fd.release();
+    }
+  }
+
+  void setNonBlocking(boolean nonBlocking) throws IOException {
+    this.nonBlocking = nonBlocking;
+    updateBlocking();
+  }
+
+  /**
+   * Makes the blocking calls of this socket wait for the descriptor to become ready on a shared
+   * poller rather than inside a system call. The descriptor is put in non-blocking mode and a
+   * thread that has to wait is parked until the poller reports the descriptor as ready, so a
+   * virtual thread doesn't pin its carrier thread while it waits. This allows one virtual thread
+   * per connection to scale to many thousands of connections. The behavior of the socket is
+   * otherwise unchanged. Sockets accepted by a {@link UnixDomainServerSocket} that uses the poller
+   * use it too.
+   *
+   * <p>Waiting threads are parked only on Linux. Other platforms wait in {@code poll(2)}.
+   */
+  public void setUsePoller(boolean usePoller) throws IOException {
+    this.usePoller = usePoller;
+    updateBlocking();
+  }
+
+  public boolean getUsePoller() {
+    return usePoller;
+  }
+
+  /** Returns the I/O counters of this socket, see {@link SocketMetrics}. */
+  public SocketMetrics.Counters getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Limits how long a read from the input streams of this socket, or {@link
+   * #receiveMessage(ByteBuffer)}, waits for data before throwing a {@link SocketTimeoutException}.
+   * The socket remains usable after a timeout. A timeout of 0 waits indefinitely.
+   */
+  @Override
+  public void setSoTimeout(int timeout) throws SocketException {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout can't be negative");
+    }
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+    soTimeout = timeout;
+  }
+
+  @Override
+  public int getSoTimeout() throws SocketException {
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+    return soTimeout;
+  }
+
+  /**
+   * Sets the size of the kernel send buffer with {@code SO_SNDBUF}. Large buffers let bulk
+   * transfers make fewer, larger system calls. Linux doubles the requested size to allow for
+   * bookkeeping, and {@link #getSendBufferSize()} reports the doubled size.
+   */
+  @Override
+  public void setSendBufferSize(int size) throws SocketException {
+    setIntOption(UnixDomainSocketLibrary.SO_SNDBUF, positive(size));
+  }
+
+  @Override
+  public int getSendBufferSize() throws SocketException {
+    return getIntOption(UnixDomainSocketLibrary.SO_SNDBUF);
+  }
+
+  /** Sets the size of the kernel receive buffer with {@code SO_RCVBUF}. */
+  @Override
+  public void setReceiveBufferSize(int size) throws SocketException {
+    setIntOption(UnixDomainSocketLibrary.SO_RCVBUF, positive(size));
+  }
+
+  @Override
+  public int getReceiveBufferSize() throws SocketException {
+    return getIntOption(UnixDomainSocketLibrary.SO_RCVBUF);
+  }
+
+  /**
+   * Sets a socket option. {@link StandardSocketOptions#SO_SNDBUF} and {@link
+   * StandardSocketOptions#SO_RCVBUF} are supported.
+   */
+  public <T> UnixDomainSocket setOption(SocketOption<T> name, T value) throws IOException {
+    final int option = optionNumber(name);
+    if (!(value instanceof Integer)) {
+      throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+    }
+    setIntOption(option, positive((Integer) value));
+    return this;
+  }
+
+  public <T> T getOption(SocketOption<T> name) throws IOException {
+    return name.type().cast(getIntOption(optionNumber(name)));
+  }
+
+  public Set<SocketOption<?>> supportedOptions() {
+    return SUPPORTED_OPTIONS;
+  }
+
+  private static final Set<SocketOption<?>> SUPPORTED_OPTIONS =
+      Collections.unmodifiableSet(
+          new HashSet<SocketOption<?>>(
+              Arrays.asList(StandardSocketOptions.SO_SNDBUF, StandardSocketOptions.SO_RCVBUF)));
+
+  private static int optionNumber(SocketOption<?> name) {
+    if (name == StandardSocketOptions.SO_SNDBUF) {
+      return UnixDomainSocketLibrary.SO_SNDBUF;
+    } else if (name == StandardSocketOptions.SO_RCVBUF) {
+      return UnixDomainSocketLibrary.SO_RCVBUF;
+    }
+    throw new UnsupportedOperationException("'" + name + "' not supported");
+  }
+
+  static int positive(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("negative or zero buffer size: " + size);
+    }
+    return size;
+  }
+
+  private void setIntOption(int option, int value) throws SocketException {
+    try {
+      int socketFd = fd.acquire();
+      if (socketFd == -1) {
+        throw new SocketException("Socket is closed");
+      }
+      provider.setSocketOption(socketFd, UnixDomainSocketLibrary.SOL_SOCKET, option, value);
+    } catch (NativeErrorException e) {
+      throw new SocketException(e.getMessage());
+    } finally {
+      releaseFd();
+    }
+  }
+
+  private int getIntOption(int option) throws SocketException {
+    try {
+      int socketFd = fd.acquire();
+      if (socketFd == -1) {
+        throw new SocketException("Socket is closed");
+      }
+      return provider.getSocketOption(socketFd, UnixDomainSocketLibrary.SOL_SOCKET, option);
+    } catch (NativeErrorException e) {
+      throw new SocketException(e.getMessage());
+    } finally {
+      releaseFd();
+    }
+  }
+
+  /** Releases the descriptor in a method that can only throw {@link SocketException}. */
+  private void releaseFd() throws SocketException {
+    try {
+      fd.release();
+    } catch (SocketException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new SocketException(e.getMessage());
+    }
+  }
+
+  private void updateBlocking() throws IOException {
+    try {
+      int socketFd = fd.acquire();
+      if (socketFd != -1) {
+        provider.setNonBlocking(socketFd, usePoller || nonBlocking);
+      }
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    } finally {
+      fd.release();
+    }
+  }
+
+  /**
+   * Waits for a blocking socket to become readable for at most {@code timeoutMillis}, so that the
+   * following read doesn't block indefinitely. Sockets that use the poller wait for the returned
+   * deadline instead.
+   *
+   * @return the deadline to pass to {@link #awaitReady(int, int, long)}, or 0 if there is none
+   * @throws SocketTimeoutException if the socket didn't become readable in time
+   */
+  private long pollReadable(int socketFd, int timeoutMillis) throws IOException {
+    if (timeoutMillis <= 0 || nonBlocking) {
+      return 0;
+    }
+    if (usePoller) {
+      return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+    try {
+      final int ready =
+          provider.poll(
+              new int[] {socketFd},
+              new int[] {UnixDomainSocketLibrary.POLLIN},
+              new int[1],
+              timeoutMillis);
+      if (ready == 0) {
+        throw new SocketTimeoutException("Read timed out");
+      }
+      return 0;
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Waits until {@code socketFd} is ready for {@code events} if the socket uses the poller and
+   * hasn't been put in non-blocking mode.
+   *
+   * @return true if the caller should retry its call, or false if it should report that the call
+   *     would have blocked
+   */
+  private boolean awaitReady(int socketFd, int events) throws IOException {
+    return awaitReady(socketFd, events, 0);
+  }
+
+  /**
+   * Like {@link #awaitReady(int, int)}, but throws a {@link SocketTimeoutException} once the {@link
+   * System#nanoTime()} {@code deadline} has passed, unless it is 0.
+   */
+  private boolean awaitReady(int socketFd, int events, long deadline) throws IOException {
+    if (!usePoller || nonBlocking) {
+      return false;
+    }
+    if (!UnixDomainPoller.get(provider, events).await(socketFd, deadline, this::isClosed)) {
+      throw new SocketTimeoutException("Read timed out");
+    }
+    if (isClosed()) {
+      throw new SocketException("Socket is closed");
+    }
+    return true;
+  }
+
   public void shutdownInput() throws IOException {
     doShutdown(SHUT_RD);
   }
@@ -109,20 +942,52 @@ public class UnixDomainSocket extends Socket {
   }
 
   public void close() throws IOException {
+    final Object event = SocketEvents.begin(SocketEvents.CLOSE);
+    final int closedFd = event == null ? -1 : getFd();
     super.close();
     // This might not close the FD right away. In case we are about
     // to read or write on another thread, it will delay the close
     // until the read or write completes, to prevent the FD from
     // being re-used for a different purpose and the other thread
     // reading from a different FD.
+    if (usePoller) {
+      try {
+        final int socketFd = fd.acquire();
+        if (socketFd != -1) {
+          UnixDomainPoller.wakeupAll(provider, socketFd);
+        }
+      } finally {
+        fd.release();
+      }
+    }
     fd.close();
+    final UnixDomainSocketChannel c;
+    final BufferedSocketInputStream bis;
+    final BufferedSocketOutputStream bos;
+    synchronized (this) {
+      c = channel;
+      bis = bufferedIs;
+      bos = bufferedOs;
+    }
+    if (bis != null) {
+      bis.discard();
+    }
+    if (bos != null) {
+      bos.discard();
+    }
+    if (c != null) {
+      c.close();
+    }
+    if (closedFd != -1) {
+      SocketEvents.commit(event, closedFd, path, 0);
+    }
   }
 
   private class UnixDomainSocketInputStream extends InputStream {
     public int read() throws IOException {
       byte[] buf = new byte[1];
       int result;
-      if (doRead(buf, 0, 1) == 0) {
+      if (doRead(buf, 0, 1) <= 0) {
         result = -1;
       } else {
         // Make sure to & with 0xFF to avoid sign extension
@@ -138,23 +1003,146 @@ public class UnixDomainSocket extends Socket {
       int result = doRead(b, off, len);
       if (result == 0) {
         try {
-          provider.close(fd.acquire());
-        } catch (final NativeErrorException e) {
-          throw new IOException(
-              "Error closing " + fd.acquire() + (path == null ? "" : " for " + path));
+          fd.close();
+        } catch (IOException e) {
+          throw new IOException("Error closing socket" + (path == null ? "" : " for " + path), e);
         }
         result = -1;
       }
       return result;
     }
 
+    /**
+     * Transfers the rest of the stream to {@code out}. On Linux, when {@code out} is a {@link
+     * FileOutputStream} that isn't in append mode, the bytes are moved from the socket to the file
+     * by the kernel with {@code splice(2)} through a pipe.
+     */
+    public long transferTo(OutputStream out) throws IOException {
+      Objects.requireNonNull(out, "out");
+      long transferred = 0;
+      if (out instanceof FileOutputStream) {
+        transferred = splice((FileOutputStream) out);
+      }
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = read(buffer, 0, buffer.length)) != -1) {
+        out.write(buffer, 0, read);
+        transferred += read;
+      }
+      return transferred;
+    }
+
+    /**
+     * Splices the stream to {@code out} until it ends or the file stops accepting spliced bytes,
+     * returning the number of bytes written to {@code out}. The caller copies whatever is left.
+     */
+    private long splice(FileOutputStream out) throws IOException {
+      final int fileFd = FileDescriptors.of(out.getFD());
+      if (fileFd == -1 || !canSpliceTo(fileFd)) {
+        return 0;
+      }
+      final int[] pipe = new int[] {-1, -1};
+      long transferred = 0;
+      try {
+        int socketFd = fd.acquire();
+        if (socketFd == -1) {
+          return 0;
+        }
+        provider.pipe(pipe);
+        while (true) {
+          final int result = provider.splice(socketFd, pipe[1], SPLICE_CHUNK);
+          if (result == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+            if (awaitReady(socketFd, UnixDomainSocketLibrary.POLLIN)) {
+              continue;
+            }
+            throw new IllegalBlockingModeException();
+          }
+          if (result == 0) {
+            return transferred;
+          }
+          // The bytes have left the socket, so if the file refuses them they are copied out of the
+          // pipe instead of being lost.
+          int remaining = result;
+          while (remaining > 0) {
+            int moved;
+            try {
+              moved = provider.splice(pipe[0], fileFd, remaining);
+            } catch (NativeErrorException e) {
+              moved = 0;
+            }
+            if (moved <= 0) {
+              drain(pipe[0], remaining, out);
+              return transferred + result;
+            }
+            remaining -= moved;
+          }
+          transferred += result;
+        }
+      } catch (NativeErrorException e) {
+        // Splicing from the socket isn't supported, so nothing was taken from it.
+        if (transferred == 0) {
+          return 0;
+        }
+        throw new IOException(e);
+      } finally {
+        fd.release();
+        for (int pipeFd : pipe) {
+          if (pipeFd != -1) {
+            try {
+              provider.close(pipeFd);
+            } catch (NativeErrorException e) {
+            }
+          }
+        }
+      }
+    }
+
+    /** Returns whether {@code splice(2)} can write to {@code fileFd}, which fails on appends. */
+    private boolean canSpliceTo(int fileFd) {
+      try {
+        return (provider.getStatusFlags(fileFd) & UnixDomainSocketLibrary.O_APPEND) == 0;
+      } catch (NativeErrorException e) {
+        return false;
+      }
+    }
+
+    /** Writes the {@code count} bytes left in the pipe {@code pipeFd} to {@code out}. */
+    private void drain(int pipeFd, int count, OutputStream out) throws IOException {
+      // Small reads are made with read(2) rather than recv(2), which a pipe doesn't support.
+      final byte[] buffer = new byte[Math.min(count, 8192)];
+      try {
+        while (count > 0) {
+          final int read = provider.read(pipeFd, buffer, 0, Math.min(count, buffer.length));
+          if (read <= 0) {
+            throw new IOException("Pipe ended with " + count + " bytes left to transfer");
+          }
+          out.write(buffer, 0, read);
+          count -= read;
+        }
+      } catch (NativeErrorException e) {
+        throw new IOException(e);
+      }
+    }
+
     private int doRead(byte[] buf, int offset, int len) throws IOException {
       try {
         int fdToRead = fd.acquire();
         if (fdToRead == -1) {
           return -1;
         }
-        return provider.read(fdToRead, buf, offset, len);
+        final long start = SocketMetrics.start();
+        final Object event = SocketEvents.begin(SocketEvents.READ);
+        final long deadline = pollReadable(fdToRead, soTimeout);
+        int result;
+        while ((result = provider.read(fdToRead, buf, offset, len))
+            == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+          if (!awaitReady(fdToRead, UnixDomainSocketLibrary.POLLIN, deadline)) {
+            throw new IllegalBlockingModeException();
+          }
+        }
+        SocketMetrics.recordRead(metrics, start, result);
+        SocketEvents.commit(event, fdToRead, path, result);
+        return result;
       } catch (NativeErrorException e) {
         throw new IOException(e);
       } finally {
@@ -163,6 +1151,271 @@ public class UnixDomainSocket extends Socket {
     }
   }
 
+  // The buffered streams lock with a ReentrantLock rather than a monitor, since they may park in
+  // the poller, which would pin the carrier thread of a virtual thread in a synchronized method.
+  private class BufferedSocketInputStream extends InputStream {
+    private final ReentrantLock lock = new ReentrantLock();
+    private ByteBuffer buffer;
+    private volatile boolean discarded;
+
+    BufferedSocketInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+      buffer.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+      lock.lock();
+      try {
+        if (!ensureBuffer().hasRemaining() && fill() == -1) {
+          return -1;
+        }
+        return 0xFF & buffer.get();
+      } finally {
+        unlock();
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      lock.lock();
+      try {
+        Objects.requireNonNull(b, "b");
+        UnixDomainSocketChannel.checkBounds(b.length, off, len);
+        if (len == 0) {
+          return 0;
+        }
+        if (!ensureBuffer().hasRemaining()) {
+          // Large reads go straight to the caller's array rather than through the buffer.
+          if (len >= buffer.capacity()) {
+            return is.read(b, off, len);
+          }
+          if (fill() == -1) {
+            return -1;
+          }
+        }
+        final int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+      } finally {
+        unlock();
+      }
+    }
+
+    @Override
+    public int available() throws IOException {
+      lock.lock();
+      try {
+        return buffer == null ? 0 : buffer.remaining();
+      } finally {
+        unlock();
+      }
+    }
+
+    @Override
+    public void close() {
+      lock.lock();
+      try {
+        if (buffer != null) {
+          BufferPool.release(buffer);
+          buffer = null;
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Returns the buffer to the pool because the socket has been closed, either right away or, if
+     * another thread holds the lock, once that thread unlocks it.
+     */
+    void discard() {
+      discarded = true;
+      if (lock.tryLock()) {
+        unlock();
+      }
+    }
+
+    // Checks for a discard only after unlocking, so that either this thread sees it or the
+    // discarding thread gets the lock.
+    private void unlock() {
+      lock.unlock();
+      if (discarded && lock.tryLock()) {
+        try {
+          if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+
+    private ByteBuffer ensureBuffer() throws IOException {
+      if (buffer == null) {
+        throw new IOException("Stream closed");
+      }
+      return buffer;
+    }
+
+    private int fill() throws IOException {
+      buffer.clear();
+      try {
+        final int result = UnixDomainSocket.this.read(buffer, soTimeout);
+        if (result == 0) {
+          throw new IllegalBlockingModeException();
+        }
+        return result;
+      } finally {
+        buffer.flip();
+      }
+    }
+  }
+
+  private class BufferedSocketOutputStream extends OutputStream {
+    private final FlushPolicy flushPolicy;
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    private final ReentrantLock lock = new ReentrantLock();
+    private ByteBuffer buffer;
+    private volatile boolean discarded;
+
+    BufferedSocketOutputStream(ByteBuffer buffer, FlushPolicy flushPolicy) {
+      this.buffer = buffer;
+      this.flushPolicy = flushPolicy;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      lock.lock();
+      try {
+        if (!ensureBuffer().hasRemaining()) {
+          flushBuffer(null);
+        }
+        buffer.put((byte) b);
+        if (flushPolicy == FlushPolicy.WRITE || (flushPolicy == FlushPolicy.LINE && b == '\n')) {
+          flushBuffer(null);
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      lock.lock();
+      try {
+        Objects.requireNonNull(b, "b");
+        UnixDomainSocketChannel.checkBounds(b.length, off, len);
+        if (len == 0) {
+          return;
+        }
+        if (len > ensureBuffer().remaining()) {
+          // Send the buffered bytes and the new ones together with a single gathering write.
+          flushBuffer(ByteBuffer.wrap(b, off, len));
+          return;
+        }
+        buffer.put(b, off, len);
+        if (flushPolicy == FlushPolicy.WRITE
+            || (flushPolicy == FlushPolicy.LINE && containsNewline(b, off, len))) {
+          flushBuffer(null);
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      lock.lock();
+      try {
+        if (buffer != null) {
+          flushBuffer(null);
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      lock.lock();
+      try {
+        if (buffer != null) {
+          try {
+            if (!isClosed()) {
+              flushBuffer(null);
+            }
+          } finally {
+            BufferPool.release(buffer);
+            buffer = null;
+          }
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    /** Like {@link BufferedSocketInputStream#discard()}, without flushing the buffer. */
+    void discard() {
+      discarded = true;
+      if (lock.tryLock()) {
+        unlock();
+      }
+    }
+
+    private void unlock() {
+      lock.unlock();
+      if (discarded && lock.tryLock()) {
+        try {
+          if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+
+    private ByteBuffer ensureBuffer() throws IOException {
+      if (buffer == null) {
+        throw new IOException("Stream closed");
+      }
+      return buffer;
+    }
+
+    /** Writes the buffered bytes, followed by {@code extra} if it isn't null, to the socket. */
+    private void flushBuffer(ByteBuffer extra) throws IOException {
+      buffer.flip();
+      try {
+        gather[0] = buffer;
+        gather[1] = extra;
+        final int count = extra == null ? 1 : 2;
+        while (buffer.hasRemaining() || (extra != null && extra.hasRemaining())) {
+          if (UnixDomainSocket.this.write(gather, 0, count) == 0) {
+            if (isClosed()) {
+              throw new IOException("Socket is closed");
+            }
+            throw new IllegalBlockingModeException();
+          }
+        }
+      } finally {
+        gather[1] = null;
+        buffer.compact();
+      }
+    }
+
+    private boolean containsNewline(byte[] b, int off, int len) {
+      for (int i = off + len - 1; i >= off; i--) {
+        if (b[i] == '\n') {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
   private class UnixDomainSocketOutputStream extends OutputStream {
 
     public void write(int b) throws IOException {
@@ -182,16 +1435,35 @@ public class UnixDomainSocket extends Socket {
         if (fdToWrite == -1) {
           return;
         }
-        int ret = provider.write(fdToWrite, b, off, len);
-        if (ret != len) {
-          // This shouldn't happen with standard blocking Unix domain sockets.
-          throw new IOException(
-              "Could not write "
-                  + len
-                  + " bytes as requested "
-                  + "(wrote "
-                  + ret
-                  + " bytes instead)");
+        final long start = SocketMetrics.start();
+        final Object event = SocketEvents.begin(SocketEvents.WRITE);
+        final int total = len;
+        while (true) {
+          int ret = provider.write(fdToWrite, b, off, len);
+          if (ret == UnixDomainSocketLibraryProvider.UNAVAILABLE) {
+            if (awaitReady(fdToWrite, UnixDomainSocketLibrary.POLLOUT)) {
+              continue;
+            }
+            throw new IllegalBlockingModeException();
+          }
+          if (ret == len) {
+            SocketMetrics.recordWrite(metrics, start, total);
+            SocketEvents.commit(event, fdToWrite, path, total);
+            return;
+          }
+          if (!usePoller) {
+            // This shouldn't happen with standard blocking Unix domain sockets.
+            throw new IOException(
+                "Could not write "
+                    + len
+                    + " bytes as requested "
+                    + "(wrote "
+                    + ret
+                    + " bytes instead)");
+          }
+          // A non-blocking descriptor accepts as many bytes as fit in the socket buffer.
+          off += ret;
+          len -= ret;
         }
       } catch (NativeErrorException e) {
         throw new IOException(e);
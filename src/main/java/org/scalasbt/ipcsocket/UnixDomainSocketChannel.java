@@ -0,0 +1,195 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+
+/**
+ * A {@link SocketChannel} backed by a connected {@link UnixDomainSocket}. The channel and the
+ * socket share a single file descriptor, so closing either one closes both.
+ *
+ * <p>Channels are always connected when they are created, either by {@link #open(String, boolean)}
+ * or by {@link UnixDomainServerSocketChannel#accept()}, so {@link #connect(SocketAddress)} and
+ * {@link #bind(SocketAddress)} are not supported. In non-blocking mode, reads return 0 and writes
+ * may be partial when the socket is not ready. The channel cannot be registered with a {@link
+ * java.nio.channels.Selector}, which throws an {@link java.nio.channels.IllegalSelectorException};
+ * use {@link UnixDomainEventLoop} or {@link UnixDomainSocketLibraryProvider#poll} to wait for
+ * readiness instead.
+ */
+public class UnixDomainSocketChannel extends SocketChannel {
+  private final UnixDomainSocket socket;
+
+  UnixDomainSocketChannel(UnixDomainSocket socket) {
+    super(UnixDomainSelectorProvider.INSTANCE);
+    this.socket = socket;
+  }
+
+  /** Opens a channel connected to the Unix domain socket at {@code path}. */
+  public static UnixDomainSocketChannel open(String path, boolean useJNI) throws IOException {
+    return new UnixDomainSocket(path, useJNI).getChannel();
+  }
+
+  public static UnixDomainSocketChannel open(String path) throws IOException {
+    return open(path, false);
+  }
+
+  @Override
+  public SocketChannel bind(SocketAddress local) throws IOException {
+    throw new AlreadyConnectedException();
+  }
+
+  @Override
+  public <T> SocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+    ensureOpen();
+    socket.setOption(name, value);
+    return this;
+  }
+
+  @Override
+  public <T> T getOption(SocketOption<T> name) throws IOException {
+    ensureOpen();
+    return socket.getOption(name);
+  }
+
+  @Override
+  public Set<SocketOption<?>> supportedOptions() {
+    return socket.supportedOptions();
+  }
+
+  @Override
+  public SocketChannel shutdownInput() throws IOException {
+    ensureOpen();
+    socket.shutdownInput();
+    return this;
+  }
+
+  @Override
+  public SocketChannel shutdownOutput() throws IOException {
+    ensureOpen();
+    socket.shutdownOutput();
+    return this;
+  }
+
+  @Override
+  public UnixDomainSocket socket() {
+    return socket;
+  }
+
+  @Override
+  public boolean isConnected() {
+    return isOpen();
+  }
+
+  @Override
+  public boolean isConnectionPending() {
+    return false;
+  }
+
+  @Override
+  public boolean connect(SocketAddress remote) throws IOException {
+    ensureOpen();
+    throw new AlreadyConnectedException();
+  }
+
+  @Override
+  public boolean finishConnect() throws IOException {
+    ensureOpen();
+    return true;
+  }
+
+  @Override
+  public SocketAddress getRemoteAddress() throws IOException {
+    ensureOpen();
+    final String path = socket.getPath();
+    return path == null ? null : new UnixDomainServerSocket.UnixDomainServerSocketAddress(path);
+  }
+
+  @Override
+  public SocketAddress getLocalAddress() throws IOException {
+    ensureOpen();
+    return null;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    boolean completed = false;
+    try {
+      begin();
+      final int result = socket.read(dst);
+      completed = true;
+      return result;
+    } finally {
+      end(completed);
+    }
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    ensureOpen();
+    boolean completed = false;
+    try {
+      begin();
+      final long result = socket.read(dsts, offset, length);
+      completed = true;
+      return result;
+    } finally {
+      end(completed);
+    }
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    ensureOpen();
+    boolean completed = false;
+    try {
+      begin();
+      final int result = socket.write(src);
+      completed = true;
+      return result;
+    } finally {
+      end(completed);
+    }
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    ensureOpen();
+    boolean completed = false;
+    try {
+      begin();
+      final long result = socket.write(srcs, offset, length);
+      completed = true;
+      return result;
+    } finally {
+      end(completed);
+    }
+  }
+
+  @Override
+  protected void implCloseSelectableChannel() throws IOException {
+    socket.close();
+  }
+
+  @Override
+  protected void implConfigureBlocking(boolean block) throws IOException {
+    socket.setNonBlocking(!block);
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  static void checkBounds(int size, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > size - length) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+}
@@ -18,16 +18,22 @@ limitations under the License.
 package org.scalasbt.ipcsocket;
 
 import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
 import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
 import com.sun.jna.Union;
 import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.NativeLongByReference;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -42,10 +48,54 @@ public class UnixDomainSocketLibrary {
   public static final int PF_LOCAL = 1;
   public static final int AF_LOCAL = 1;
   public static final int SOCK_STREAM = 1;
+  public static final int SOCK_DGRAM = 2;
+  public static final int SOCK_SEQPACKET = 5;
 
   public static final int SHUT_RD = 0;
   public static final int SHUT_WR = 1;
 
+  public static final int EAGAIN = Platform.isLinux() ? 11 : 35;
+  public static final int ENOMEM = 12;
+  public static final int ENFILE = 23;
+  public static final int EMFILE = 24;
+  public static final int ENOBUFS = Platform.isLinux() ? 105 : 55;
+  public static final int ENOSYS = Platform.isLinux() ? 38 : 78;
+  public static final int EMSGSIZE = Platform.isLinux() ? 90 : 40;
+
+  public static final int SOL_SOCKET = Platform.isLinux() ? 1 : 0xffff;
+  public static final int SO_SNDBUF = Platform.isLinux() ? 7 : 0x1001;
+  public static final int SO_RCVBUF = Platform.isLinux() ? 8 : 0x1002;
+  public static final int SO_RCVTIMEO = Platform.isLinux() ? 20 : 0x1006;
+  public static final int SO_SNDTIMEO = Platform.isLinux() ? 21 : 0x1005;
+  public static final int SCM_RIGHTS = 1;
+  public static final int MSG_TRUNC = Platform.isLinux() ? 0x20 : 0x10;
+  public static final int MSG_CTRUNC = Platform.isLinux() ? 0x8 : 0x20;
+  public static final int MSG_DONTWAIT = Platform.isLinux() ? 0x40 : 0x80;
+  public static final int MSG_CMSG_CLOEXEC = Platform.isLinux() ? 0x40000000 : 0;
+
+  public static final int F_SETFD = 2;
+  public static final int F_GETFL = 3;
+  public static final int F_SETFL = 4;
+  public static final int FD_CLOEXEC = 1;
+  public static final int O_NONBLOCK = Platform.isLinux() ? 04000 : 0x0004;
+  public static final int O_APPEND = Platform.isLinux() ? 02000 : 0x0008;
+
+  public static final int POLLIN = 0x001;
+  public static final int POLLOUT = 0x004;
+  public static final int POLLERR = 0x008;
+  public static final int POLLHUP = 0x010;
+  public static final int POLLNVAL = 0x020;
+
+  public static final int EPOLLIN = 0x001;
+  public static final int EPOLLOUT = 0x004;
+  public static final int EPOLLERR = 0x008;
+  public static final int EPOLLHUP = 0x010;
+  public static final int EPOLLRDHUP = 0x2000;
+  public static final int EPOLLONESHOT = 1 << 30;
+  public static final int EPOLL_CTL_ADD = 1;
+  public static final int EPOLL_CTL_DEL = 2;
+  public static final int EPOLL_CTL_MOD = 3;
+
   // Utility class, do not instantiate.
   private UnixDomainSocketLibrary() {}
 
@@ -146,9 +196,145 @@ public class UnixDomainSocketLibrary {
 
   public static native int write(int fd, ByteBuffer buffer, int count) throws LastErrorException;
 
+  public static native int read(int fd, Pointer buffer, int count) throws LastErrorException;
+
+  public static native int write(int fd, Pointer buffer, int count) throws LastErrorException;
+
+  public static native int recv(int fd, Pointer buffer, int count, int flags)
+      throws LastErrorException;
+
+  public static native int readv(int fd, Pointer iov, int iovcnt) throws LastErrorException;
+
+  public static native int writev(int fd, Pointer iov, int iovcnt) throws LastErrorException;
+
+  public static native int sendmsg(int fd, Pointer msg, int flags) throws LastErrorException;
+
+  public static native int recvmsg(int fd, Pointer msg, int flags) throws LastErrorException;
+
   public static native int close(int fd) throws LastErrorException;
 
   public static native int shutdown(int fd, int how) throws LastErrorException;
+
+  public static native int setsockopt(int fd, int level, int name, int[] value, int len)
+      throws LastErrorException;
+
+  public static native int setsockopt(int fd, int level, int name, Pointer value, int len)
+      throws LastErrorException;
+
+  public static native int getsockopt(int fd, int level, int name, int[] value, int[] len)
+      throws LastErrorException;
+
+  public static native int socketpair(int domain, int type, int protocol, int[] fds)
+      throws LastErrorException;
+
+  public static native int poll(Pointer fds, int nfds, int timeout) throws LastErrorException;
+
+  public static native int pipe(int[] fds) throws LastErrorException;
+
+  /**
+   * Calls with a variadic C signature. These can't be direct mapped because some platforms pass
+   * variadic arguments differently from fixed ones.
+   */
+  public interface Fcntl extends Library {
+    Fcntl INSTANCE = Native.load(Platform.C_LIBRARY_NAME, Fcntl.class);
+
+    int fcntl(int fd, int cmd, Object... args) throws LastErrorException;
+  }
+
+  /**
+   * The Linux epoll calls. These are registered separately so that the symbols are only looked up
+   * on platforms that provide them.
+   */
+  public static class Epoll {
+    public static final int EPOLL_CLOEXEC = 02000000;
+
+    // struct epoll_event is packed on x86, so the data field follows the 32 bit event mask.
+    static final int EVENT_SIZE = Platform.isIntel() ? 12 : 16;
+    static final int DATA_OFFSET = Platform.isIntel() ? 4 : 8;
+
+    private Epoll() {}
+
+    static {
+      Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    public static native int epoll_create1(int flags) throws LastErrorException;
+
+    public static native int epoll_ctl(int epfd, int op, int fd, Pointer event)
+        throws LastErrorException;
+
+    public static native int epoll_wait(int epfd, Pointer events, int maxevents, int timeout)
+        throws LastErrorException;
+  }
+
+  /** The Linux call that accepts a connection and sets the flags of its descriptor atomically. */
+  public static class Accept4 {
+    public static final int SOCK_NONBLOCK = 04000;
+    public static final int SOCK_CLOEXEC = 02000000;
+
+    private Accept4() {}
+
+    static {
+      Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    public static native int accept4(int fd, Pointer address, Pointer addressLen, int flags)
+        throws LastErrorException;
+  }
+
+  /** The Linux calls that create shared memory files and event counters. */
+  public static class SharedMemory {
+    public static final int MFD_CLOEXEC = 1;
+    public static final int EFD_CLOEXEC = 02000000;
+
+    private SharedMemory() {}
+
+    static {
+      Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    public static native int memfd_create(String name, int flags) throws LastErrorException;
+
+    public static native int ftruncate(int fd, NativeLong length) throws LastErrorException;
+
+    public static native int eventfd(int initval, int flags) throws LastErrorException;
+  }
+
+  /** The Linux calls that send or receive several datagrams at once. */
+  public static class Mmsg {
+    public static final int MSG_WAITFORONE = 0x10000;
+
+    private Mmsg() {}
+
+    static {
+      Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    public static native int sendmmsg(int fd, Pointer msgvec, int vlen, int flags)
+        throws LastErrorException;
+
+    public static native int recvmmsg(int fd, Pointer msgvec, int vlen, int flags, Pointer timeout)
+        throws LastErrorException;
+  }
+
+  /** The Linux calls that move bytes between descriptors without copying them into user space. */
+  public static class ZeroCopy {
+    public static final int SPLICE_F_MOVE = 1;
+
+    private ZeroCopy() {}
+
+    static {
+      Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    public static native NativeLong sendfile(
+        int outFd, int inFd, NativeLongByReference offset, NativeLong count)
+        throws LastErrorException;
+
+    public static native NativeLong splice(
+        int fdIn, Pointer offIn, int fdOut, Pointer offOut, NativeLong len, int flags)
+        throws LastErrorException;
+  }
 }
 
 class JNAUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvider {
@@ -195,13 +381,79 @@ class JNAUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
   @Override
   public int accept(int fd) throws NativeErrorException {
     try {
-      final UnixDomainSocketLibrary.SockaddrUn sockaddrUn =
-          new UnixDomainSocketLibrary.SockaddrUn();
-      IntByReference addressLen = new IntByReference();
-      addressLen.setValue(sockaddrUn.size());
-      return UnixDomainSocketLibrary.accept(fd, sockaddrUn, addressLen);
+      return acceptWithFlags(fd, false);
     } catch (final LastErrorException e) {
-      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+      return unavailableOrThrow(e);
+    }
+  }
+
+  @Override
+  public int accept(int fd, int[] fds, boolean nonBlocking) throws NativeErrorException {
+    if (fds.length == 0) {
+      return 0;
+    }
+    try {
+      fds[0] = acceptWithFlags(fd, nonBlocking);
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+    int count = 1;
+    if (count == fds.length) {
+      return count;
+    }
+    // Take the rest of the batch without blocking, so that it never waits while holding
+    // connections. The connections that were accepted before an error are returned; a persistent
+    // error is reported by the next call.
+    final UnixDomainSocketLibrary.Fcntl lib = UnixDomainSocketLibrary.Fcntl.INSTANCE;
+    int flags = -1;
+    try {
+      flags = lib.fcntl(fd, UnixDomainSocketLibrary.F_GETFL);
+      if ((flags & UnixDomainSocketLibrary.O_NONBLOCK) == 0) {
+        lib.fcntl(fd, UnixDomainSocketLibrary.F_SETFL, flags | UnixDomainSocketLibrary.O_NONBLOCK);
+      } else {
+        flags = -1;
+      }
+      while (count < fds.length) {
+        fds[count] = acceptWithFlags(fd, nonBlocking);
+        count++;
+      }
+    } catch (final LastErrorException e) {
+    } finally {
+      if (flags != -1) {
+        try {
+          lib.fcntl(fd, UnixDomainSocketLibrary.F_SETFL, flags);
+        } catch (final LastErrorException e) {
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Accepts a connection whose descriptor is close-on-exec, and non-blocking if {@code nonBlocking}
+   * is set. Linux sets the flags atomically with {@code accept4(2)}; elsewhere they are set right
+   * after {@code accept(2)}.
+   */
+  private static int acceptWithFlags(int fd, boolean nonBlocking) throws LastErrorException {
+    if (Platform.isLinux()) {
+      final int flags =
+          UnixDomainSocketLibrary.Accept4.SOCK_CLOEXEC
+              | (nonBlocking ? UnixDomainSocketLibrary.Accept4.SOCK_NONBLOCK : 0);
+      return UnixDomainSocketLibrary.Accept4.accept4(fd, null, null, flags);
+    }
+    final int clientFd = UnixDomainSocketLibrary.accept(fd, null, null);
+    try {
+      final UnixDomainSocketLibrary.Fcntl lib = UnixDomainSocketLibrary.Fcntl.INSTANCE;
+      lib.fcntl(clientFd, UnixDomainSocketLibrary.F_SETFD, UnixDomainSocketLibrary.FD_CLOEXEC);
+      if (nonBlocking) {
+        final int flags = lib.fcntl(clientFd, UnixDomainSocketLibrary.F_GETFL);
+        lib.fcntl(
+            clientFd, UnixDomainSocketLibrary.F_SETFL, flags | UnixDomainSocketLibrary.O_NONBLOCK);
+      }
+      return clientFd;
+    } catch (final LastErrorException e) {
+      UnixDomainSocketLibrary.close(clientFd);
+      throw e;
     }
   }
 
@@ -237,7 +489,7 @@ class JNAUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
       }
       return UnixDomainSocketLibrary.read(fd, ByteBuffer.wrap(buffer, offset, len), len);
     } catch (final LastErrorException e) {
-      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+      return unavailableOrThrow(e);
     }
   }
 
@@ -246,8 +498,423 @@ class JNAUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
     try {
       return UnixDomainSocketLibrary.write(fd, ByteBuffer.wrap(buffer, offset, len), len);
     } catch (final LastErrorException e) {
-      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+      return unavailableOrThrow(e);
+    }
+  }
+
+  @Override
+  public int read(int fd, ByteBuffer buffer) throws NativeErrorException {
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    if (len == 0) return 0;
+    final int result;
+    if (buffer.isDirect()) {
+      try {
+        final Pointer pointer = Native.getDirectBufferPointer(buffer).share(position);
+        result = UnixDomainSocketLibrary.read(fd, pointer, len);
+      } catch (final LastErrorException e) {
+        return unavailableOrThrow(e);
+      }
+    } else {
+      result = read(fd, buffer.array(), buffer.arrayOffset() + position, len);
     }
+    if (result > 0) buffer.position(position + result);
+    return result;
+  }
+
+  @Override
+  public int write(int fd, ByteBuffer buffer) throws NativeErrorException {
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    if (len == 0) return 0;
+    final int result;
+    if (buffer.isDirect()) {
+      try {
+        final Pointer pointer = Native.getDirectBufferPointer(buffer).share(position);
+        result = UnixDomainSocketLibrary.write(fd, pointer, len);
+      } catch (final LastErrorException e) {
+        return unavailableOrThrow(e);
+      }
+    } else if (buffer.hasArray()) {
+      result = write(fd, buffer.array(), buffer.arrayOffset() + position, len);
+    } else {
+      final byte[] bytes = new byte[len];
+      buffer.duplicate().get(bytes);
+      result = write(fd, bytes, 0, len);
+    }
+    if (result > 0) buffer.position(position + result);
+    return result;
+  }
+
+  @Override
+  public int receiveMessage(int fd, ByteBuffer buffer) throws NativeErrorException {
+    if (buffer.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    final Pointer data =
+        buffer.isDirect()
+            ? Native.getDirectBufferPointer(buffer).share(position)
+            : new Memory(Math.max(len, 1));
+    final int result;
+    try {
+      result = UnixDomainSocketLibrary.recv(fd, data, len, UnixDomainSocketLibrary.MSG_TRUNC);
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+    final int stored = Math.min(result, len);
+    if (stored > 0) {
+      if (!buffer.isDirect()) {
+        final byte[] bytes = new byte[stored];
+        data.read(0, bytes, 0, stored);
+        buffer.duplicate().put(bytes);
+      }
+      buffer.position(position + stored);
+    }
+    return result;
+  }
+
+  @Override
+  public long readv(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return vector(fd, buffers, offset, length, false);
+  }
+
+  @Override
+  public long writev(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return vector(fd, buffers, offset, length, true);
+  }
+
+  // struct iovec { void *iov_base; size_t iov_len; }
+  private static final int IOVEC_SIZE = 2 * Native.POINTER_SIZE;
+
+  /**
+   * Direct buffers are passed to the kernel in place. Heap buffers are staged through native memory
+   * because JNA can't pin java arrays across a call.
+   */
+  private long vector(int fd, ByteBuffer[] buffers, int offset, int length, boolean isWrite)
+      throws NativeErrorException {
+    final int count = ByteBuffers.iovCount(length);
+    final Memory iov = new Memory((long) Math.max(count, 1) * IOVEC_SIZE);
+    final Memory[] staged = new Memory[count];
+    final int[] lengths = new int[count];
+    long total = 0;
+    for (int i = 0; i < count; i++) {
+      final ByteBuffer buffer = buffers[offset + i];
+      if (!isWrite && buffer.isReadOnly()) {
+        throw new ReadOnlyBufferException();
+      }
+      final int len = ByteBuffers.remaining(buffer, total);
+      final Pointer base;
+      if (len == 0) {
+        base = Pointer.NULL;
+      } else if (buffer.isDirect()) {
+        base = Native.getDirectBufferPointer(buffer).share(buffer.position());
+      } else {
+        staged[i] = new Memory(len);
+        if (isWrite) {
+          final byte[] bytes = new byte[len];
+          buffer.duplicate().get(bytes);
+          staged[i].write(0, bytes, 0, len);
+        }
+        base = staged[i];
+      }
+      iov.setPointer((long) i * IOVEC_SIZE, base);
+      if (Native.POINTER_SIZE == 8) {
+        iov.setLong((long) i * IOVEC_SIZE + Native.POINTER_SIZE, len);
+      } else {
+        iov.setInt((long) i * IOVEC_SIZE + Native.POINTER_SIZE, len);
+      }
+      lengths[i] = len;
+      total += len;
+    }
+    if (total == 0) return 0;
+    final int result;
+    try {
+      result =
+          isWrite
+              ? UnixDomainSocketLibrary.writev(fd, iov, count)
+              : UnixDomainSocketLibrary.readv(fd, iov, count);
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+    if (!isWrite) {
+      long remaining = result;
+      for (int i = 0; i < count && remaining > 0; i++) {
+        final int n = (int) Math.min(lengths[i], remaining);
+        if (staged[i] != null) {
+          final ByteBuffer buffer = buffers[offset + i];
+          final byte[] bytes = new byte[n];
+          staged[i].read(0, bytes, 0, n);
+          buffer.duplicate().put(bytes);
+        }
+        remaining -= n;
+      }
+    }
+    ByteBuffers.advance(buffers, offset, count, result);
+    return result;
+  }
+
+  // struct msghdr and struct cmsghdr use size_t lengths on Linux and 32 bit lengths on the BSDs.
+  private static final int LENGTH_SIZE = Platform.isLinux() ? Native.SIZE_T_SIZE : 4;
+  private static final int MSG_IOV = align(Native.POINTER_SIZE + 4, Native.POINTER_SIZE);
+  private static final int MSG_IOVLEN = MSG_IOV + Native.POINTER_SIZE;
+  private static final int MSG_CONTROL = align(MSG_IOVLEN + LENGTH_SIZE, Native.POINTER_SIZE);
+  private static final int MSG_CONTROLLEN = MSG_CONTROL + Native.POINTER_SIZE;
+  private static final int MSG_FLAGS = MSG_CONTROLLEN + LENGTH_SIZE;
+  private static final int MSGHDR_SIZE = align(MSG_FLAGS + 4, Native.POINTER_SIZE);
+  private static final int CMSG_ALIGN = Platform.isMac() ? 4 : Native.LONG_SIZE;
+  private static final int CMSG_DATA = align(LENGTH_SIZE + 8, CMSG_ALIGN);
+  private static final int MAX_FDS = 253;
+
+  private static int align(int size, int alignment) {
+    return (size + alignment - 1) & -alignment;
+  }
+
+  private static void setLength(Pointer pointer, long offset, long value) {
+    if (LENGTH_SIZE == 8) {
+      pointer.setLong(offset, value);
+    } else {
+      pointer.setInt(offset, (int) value);
+    }
+  }
+
+  private static long getLength(Pointer pointer, long offset) {
+    return LENGTH_SIZE == 8 ? pointer.getLong(offset) : pointer.getInt(offset) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Builds a {@code struct msghdr} with a single {@code struct iovec} for {@code len} bytes at
+   * {@code data} and {@code controlLen} bytes of ancillary data at {@code control}.
+   */
+  private static Memory msghdr(Pointer data, int len, Pointer control, int controlLen) {
+    final Memory msg = new Memory(MSGHDR_SIZE + IOVEC_SIZE);
+    msg.clear();
+    final Pointer iov = msg.share(MSGHDR_SIZE);
+    iov.setPointer(0, data);
+    if (Native.POINTER_SIZE == 8) {
+      iov.setLong(Native.POINTER_SIZE, len);
+    } else {
+      iov.setInt(Native.POINTER_SIZE, len);
+    }
+    msg.setPointer(MSG_IOV, iov);
+    setLength(msg, MSG_IOVLEN, 1);
+    if (control != null) {
+      msg.setPointer(MSG_CONTROL, control);
+      setLength(msg, MSG_CONTROLLEN, controlLen);
+    }
+    return msg;
+  }
+
+  @Override
+  public int sendFileDescriptors(int fd, ByteBuffer buffer, int[] fds) throws NativeErrorException {
+    if (fds.length > MAX_FDS) {
+      throw new NativeErrorException(EINVAL, "Cannot send more than " + MAX_FDS + " descriptors");
+    }
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    final Pointer data;
+    if (buffer.isDirect()) {
+      data = Native.getDirectBufferPointer(buffer).share(position);
+    } else {
+      final byte[] bytes = new byte[len];
+      buffer.duplicate().get(bytes);
+      data = new Memory(Math.max(len, 1));
+      data.write(0, bytes, 0, len);
+    }
+    Memory control = null;
+    int controlLen = 0;
+    if (fds.length > 0) {
+      controlLen = CMSG_DATA + align(4 * fds.length, CMSG_ALIGN);
+      control = new Memory(controlLen);
+      control.clear();
+      setLength(control, 0, CMSG_DATA + 4 * fds.length);
+      control.setInt(LENGTH_SIZE, UnixDomainSocketLibrary.SOL_SOCKET);
+      control.setInt(LENGTH_SIZE + 4, UnixDomainSocketLibrary.SCM_RIGHTS);
+      control.write(CMSG_DATA, fds, 0, fds.length);
+    }
+    final int result;
+    try {
+      result = UnixDomainSocketLibrary.sendmsg(fd, msghdr(data, len, control, controlLen), 0);
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+    if (result > 0) buffer.position(position + result);
+    return result;
+  }
+
+  @Override
+  public int receiveFileDescriptors(int fd, ByteBuffer buffer, int[] fds)
+      throws NativeErrorException {
+    if (buffer.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+    final int position = buffer.position();
+    final int len = buffer.remaining();
+    final Pointer data =
+        buffer.isDirect()
+            ? Native.getDirectBufferPointer(buffer).share(position)
+            : new Memory(Math.max(len, 1));
+    final int controlLen = CMSG_DATA + align(4 * MAX_FDS, CMSG_ALIGN);
+    final Memory control = new Memory(controlLen);
+    control.clear();
+    final Memory msg = msghdr(data, len, control, controlLen);
+    final int result;
+    try {
+      result = UnixDomainSocketLibrary.recvmsg(fd, msg, UnixDomainSocketLibrary.MSG_CMSG_CLOEXEC);
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+    Arrays.fill(fds, -1);
+    int received = 0;
+    final long end = getLength(msg, MSG_CONTROLLEN);
+    long offset = 0;
+    while (offset + CMSG_DATA <= end) {
+      final long cmsgLen = getLength(control, offset);
+      if (cmsgLen < CMSG_DATA) break;
+      if (control.getInt(offset + LENGTH_SIZE) == UnixDomainSocketLibrary.SOL_SOCKET
+          && control.getInt(offset + LENGTH_SIZE + 4) == UnixDomainSocketLibrary.SCM_RIGHTS) {
+        final int count = (int) (cmsgLen - CMSG_DATA) / 4;
+        for (int i = 0; i < count; i++) {
+          final int descriptor = control.getInt(offset + CMSG_DATA + 4L * i);
+          if (received < fds.length) {
+            fds[received++] = descriptor;
+          } else {
+            try {
+              UnixDomainSocketLibrary.close(descriptor);
+            } catch (final LastErrorException e) {
+            }
+          }
+        }
+      }
+      offset += align((int) cmsgLen, CMSG_ALIGN);
+    }
+    if ((msg.getInt(MSG_FLAGS) & UnixDomainSocketLibrary.MSG_CTRUNC) != 0) {
+      // Some of the descriptors were lost, so the ones that arrived are no use to the caller.
+      for (int i = 0; i < received; i++) {
+        try {
+          UnixDomainSocketLibrary.close(fds[i]);
+        } catch (final LastErrorException e) {
+        }
+      }
+      Arrays.fill(fds, -1);
+      throw new NativeErrorException(
+          UnixDomainSocketLibrary.EMSGSIZE, "recvmsg: the attached descriptors were truncated");
+    }
+    if (result > 0) {
+      if (!buffer.isDirect()) {
+        final byte[] bytes = new byte[result];
+        data.read(0, bytes, 0, result);
+        buffer.duplicate().put(bytes);
+      }
+      buffer.position(position + result);
+    }
+    return result;
+  }
+
+  // struct mmsghdr { struct msghdr msg_hdr; unsigned int msg_len; }
+  private static final int MMSGHDR_SIZE = align(MSGHDR_SIZE + 4, Native.POINTER_SIZE);
+
+  @Override
+  public int sendMessages(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return messages(fd, buffers, offset, length, true);
+  }
+
+  @Override
+  public int receiveMessages(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    return messages(fd, buffers, offset, length, false);
+  }
+
+  /**
+   * Lays out an array of {@code struct mmsghdr}, each with a single {@code struct iovec}. As with
+   * {@link #vector}, heap buffers are staged through native memory.
+   */
+  private int messages(int fd, ByteBuffer[] buffers, int offset, int length, boolean isSend)
+      throws NativeErrorException {
+    final int count = ByteBuffers.batchCount(length);
+    if (count == 0) return 0;
+    final Memory msgs = new Memory((long) count * (MMSGHDR_SIZE + IOVEC_SIZE));
+    msgs.clear();
+    final Memory[] staged = new Memory[count];
+    for (int i = 0; i < count; i++) {
+      final ByteBuffer buffer = buffers[offset + i];
+      if (!isSend && buffer.isReadOnly()) {
+        throw new ReadOnlyBufferException();
+      }
+      final int len = buffer.remaining();
+      final Pointer data;
+      if (buffer.isDirect()) {
+        data = Native.getDirectBufferPointer(buffer).share(buffer.position());
+      } else {
+        staged[i] = new Memory(Math.max(len, 1));
+        if (isSend) {
+          final byte[] bytes = new byte[len];
+          buffer.duplicate().get(bytes);
+          staged[i].write(0, bytes, 0, len);
+        }
+        data = staged[i];
+      }
+      final Pointer iov = msgs.share((long) count * MMSGHDR_SIZE + (long) i * IOVEC_SIZE);
+      iov.setPointer(0, data);
+      if (Native.POINTER_SIZE == 8) {
+        iov.setLong(Native.POINTER_SIZE, len);
+      } else {
+        iov.setInt(Native.POINTER_SIZE, len);
+      }
+      final Pointer msg = msgs.share((long) i * MMSGHDR_SIZE);
+      msg.setPointer(MSG_IOV, iov);
+      setLength(msg, MSG_IOVLEN, 1);
+    }
+    final int result;
+    try {
+      if (!Platform.isLinux()) {
+        result = transferEach(fd, msgs, count, isSend);
+      } else if (isSend) {
+        result = UnixDomainSocketLibrary.Mmsg.sendmmsg(fd, msgs, count, 0);
+      } else {
+        final int flags =
+            UnixDomainSocketLibrary.Mmsg.MSG_WAITFORONE | UnixDomainSocketLibrary.MSG_TRUNC;
+        result = UnixDomainSocketLibrary.Mmsg.recvmmsg(fd, msgs, count, flags, Pointer.NULL);
+      }
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+    for (int i = 0; i < result; i++) {
+      final ByteBuffer buffer = buffers[offset + i];
+      final int n =
+          Math.min(msgs.getInt((long) i * MMSGHDR_SIZE + MSGHDR_SIZE), buffer.remaining());
+      if (staged[i] != null && !isSend) {
+        final byte[] bytes = new byte[n];
+        staged[i].read(0, bytes, 0, n);
+        buffer.duplicate().put(bytes);
+      }
+      buffer.position(buffer.position() + n);
+    }
+    return result;
+  }
+
+  /** Sends or receives the messages of a batch one at a time, stopping once the socket is busy. */
+  private static int transferEach(int fd, Pointer msgs, int count, boolean isSend)
+      throws LastErrorException {
+    int i = 0;
+    try {
+      for (; i < count; i++) {
+        final Pointer msg = msgs.share((long) i * MMSGHDR_SIZE);
+        final int flags = i == 0 ? 0 : UnixDomainSocketLibrary.MSG_DONTWAIT;
+        final int n =
+            isSend
+                ? UnixDomainSocketLibrary.sendmsg(fd, msg, flags)
+                : UnixDomainSocketLibrary.recvmsg(fd, msg, flags);
+        msg.setInt(MSGHDR_SIZE, n);
+      }
+    } catch (final LastErrorException e) {
+      if (i == 0) throw e;
+    }
+    return i;
   }
 
   @Override
@@ -268,6 +935,249 @@ class JNAUnixDomainSocketLibraryProvider implements UnixDomainSocketLibraryProvi
     }
   }
 
+  @Override
+  public int setSocketOption(int fd, int level, int option, int value) throws NativeErrorException {
+    try {
+      return UnixDomainSocketLibrary.setsockopt(fd, level, option, new int[] {value}, 4);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int setSocketTimeout(int fd, int option, int timeoutMillis) throws NativeErrorException {
+    // struct timeval { time_t tv_sec; suseconds_t tv_usec; }, whose fields are longs or are padded
+    // to their size on the supported platforms.
+    final Memory timeval = new Memory(2 * NativeLong.SIZE);
+    timeval.setNativeLong(0, new NativeLong(timeoutMillis / 1000));
+    timeval.setNativeLong(NativeLong.SIZE, new NativeLong((timeoutMillis % 1000) * 1000L));
+    try {
+      return UnixDomainSocketLibrary.setsockopt(
+          fd, UnixDomainSocketLibrary.SOL_SOCKET, option, timeval, (int) timeval.size());
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int getSocketOption(int fd, int level, int option) throws NativeErrorException {
+    try {
+      final int[] value = new int[1];
+      UnixDomainSocketLibrary.getsockopt(fd, level, option, value, new int[] {4});
+      return value[0];
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int setNonBlocking(int fd, boolean nonBlocking) throws NativeErrorException {
+    try {
+      final UnixDomainSocketLibrary.Fcntl lib = UnixDomainSocketLibrary.Fcntl.INSTANCE;
+      final int flags = lib.fcntl(fd, UnixDomainSocketLibrary.F_GETFL);
+      final int newFlags =
+          nonBlocking
+              ? flags | UnixDomainSocketLibrary.O_NONBLOCK
+              : flags & ~UnixDomainSocketLibrary.O_NONBLOCK;
+      return lib.fcntl(fd, UnixDomainSocketLibrary.F_SETFL, newFlags);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int getStatusFlags(int fd) throws NativeErrorException {
+    try {
+      return UnixDomainSocketLibrary.Fcntl.INSTANCE.fcntl(fd, UnixDomainSocketLibrary.F_GETFL);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  // struct pollfd { int fd; short events; short revents; }
+  private static final int POLLFD_SIZE = 8;
+
+  @Override
+  public int poll(int[] fds, int[] events, int[] revents, int timeoutMillis)
+      throws NativeErrorException {
+    final Memory pollfds = new Memory((long) Math.max(fds.length, 1) * POLLFD_SIZE);
+    for (int i = 0; i < fds.length; i++) {
+      pollfds.setInt((long) i * POLLFD_SIZE, fds[i]);
+      pollfds.setShort((long) i * POLLFD_SIZE + 4, (short) events[i]);
+      pollfds.setShort((long) i * POLLFD_SIZE + 6, (short) 0);
+    }
+    int result;
+    while (true) {
+      try {
+        result = UnixDomainSocketLibrary.poll(pollfds, fds.length, timeoutMillis);
+        break;
+      } catch (final LastErrorException e) {
+        if (e.getErrorCode() != EINTR) {
+          throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+        }
+      }
+    }
+    for (int i = 0; i < fds.length; i++) {
+      revents[i] = pollfds.getShort((long) i * POLLFD_SIZE + 6) & 0xFFFF;
+    }
+    return result;
+  }
+
+  private static int unavailableOrThrow(LastErrorException e) throws NativeErrorException {
+    if (e.getErrorCode() == UnixDomainSocketLibrary.EAGAIN) {
+      return UNAVAILABLE;
+    }
+    throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+  }
+
+  @Override
+  public int socketPair(int domain, int type, int protocol, int[] fds) throws NativeErrorException {
+    try {
+      return UnixDomainSocketLibrary.socketpair(domain, type, protocol, fds);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int pipe(int[] fds) throws NativeErrorException {
+    try {
+      return UnixDomainSocketLibrary.pipe(fds);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int sendFile(int outFd, int inFd, long offset, int count) throws NativeErrorException {
+    requireLinux("sendfile");
+    try {
+      return UnixDomainSocketLibrary.ZeroCopy.sendfile(
+              outFd, inFd, new NativeLongByReference(new NativeLong(offset)), new NativeLong(count))
+          .intValue();
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+  }
+
+  @Override
+  public int splice(int inFd, int outFd, int count) throws NativeErrorException {
+    requireLinux("splice");
+    try {
+      return UnixDomainSocketLibrary.ZeroCopy.splice(
+              inFd,
+              Pointer.NULL,
+              outFd,
+              Pointer.NULL,
+              new NativeLong(count),
+              UnixDomainSocketLibrary.ZeroCopy.SPLICE_F_MOVE)
+          .intValue();
+    } catch (final LastErrorException e) {
+      return unavailableOrThrow(e);
+    }
+  }
+
+  @Override
+  public int epollCreate() throws NativeErrorException {
+    requireLinux("epoll_create1");
+    try {
+      return UnixDomainSocketLibrary.Epoll.epoll_create1(
+          UnixDomainSocketLibrary.Epoll.EPOLL_CLOEXEC);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int epollCtl(int epfd, int op, int fd, int events) throws NativeErrorException {
+    requireLinux("epoll_ctl");
+    try {
+      final Memory event = new Memory(UnixDomainSocketLibrary.Epoll.EVENT_SIZE);
+      event.clear();
+      event.setInt(0, events);
+      event.setInt(UnixDomainSocketLibrary.Epoll.DATA_OFFSET, fd);
+      return UnixDomainSocketLibrary.Epoll.epoll_ctl(epfd, op, fd, event);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  private final ThreadLocal<Memory> epollEvents = new ThreadLocal<>();
+
+  @Override
+  public int epollWait(int epfd, int[] fds, int[] events, int timeoutMillis)
+      throws NativeErrorException {
+    requireLinux("epoll_wait");
+    final int max = Math.min(fds.length, events.length);
+    final long size = (long) max * UnixDomainSocketLibrary.Epoll.EVENT_SIZE;
+    Memory buffer = epollEvents.get();
+    if (buffer == null || buffer.size() < size) {
+      buffer = new Memory(size);
+      epollEvents.set(buffer);
+    }
+    final int count;
+    try {
+      count = UnixDomainSocketLibrary.Epoll.epoll_wait(epfd, buffer, max, timeoutMillis);
+    } catch (final LastErrorException e) {
+      if (e.getErrorCode() == EINTR) return 0;
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+    for (int i = 0; i < count; i++) {
+      final long offset = (long) i * UnixDomainSocketLibrary.Epoll.EVENT_SIZE;
+      events[i] = buffer.getInt(offset);
+      fds[i] = buffer.getInt(offset + UnixDomainSocketLibrary.Epoll.DATA_OFFSET);
+    }
+    return count;
+  }
+
+  private static final int EINTR = 4;
+  private static final int EINVAL = 22;
+
+  @Override
+  public int memfdCreate(String name, long size) throws NativeErrorException {
+    requireLinux("memfd_create");
+    final int fd;
+    try {
+      fd =
+          UnixDomainSocketLibrary.SharedMemory.memfd_create(
+              name, UnixDomainSocketLibrary.SharedMemory.MFD_CLOEXEC);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    } catch (final LinkageError e) {
+      // glibc added memfd_create in 2.27.
+      throw new NativeErrorException(
+          UnixDomainSocketLibrary.ENOSYS, "memfd_create is not available: " + e.getMessage());
+    }
+    try {
+      UnixDomainSocketLibrary.SharedMemory.ftruncate(fd, new NativeLong(size));
+      return fd;
+    } catch (final LastErrorException e) {
+      close(fd);
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    }
+  }
+
+  @Override
+  public int eventfdCreate() throws NativeErrorException {
+    requireLinux("eventfd");
+    try {
+      return UnixDomainSocketLibrary.SharedMemory.eventfd(
+          0, UnixDomainSocketLibrary.SharedMemory.EFD_CLOEXEC);
+    } catch (final LastErrorException e) {
+      throw new NativeErrorException(e.getErrorCode(), e.getMessage());
+    } catch (final LinkageError e) {
+      throw new NativeErrorException(
+          UnixDomainSocketLibrary.ENOSYS, "eventfd is not available: " + e.getMessage());
+    }
+  }
+
+  private static void requireLinux(String function) throws NativeErrorException {
+    if (!Platform.isLinux()) {
+      throw new NativeErrorException(
+          UnixDomainSocketLibrary.ENOSYS, function + " is only supported on Linux");
+    }
+  }
+
   @Override
   public int maxSocketLength() {
     return new UnixDomainSocketLibrary.SockaddrUn().sunPath.length;
@@ -1,24 +1,327 @@
 package org.scalasbt.ipcsocket;
 
+import java.nio.ByteBuffer;
+
+/**
+ * The native calls behind the Unix domain sockets. The methods that were added after the first
+ * release have default implementations, so that providers written against it keep working: they
+ * fall back to the original calls where that is possible and otherwise throw a {@link
+ * NativeErrorException} with {@code ENOSYS}.
+ */
 public interface UnixDomainSocketLibraryProvider {
+  /**
+   * Returned by {@link #accept}, {@link #read}, {@link #write}, {@link #receiveMessage}, {@link
+   * #sendFile}, {@link #splice}, {@link #sendFileDescriptors} and {@link #receiveFileDescriptors}
+   * instead of throwing when the descriptor is in non-blocking mode and the call would have
+   * blocked.
+   */
+  int UNAVAILABLE = -2;
+
   int socket(int domain, int type, int protocol) throws NativeErrorException;
 
   int bind(int fd, byte[] address, int addressLen) throws NativeErrorException;
 
   int listen(int fd, int backlog) throws NativeErrorException;
 
+  /** Accepts a connection. The returned descriptor is close-on-exec. */
   int accept(int fd) throws NativeErrorException;
 
+  /**
+   * Accepts up to {@code fds.length} connections and stores their descriptors in {@code fds}. Waits
+   * for the first connection unless {@code fd} is in non-blocking mode, and then takes only the
+   * connections that are already pending, with {@code fd} put in non-blocking mode for the rest of
+   * the batch. The descriptors are close-on-exec, and also in non-blocking mode if {@code
+   * nonBlocking} is set. While a batch is being taken, a concurrent accept from {@code fd} in
+   * another thread may report that no connection is pending even though {@code fd} is blocking.
+   *
+   * @return the number of connections accepted, which may be smaller than {@code fds.length} even
+   *     if more are pending
+   */
+  default int accept(int fd, int[] fds, boolean nonBlocking) throws NativeErrorException {
+    if (fds.length == 0) {
+      return 0;
+    }
+    final int result = accept(fd);
+    if (result == UNAVAILABLE) {
+      return result;
+    }
+    fds[0] = result;
+    if (nonBlocking) {
+      try {
+        setNonBlocking(result, true);
+      } catch (NativeErrorException e) {
+        close(result);
+        throw e;
+      }
+    }
+    return 1;
+  }
+
   int connect(int fd, byte[] address, int len) throws NativeErrorException;
 
   int read(int fd, byte[] buffer, int offset, int len) throws NativeErrorException;
 
   int write(int fd, byte[] buffer, int offset, int len) throws NativeErrorException;
 
+  /**
+   * Reads up to {@code buffer.remaining()} bytes into {@code buffer} and advances its position by
+   * the number of bytes read. Direct buffers are handed to the kernel without an intermediate copy.
+   *
+   * @return the number of bytes read, or 0 at end of stream
+   */
+  default int read(int fd, ByteBuffer buffer) throws NativeErrorException {
+    final byte[] bytes = new byte[buffer.remaining()];
+    final int result = read(fd, bytes, 0, bytes.length);
+    if (result > 0) {
+      buffer.put(bytes, 0, result);
+    }
+    return result;
+  }
+
+  /**
+   * Writes up to {@code buffer.remaining()} bytes from {@code buffer} and advances its position by
+   * the number of bytes written. Direct buffers are handed to the kernel without an intermediate
+   * copy.
+   *
+   * @return the number of bytes written
+   */
+  default int write(int fd, ByteBuffer buffer) throws NativeErrorException {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    final int result = write(fd, bytes, 0, bytes.length);
+    if (result > 0) {
+      buffer.position(buffer.position() + result);
+    }
+    return result;
+  }
+
+  /**
+   * Receives a single message into {@code buffer}, advancing its position by the number of bytes
+   * stored. If the message doesn't fit, the rest of it is discarded.
+   *
+   * @return the length of the message, which on Linux is larger than the number of bytes stored if
+   *     the message was truncated, or 0 at end of stream
+   */
+  default int receiveMessage(int fd, ByteBuffer buffer) throws NativeErrorException {
+    throw NativeErrorException.unsupported("recvmsg");
+  }
+
+  /**
+   * Reads into {@code buffers[offset]} to {@code buffers[offset + length - 1]} with a single
+   * scattering read, advancing the position of each buffer by the number of bytes stored in it. At
+   * most 64 buffers are filled by one call.
+   *
+   * @return the number of bytes read, or 0 at end of stream
+   */
+  default long readv(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    for (int i = offset; i < offset + length; i++) {
+      if (buffers[i].hasRemaining()) {
+        return read(fd, buffers[i]);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Writes from {@code buffers[offset]} to {@code buffers[offset + length - 1]} with a single
+   * gathering write, advancing the position of each buffer by the number of bytes taken from it. At
+   * most 64 buffers are drained by one call.
+   *
+   * @return the number of bytes written
+   */
+  default long writev(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    for (int i = offset; i < offset + length; i++) {
+      if (buffers[i].hasRemaining()) {
+        return write(fd, buffers[i]);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Writes up to {@code buffer.remaining()} bytes from {@code buffer} with {@code fds} attached as
+   * {@code SCM_RIGHTS} ancillary data, advancing its position by the number of bytes written. At
+   * most 253 descriptors can be attached to one call.
+   *
+   * @return the number of bytes written
+   */
+  default int sendFileDescriptors(int fd, ByteBuffer buffer, int[] fds)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("sendmsg");
+  }
+
+  /**
+   * Reads up to {@code buffer.remaining()} bytes into {@code buffer}, advancing its position by the
+   * number of bytes read, and stores the descriptors that were attached to them at the start of
+   * {@code fds}. The remaining elements of {@code fds} are set to -1. Descriptors that don't fit in
+   * {@code fds} are closed.
+   *
+   * @return the number of bytes read, or 0 at end of stream
+   * @throws NativeErrorException with {@code EMSGSIZE} if the kernel couldn't pass all of the
+   *     attached descriptors ({@code MSG_CTRUNC}), for instance because this process has run out of
+   *     them. The descriptors that did arrive are closed, and the bytes that were read are lost.
+   */
+  default int receiveFileDescriptors(int fd, ByteBuffer buffer, int[] fds)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("recvmsg");
+  }
+
+  /**
+   * Sends each of {@code buffers[offset]} to {@code buffers[offset + length - 1]} as a separate
+   * datagram on the connected socket {@code fd}, advancing the position of each buffer that was
+   * sent to its limit. Linux sends up to 256 datagrams with one {@code sendmmsg(2)} call; other
+   * platforms send them one at a time.
+   *
+   * @return the number of datagrams sent
+   */
+  default int sendMessages(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("sendmmsg");
+  }
+
+  /**
+   * Receives up to {@code length} datagrams, one into each of {@code buffers[offset]} to {@code
+   * buffers[offset + length - 1]}, advancing the position of each buffer by the number of bytes
+   * stored. Only waits for the first datagram. Datagrams that don't fit in their buffer are
+   * truncated. Linux receives up to 256 datagrams with one {@code recvmmsg(2)} call; other
+   * platforms receive them one at a time.
+   *
+   * @return the number of datagrams received
+   */
+  default int receiveMessages(int fd, ByteBuffer[] buffers, int offset, int length)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("recvmmsg");
+  }
+
   int close(int fd) throws NativeErrorException;
 
+  /** Puts {@code fd} in non-blocking mode, or back in blocking mode. */
+  default int setNonBlocking(int fd, boolean nonBlocking) throws NativeErrorException {
+    throw NativeErrorException.unsupported("fcntl");
+  }
+
+  /**
+   * Returns the file status flags of {@code fd}, such as {@code O_APPEND} and {@code O_NONBLOCK}.
+   */
+  default int getStatusFlags(int fd) throws NativeErrorException {
+    throw NativeErrorException.unsupported("fcntl");
+  }
+
+  /**
+   * Waits until one of {@code fds} is ready for the corresponding {@code events} (a combination of
+   * {@code POLLIN} and {@code POLLOUT}) or until {@code timeoutMillis} elapses. A negative timeout
+   * waits indefinitely. The ready events of each descriptor are stored in {@code revents}.
+   *
+   * @return the number of ready descriptors, or 0 on timeout
+   */
+  default int poll(int[] fds, int[] events, int[] revents, int timeoutMillis)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("poll");
+  }
+
+  /** Creates a pair of connected sockets and stores their descriptors in {@code fds}. */
+  default int socketPair(int domain, int type, int protocol, int[] fds)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("socketpair");
+  }
+
+  /** Creates a pipe and stores its read and write descriptors in {@code fds}. */
+  default int pipe(int[] fds) throws NativeErrorException {
+    throw NativeErrorException.unsupported("pipe");
+  }
+
+  /**
+   * Copies up to {@code count} bytes of the file {@code inFd}, starting at {@code offset}, to
+   * {@code outFd} inside the kernel with {@code sendfile(2)}. The file offset of {@code inFd} is
+   * not changed. Only supported on Linux.
+   *
+   * @return the number of bytes copied, or 0 at end of file
+   */
+  default int sendFile(int outFd, int inFd, long offset, int count) throws NativeErrorException {
+    throw NativeErrorException.unsupported("sendfile");
+  }
+
+  /**
+   * Moves up to {@code count} bytes from {@code inFd} to {@code outFd} inside the kernel with
+   * {@code splice(2)}. One of the descriptors must be a pipe. Only supported on Linux.
+   *
+   * @return the number of bytes moved, or 0 at end of stream
+   */
+  default int splice(int inFd, int outFd, int count) throws NativeErrorException {
+    throw NativeErrorException.unsupported("splice");
+  }
+
+  /** Creates a close-on-exec epoll instance. Only supported on Linux. */
+  default int epollCreate() throws NativeErrorException {
+    throw NativeErrorException.unsupported("epoll_create");
+  }
+
+  /**
+   * Adds, modifies or removes {@code fd} in the interest list of {@code epfd}. The descriptor is
+   * stored as the event data so that {@link #epollWait} can report it. Only supported on Linux.
+   */
+  default int epollCtl(int epfd, int op, int fd, int events) throws NativeErrorException {
+    throw NativeErrorException.unsupported("epoll_ctl");
+  }
+
+  /**
+   * Waits for up to {@code fds.length} events on {@code epfd}, storing the ready descriptors in
+   * {@code fds} and their event masks in {@code events}. Only supported on Linux.
+   *
+   * @return the number of ready descriptors, or 0 on timeout or interruption by a signal
+   */
+  default int epollWait(int epfd, int[] fds, int[] events, int timeoutMillis)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("epoll_wait");
+  }
+
   int shutdown(int fd, int how) throws NativeErrorException;
 
+  /**
+   * Sets the integer socket option {@code option} at {@code level}, e.g. {@link
+   * UnixDomainSocketLibrary#SO_SNDBUF} at {@link UnixDomainSocketLibrary#SOL_SOCKET}, with {@code
+   * setsockopt(2)}.
+   */
+  default int setSocketOption(int fd, int level, int option, int value)
+      throws NativeErrorException {
+    throw NativeErrorException.unsupported("setsockopt");
+  }
+
+  /**
+   * Sets the timeout socket option {@code option} at {@code SOL_SOCKET}, either {@link
+   * UnixDomainSocketLibrary#SO_RCVTIMEO} or {@link UnixDomainSocketLibrary#SO_SNDTIMEO}, to {@code
+   * timeoutMillis}. A timeout of 0 waits indefinitely.
+   */
+  default int setSocketTimeout(int fd, int option, int timeoutMillis) throws NativeErrorException {
+    throw NativeErrorException.unsupported("setsockopt");
+  }
+
+  /**
+   * Returns the value of the non-negative integer socket option {@code option} at {@code level}
+   * with {@code getsockopt(2)}.
+   */
+  default int getSocketOption(int fd, int level, int option) throws NativeErrorException {
+    throw NativeErrorException.unsupported("getsockopt");
+  }
+
+  /**
+   * Creates an anonymous, close-on-exec shared memory file of {@code size} bytes with {@code
+   * memfd_create(2)}. Only supported on Linux.
+   */
+  default int memfdCreate(String name, long size) throws NativeErrorException {
+    throw NativeErrorException.unsupported("memfd_create");
+  }
+
+  /**
+   * Creates a close-on-exec {@code eventfd(2)} counter. A thread waits for it by reading 8 bytes
+   * and another wakes it by writing 8 bytes. Only supported on Linux.
+   */
+  default int eventfdCreate() throws NativeErrorException {
+    throw NativeErrorException.unsupported("eventfd");
+  }
+
   int maxSocketLength();
 
   static UnixDomainSocketLibraryProvider get(boolean useJNI) {
@@ -0,0 +1,225 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps connected {@link UnixDomainSocket}s open between requests so that a client that talks to
+ * the same server repeatedly doesn't pay for {@code socket}, {@code connect} and the server's
+ * {@code accept} on every request. Connections are pooled by socket path.
+ *
+ * <p>A caller {@link #borrow(String) borrows} a connection, uses it for a complete request and
+ * response, and then {@link #release(UnixDomainSocket) releases} it back to the pool, or {@link
+ * #invalidate(UnixDomainSocket) invalidates} it if the exchange failed or left unread data behind.
+ * Borrowed connections are checked before they are handed out: a connection that the server has
+ * closed, or that has unexpected data waiting, is discarded. A background thread closes connections
+ * that have been idle for longer than the idle timeout, keeping at least {@code minIdle}
+ * connections open for each path that has been used.
+ */
+public class UnixDomainSocketPool implements Closeable {
+  private final boolean useJNI;
+  private final int minIdle;
+  private final int maxIdle;
+  private final long idleTimeoutNanos;
+  private final UnixDomainSocketLibraryProvider provider;
+  private final Map<String, LinkedBlockingDeque<Idle>> idle = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService evictor;
+  private volatile boolean isClosed;
+
+  private static final class Idle {
+    final UnixDomainSocket socket;
+    final long since = System.nanoTime();
+
+    Idle(UnixDomainSocket socket) {
+      this.socket = socket;
+    }
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param useJNI whether the pooled sockets use the JNI provider
+   * @param minIdle the number of idle connections to keep open for each path, even when they have
+   *     been idle for longer than the idle timeout
+   * @param maxIdle the maximum number of idle connections for each path. Connections that are
+   *     released when the maximum has been reached are closed.
+   * @param idleTimeoutMillis how long a connection may be idle before it is closed
+   */
+  public UnixDomainSocketPool(boolean useJNI, int minIdle, int maxIdle, long idleTimeoutMillis) {
+    if (minIdle < 0 || maxIdle < 1 || minIdle > maxIdle) {
+      throw new IllegalArgumentException("Invalid minIdle " + minIdle + ", maxIdle " + maxIdle);
+    }
+    if (idleTimeoutMillis <= 0) {
+      throw new IllegalArgumentException("idleTimeoutMillis must be positive");
+    }
+    this.useJNI = useJNI;
+    this.minIdle = minIdle;
+    this.maxIdle = maxIdle;
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    this.provider = UnixDomainSocketLibraryProvider.get(useJNI);
+    final ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            r -> {
+              final Thread thread = new Thread(r, "ipcsocket-pool-evictor");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    final long period = Math.max(1, idleTimeoutMillis / 2);
+    executor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+    this.evictor = executor;
+  }
+
+  /** Creates a pool that keeps up to 8 connections per path idle for at most a minute. */
+  public UnixDomainSocketPool(boolean useJNI) {
+    this(useJNI, 0, 8, TimeUnit.MINUTES.toMillis(1));
+  }
+
+  /**
+   * Returns a healthy idle connection to {@code path}, or a new connection if there is none. The
+   * connection must be given back with {@link #release(UnixDomainSocket)} or {@link
+   * #invalidate(UnixDomainSocket)}.
+   */
+  public UnixDomainSocket borrow(String path) throws IOException {
+    if (isClosed) {
+      throw new IOException("Pool is closed");
+    }
+    final LinkedBlockingDeque<Idle> connections = connections(path);
+    Idle candidate;
+    while ((candidate = connections.pollFirst()) != null) {
+      if (isHealthy(candidate.socket)) {
+        return candidate.socket;
+      }
+      closeQuietly(candidate.socket);
+    }
+    return new UnixDomainSocket(path, useJNI);
+  }
+
+  /**
+   * Returns a borrowed connection to the pool for reuse. The caller must have read the complete
+   * response, since anything left unread makes the connection unhealthy. The connection is closed
+   * if it is unhealthy, the pool is full or the pool has been closed.
+   */
+  public void release(UnixDomainSocket socket) {
+    final String path = socket.getPath();
+    if (isClosed
+        || path == null
+        || !isHealthy(socket)
+        || !connections(path).offerFirst(new Idle(socket))) {
+      closeQuietly(socket);
+      return;
+    }
+    if (isClosed) {
+      // close() may have drained the pool before the connection was added.
+      drain(connections(path));
+    }
+  }
+
+  /** Closes a borrowed connection that can't be reused, e.g. after an I/O error. */
+  public void invalidate(UnixDomainSocket socket) {
+    closeQuietly(socket);
+  }
+
+  /** Returns the number of idle connections to {@code path}. */
+  public int idleCount(String path) {
+    final LinkedBlockingDeque<Idle> connections = idle.get(path);
+    return connections == null ? 0 : connections.size();
+  }
+
+  /** Closes all idle connections. Connections that are released afterwards are closed too. */
+  @Override
+  public void close() {
+    isClosed = true;
+    evictor.shutdownNow();
+    for (LinkedBlockingDeque<Idle> connections : idle.values()) {
+      drain(connections);
+    }
+  }
+
+  private LinkedBlockingDeque<Idle> connections(String path) {
+    return idle.computeIfAbsent(path, p -> new LinkedBlockingDeque<>(maxIdle));
+  }
+
+  /**
+   * A connection is healthy if it is open and has nothing to read. An idle connection that is
+   * readable has either been closed by the server or has unexpected data that would corrupt the
+   * next exchange.
+   */
+  private boolean isHealthy(UnixDomainSocket socket) {
+    if (socket.isClosed()) {
+      return false;
+    }
+    try {
+      final int socketFd = socket.getFd();
+      if (socketFd == -1) {
+        return false;
+      }
+      final int[] revents = new int[1];
+      provider.poll(new int[] {socketFd}, new int[] {UnixDomainSocketLibrary.POLLIN}, revents, 0);
+      return revents[0] == 0;
+    } catch (IOException | NativeErrorException e) {
+      return false;
+    }
+  }
+
+  /** Closes the connections that have been idle for too long and tops up each path to minIdle. */
+  private void evict() {
+    final long now = System.nanoTime();
+    for (Map.Entry<String, LinkedBlockingDeque<Idle>> entry : idle.entrySet()) {
+      final LinkedBlockingDeque<Idle> connections = entry.getValue();
+      // The oldest connections are at the end of the deque.
+      final Iterator<Idle> it = connections.descendingIterator();
+      while (it.hasNext() && connections.size() > minIdle) {
+        final Idle candidate = it.next();
+        if (now - candidate.since < idleTimeoutNanos) {
+          break;
+        }
+        if (connections.remove(candidate)) {
+          closeQuietly(candidate.socket);
+        }
+      }
+      for (Idle candidate : connections) {
+        if (!isHealthy(candidate.socket) && connections.remove(candidate)) {
+          closeQuietly(candidate.socket);
+        }
+      }
+      while (!isClosed && connections.size() < minIdle) {
+        final UnixDomainSocket socket;
+        try {
+          socket = new UnixDomainSocket(entry.getKey(), useJNI);
+        } catch (IOException e) {
+          break;
+        }
+        if (!connections.offerLast(new Idle(socket))) {
+          closeQuietly(socket);
+          break;
+        }
+      }
+      if (isClosed) {
+        drain(connections);
+      }
+    }
+  }
+
+  private static void drain(LinkedBlockingDeque<Idle> connections) {
+    Idle candidate;
+    while ((candidate = connections.pollFirst()) != null) {
+      closeQuietly(candidate.socket);
+    }
+  }
+
+  private static void closeQuietly(UnixDomainSocket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+    }
+  }
+}
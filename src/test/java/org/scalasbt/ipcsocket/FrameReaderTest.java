@@ -0,0 +1,120 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FrameReaderTest extends BaseSocketSetup {
+  private static final int[] SIZES = {0, 1, 127, 128, 300, 16383, 16384, 100000, 5, 0, 70000};
+
+  private void roundTrip(FrameFormat format) throws Exception {
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          byte[][] frames = new byte[SIZES.length][];
+          for (int i = 0; i < SIZES.length; i++) {
+            frames[i] = new byte[SIZES[i]];
+            rand.nextBytes(frames[i]);
+          }
+          AtomicReference<IOException> error = new AtomicReference<>();
+          Thread writer =
+              new Thread(
+                  () -> {
+                    FrameWriter frameWriter = new FrameWriter(client, format);
+                    try {
+                      for (int round = 0; round < 3; round++) {
+                        for (byte[] frame : frames) {
+                          frameWriter.write(frame);
+                        }
+                      }
+                      ByteBuffer direct = ByteBuffer.allocateDirect(10);
+                      direct.put(frames[2], 0, 10).flip();
+                      frameWriter.write(direct);
+                      assertFalse(direct.hasRemaining());
+                      client.shutdownOutput();
+                    } catch (IOException e) {
+                      error.set(e);
+                    }
+                  });
+          writer.start();
+          // A small buffer makes the reader compact and grow it.
+          FrameReader reader = new FrameReader(server, format, 64, 1 << 20);
+          for (int round = 0; round < 3; round++) {
+            for (byte[] expected : frames) {
+              ByteBuffer frame = reader.next();
+              assertEquals(expected.length, frame.remaining());
+              byte[] actual = new byte[frame.remaining()];
+              frame.get(actual);
+              assertArrayEquals(expected, actual);
+            }
+          }
+          ByteBuffer last = reader.next();
+          assertEquals(10, last.remaining());
+          assertEquals(frames[2][9], last.get(last.position() + 9));
+          assertNull(reader.next());
+          writer.join();
+          assertNull(error.get());
+          client.close();
+          server.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void fixedLengthFrames() throws Exception {
+    if (isWin) return;
+    roundTrip(FrameFormat.FIXED_32);
+  }
+
+  @Test
+  public void varintLengthFrames() throws Exception {
+    if (isWin) return;
+    roundTrip(FrameFormat.VARINT);
+  }
+
+  @Test
+  public void invalidFrames() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          FrameWriter writer = new FrameWriter(client, FrameFormat.VARINT, 100);
+          try {
+            writer.write(new byte[101]);
+            fail("an oversized frame should not be written");
+          } catch (IOException e) {
+          }
+          // A frame larger than the reader's maximum can't be skipped.
+          new FrameWriter(client, FrameFormat.VARINT).write(new byte[200]);
+          FrameReader reader = new FrameReader(server, FrameFormat.VARINT, 64, 100);
+          try {
+            reader.next();
+            fail("an oversized frame should not be read");
+          } catch (IOException e) {
+          }
+
+          UnixDomainSocket client2 = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server2 = (UnixDomainSocket) serverSocket.accept();
+          FrameReader reader2 = new FrameReader(server2, FrameFormat.FIXED_32);
+          client2.getOutputStream().write(new byte[] {0, 0, 0, 8, 1, 2, 3});
+          client2.shutdownOutput();
+          try {
+            reader2.next();
+            fail("a truncated frame should not be read");
+          } catch (EOFException e) {
+          }
+          client.close();
+          server.close();
+          client2.close();
+          server2.close();
+          serverSocket.close();
+        });
+  }
+}
@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class FrameReaderTestJNI extends FrameReaderTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
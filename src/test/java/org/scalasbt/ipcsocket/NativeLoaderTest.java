@@ -0,0 +1,51 @@
+package org.scalasbt.ipcsocket;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NativeLoaderTest extends BaseSocketSetup {
+  @Test
+  public void cachesLibraryByContent() throws Exception {
+    Path root = Files.createTempDirectory("ipcsocket-cache");
+    try {
+      Path cache = root.resolve("cache");
+      byte[] library = new byte[100000];
+      rand.nextBytes(library);
+      Path first = NativeLoader.cachedLibrary(cache, library, "libtest.so");
+      assertEquals("libtest.so", first.getFileName().toString());
+      assertArrayEquals(library, Files.readAllBytes(first));
+
+      // An existing copy is reused rather than written again.
+      FileTime old = FileTime.fromMillis(1000000000000L);
+      Files.setLastModifiedTime(first, old);
+      assertEquals(first, NativeLoader.cachedLibrary(cache, library, "libtest.so"));
+      assertEquals(old, Files.getLastModifiedTime(first));
+
+      // A copy with different contents is replaced.
+      Files.write(first, new byte[] {1, 2, 3});
+      assertEquals(first, NativeLoader.cachedLibrary(cache, library, "libtest.so"));
+      assertArrayEquals(library, Files.readAllBytes(first));
+
+      byte[] other = library.clone();
+      other[0]++;
+      // So is a copy of the same size, which is told apart by its hash.
+      Files.write(first, other);
+      assertEquals(first, NativeLoader.cachedLibrary(cache, library, "libtest.so"));
+      assertArrayEquals(library, Files.readAllBytes(first));
+
+      Path second = NativeLoader.cachedLibrary(cache, other, "libtest.so");
+      assertNotEquals(first.getParent(), second.getParent());
+      try (Stream<Path> files = Files.list(first.getParent())) {
+        assertEquals("no temporary files are left behind", 1, files.count());
+      }
+    } finally {
+      try (Stream<Path> files = Files.walk(root)) {
+        files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+      }
+    }
+  }
+}
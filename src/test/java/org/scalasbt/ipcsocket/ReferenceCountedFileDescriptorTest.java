@@ -0,0 +1,104 @@
+package org.scalasbt.ipcsocket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReferenceCountedFileDescriptorTest {
+  /** Counts the descriptors that are closed, and fails every other call. */
+  private static final class CountingProvider implements UnixDomainSocketLibraryProvider {
+    final AtomicInteger closes = new AtomicInteger();
+
+    @Override
+    public int close(int fd) {
+      closes.incrementAndGet();
+      return 0;
+    }
+
+    @Override
+    public int socket(int domain, int type, int protocol) throws NativeErrorException {
+      throw NativeErrorException.unsupported("socket");
+    }
+
+    @Override
+    public int bind(int fd, byte[] address, int addressLen) throws NativeErrorException {
+      throw NativeErrorException.unsupported("bind");
+    }
+
+    @Override
+    public int listen(int fd, int backlog) throws NativeErrorException {
+      throw NativeErrorException.unsupported("listen");
+    }
+
+    @Override
+    public int accept(int fd) throws NativeErrorException {
+      throw NativeErrorException.unsupported("accept");
+    }
+
+    @Override
+    public int connect(int fd, byte[] address, int len) throws NativeErrorException {
+      throw NativeErrorException.unsupported("connect");
+    }
+
+    @Override
+    public int read(int fd, byte[] buffer, int offset, int len) throws NativeErrorException {
+      throw NativeErrorException.unsupported("read");
+    }
+
+    @Override
+    public int write(int fd, byte[] buffer, int offset, int len) throws NativeErrorException {
+      throw NativeErrorException.unsupported("write");
+    }
+
+    @Override
+    public int shutdown(int fd, int how) throws NativeErrorException {
+      throw NativeErrorException.unsupported("shutdown");
+    }
+
+    @Override
+    public int maxSocketLength() {
+      return 104;
+    }
+  }
+
+  @Test
+  public void closeWaitsForOutstandingReferences() throws Exception {
+    CountingProvider provider = new CountingProvider();
+    ReferenceCountedFileDescriptor fd = new ReferenceCountedFileDescriptor(42, provider);
+    assertEquals(42, fd.acquire());
+    fd.close();
+    assertEquals(0, provider.closes.get());
+    fd.release();
+    assertEquals(1, provider.closes.get());
+    fd.close();
+    assertEquals(1, provider.closes.get());
+  }
+
+  @Test
+  public void acquireAfterCloseDoesNotCloseAgain() throws Exception {
+    CountingProvider provider = new CountingProvider();
+    ReferenceCountedFileDescriptor fd = new ReferenceCountedFileDescriptor(42, provider);
+    fd.close();
+    assertEquals(1, provider.closes.get());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(-1, fd.acquire());
+      fd.release();
+    }
+    assertEquals(1, provider.closes.get());
+  }
+
+  @Test
+  public void unreachableDescriptorIsClosed() throws Exception {
+    CountingProvider provider = new CountingProvider();
+    AtomicInteger beforeClose = new AtomicInteger();
+    new ReferenceCountedFileDescriptor(42, provider, beforeClose::incrementAndGet).acquire();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (provider.closes.get() == 0 && System.nanoTime() < deadline) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertEquals(1, provider.closes.get());
+    assertEquals(1, beforeClose.get());
+  }
+}
@@ -0,0 +1,136 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SharedMemoryTransportTest extends BaseSocketSetup {
+  final boolean isLinux = System.getProperty("os.name", "").toLowerCase().startsWith("linux");
+
+  private void transfer(int capacity, boolean expectShared) throws Exception {
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          CompletableFuture<SharedMemoryTransport> accepted =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try {
+                      return SharedMemoryTransport.accept(server);
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  });
+          SharedMemoryTransport clientTransport = SharedMemoryTransport.connect(client, capacity);
+          SharedMemoryTransport serverTransport = accepted.join();
+          assertEquals(expectShared, clientTransport.isShared());
+          assertEquals(expectShared, serverTransport.isShared());
+
+          // The server echoes everything back, so both rings wrap around many times.
+          byte[] payload = new byte[8 * 1024 * 1024 + 17];
+          rand.nextBytes(payload);
+          AtomicReference<IOException> error = new AtomicReference<>();
+          Thread echo =
+              new Thread(
+                  () -> {
+                    byte[] buffer = new byte[10000];
+                    try {
+                      InputStream in = serverTransport.getInputStream();
+                      OutputStream out = serverTransport.getOutputStream();
+                      int read;
+                      while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                      }
+                      out.close();
+                    } catch (IOException e) {
+                      error.set(e);
+                    }
+                  });
+          echo.start();
+          Thread writer =
+              new Thread(
+                  () -> {
+                    try {
+                      OutputStream out = clientTransport.getOutputStream();
+                      // Small arrays, since JNA copies the whole array that it is passed.
+                      for (int i = 0; i < payload.length; i += 3001) {
+                        out.write(
+                            Arrays.copyOfRange(payload, i, Math.min(i + 3001, payload.length)));
+                      }
+                      out.close();
+                    } catch (IOException e) {
+                      error.set(e);
+                    }
+                  });
+          writer.start();
+          byte[] received = new byte[payload.length];
+          InputStream in = clientTransport.getInputStream();
+          DataInputStream data = new DataInputStream(in);
+          byte[] chunk = new byte[65536];
+          for (int i = 0; i < received.length; i += chunk.length) {
+            int length = Math.min(chunk.length, received.length - i);
+            data.readFully(chunk, 0, length);
+            System.arraycopy(chunk, 0, received, i, length);
+          }
+          assertEquals(-1, in.read());
+          assertArrayEquals(payload, received);
+          writer.join();
+          echo.join();
+          assertNull(error.get());
+          clientTransport.close();
+          serverTransport.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void sharedMemoryTransfer() throws Exception {
+    if (!isLinux) return;
+    transfer(64 * 1024, true);
+  }
+
+  @Test
+  public void socketFallback() throws Exception {
+    if (isWin) return;
+    transfer(0, false);
+  }
+
+  @Test
+  public void peerExit() throws Exception {
+    if (!isLinux) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          CompletableFuture<SharedMemoryTransport> accepted =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try {
+                      return SharedMemoryTransport.accept(server);
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  });
+          SharedMemoryTransport clientTransport = SharedMemoryTransport.connect(client, 4096);
+          accepted.join();
+          assertTrue(clientTransport.isShared());
+          // Closing the socket without closing the streams is what the peer's exit looks like.
+          server.close();
+          try {
+            clientTransport.getInputStream().read();
+            fail("the read should fail once the peer is gone");
+          } catch (IOException e) {
+          }
+          clientTransport.close();
+          serverSocket.close();
+        });
+  }
+}
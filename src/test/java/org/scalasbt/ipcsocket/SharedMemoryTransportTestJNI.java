@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class SharedMemoryTransportTestJNI extends SharedMemoryTransportTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
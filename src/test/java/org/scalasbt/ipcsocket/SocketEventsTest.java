@@ -0,0 +1,63 @@
+package org.scalasbt.ipcsocket;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SocketEventsTest extends BaseSocketSetup {
+  private static final String[] EVENTS = {
+    "SocketConnect", "SocketAccept", "SocketWrite", "SocketRead", "SocketClose"
+  };
+
+  @Test
+  public void recordsSocketOperations() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          Path file = Files.createTempFile("ipcsocket", ".jfr");
+          try (Recording recording = new Recording()) {
+            for (String event : EVENTS) {
+              recording.enable("org.scalasbt.ipcsocket." + event).withThreshold(null);
+            }
+            recording.start();
+            UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+            UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+            UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+            client.getOutputStream().write(new byte[100]);
+            assertEquals(100, server.getInputStream().read(new byte[200]));
+            client.close();
+            server.close();
+            serverSocket.close();
+            recording.stop();
+            recording.dump(file);
+
+            Map<String, RecordedEvent> events = new HashMap<>();
+            List<RecordedEvent> recorded = RecordingFile.readAllEvents(file);
+            for (RecordedEvent event : recorded) {
+              String name = event.getEventType().getName();
+              if (name.startsWith("org.scalasbt.ipcsocket.")) {
+                events.putIfAbsent(name.substring("org.scalasbt.ipcsocket.".length()), event);
+              }
+            }
+            for (String event : EVENTS) {
+              assertTrue(event + " was not recorded", events.containsKey(event));
+            }
+            assertEquals(sock, events.get("SocketConnect").getString("path"));
+            assertTrue(events.get("SocketConnect").getBoolean("connected"));
+            assertEquals(1, events.get("SocketAccept").getInt("connections"));
+            assertEquals(100, events.get("SocketWrite").getLong("bytesWritten"));
+            assertEquals(100, events.get("SocketRead").getLong("bytesRead"));
+            assertTrue(events.get("SocketRead").getInt("fd") > 0);
+          } finally {
+            Files.deleteIfExists(file);
+          }
+        });
+  }
+}
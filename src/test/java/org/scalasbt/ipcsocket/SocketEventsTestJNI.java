@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class SocketEventsTestJNI extends SocketEventsTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
@@ -0,0 +1,75 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SocketMetricsTest extends BaseSocketSetup {
+  @Test
+  public void countsSocketOperations() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          SocketMetrics.Snapshot before = SocketMetrics.get().snapshot();
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          client.getOutputStream().write(new byte[1000]);
+          ByteBuffer buffer = ByteBuffer.allocateDirect(24);
+          buffer.put(new byte[24]).flip();
+          client.write(buffer);
+          byte[] received = new byte[1024];
+          int read = 0;
+          while (read < received.length) {
+            read += server.getInputStream().read(received, read, received.length - read);
+          }
+          try {
+            new UnixDomainSocket(sock + ".missing", useJNI()).close();
+            fail("connecting to a missing socket should fail");
+          } catch (IOException e) {
+          }
+          SocketMetrics.Snapshot after = SocketMetrics.get().snapshot();
+          // Other tests may run concurrently, so only lower bounds can be checked.
+          assertTrue(after.getBytesWritten() - before.getBytesWritten() >= 1024);
+          assertTrue(after.getWriteOps() - before.getWriteOps() >= 2);
+          assertTrue(after.getBytesRead() - before.getBytesRead() >= 1024);
+          assertTrue(after.getReadOps() - before.getReadOps() >= 1);
+          assertTrue(after.getAccepts() - before.getAccepts() >= 1);
+          assertTrue(after.getConnects() - before.getConnects() >= 1);
+          assertTrue(after.getConnectFailures() - before.getConnectFailures() >= 1);
+          int enoent = 2;
+          assertTrue(
+              after.getNativeErrors().getOrDefault(enoent, 0L)
+                  > before.getNativeErrors().getOrDefault(enoent, 0L));
+          assertEquals(1024, client.getMetrics().getBytesWritten());
+          assertEquals(2, client.getMetrics().getWriteOps());
+          assertEquals(1024, server.getMetrics().getBytesRead());
+          assertEquals(0, server.getMetrics().getBytesWritten());
+          assertEquals(1, serverSocket.getMetrics().getAccepts());
+          SocketMetrics.Latency writes = after.getWriteLatency();
+          assertTrue(writes.getCount() - before.getWriteLatency().getCount() >= 2);
+          assertTrue(writes.getMaxNanos() > 0);
+          assertTrue(writes.getP50Nanos() <= writes.getP99Nanos());
+          assertTrue(writes.getP99Nanos() <= writes.getP999Nanos());
+          client.close();
+          server.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void registersMBean() throws Exception {
+    ObjectName name = SocketMetrics.registerMBean();
+    assertEquals(name, SocketMetrics.registerMBean());
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertTrue(server.getAttribute(name, "BytesRead") instanceof Long);
+    CompositeData latency = (CompositeData) server.getAttribute(name, "ReadLatency");
+    assertEquals(
+        SocketMetrics.Latency.from(latency).getCount(), (long) (Long) latency.get("count"));
+  }
+}
@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class SocketMetricsTestJNI extends SocketMetricsTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
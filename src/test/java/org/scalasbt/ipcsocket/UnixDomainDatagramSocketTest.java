@@ -0,0 +1,80 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UnixDomainDatagramSocketTest extends BaseSocketSetup {
+
+  @Test
+  public void batchedDatagrams() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainDatagramSocket receiver = new UnixDomainDatagramSocket(useJNI());
+          receiver.bind(sock);
+          UnixDomainDatagramSocket sender = new UnixDomainDatagramSocket(useJNI());
+          sender.connect(sock);
+
+          int count = 100;
+          ByteBuffer[] datagrams = new ByteBuffer[count];
+          for (int i = 0; i < count; i++) {
+            byte[] bytes = ("event-" + i).getBytes(StandardCharsets.UTF_8);
+            datagrams[i] = i % 2 == 0 ? ByteBuffer.wrap(bytes) : ByteBuffer.allocateDirect(16);
+            if (i % 2 != 0) {
+              datagrams[i].put(bytes).flip();
+            }
+          }
+          // The receive queue is short, so the batch is sent while the receiver drains it.
+          CompletableFuture<Integer> sent =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try {
+                      return sender.sendBatch(datagrams);
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  });
+
+          ByteBuffer[] dsts = new ByteBuffer[32];
+          int received = 0;
+          while (received < count) {
+            for (int i = 0; i < dsts.length; i++) {
+              dsts[i] = i % 2 == 0 ? ByteBuffer.allocate(16) : ByteBuffer.allocateDirect(16);
+            }
+            int n = receiver.receiveBatch(dsts);
+            assertTrue(n > 0);
+            for (int i = 0; i < n; i++) {
+              dsts[i].flip();
+              byte[] bytes = new byte[dsts[i].remaining()];
+              dsts[i].get(bytes);
+              assertEquals("event-" + (received + i), new String(bytes, StandardCharsets.UTF_8));
+            }
+            received += n;
+          }
+          try {
+            assertEquals(count, (int) sent.get(5, TimeUnit.SECONDS));
+          } catch (Exception e) {
+            fail(e.getMessage());
+          }
+          assertFalse(datagrams[count - 1].hasRemaining());
+
+          assertEquals(10, sender.send(ByteBuffer.wrap("0123456789".getBytes())));
+          ByteBuffer small = ByteBuffer.allocate(4);
+          int length = receiver.receive(small);
+          assertTrue(length == 4 || length == 10);
+          assertEquals("0123", new String(small.array(), StandardCharsets.UTF_8));
+
+          receiver.configureBlocking(false);
+          assertEquals(0, receiver.receive(ByteBuffer.allocate(4)));
+          assertEquals(0, receiver.receiveBatch(new ByteBuffer[] {ByteBuffer.allocate(4)}));
+          sender.close();
+          receiver.close();
+          assertTrue(receiver.isClosed());
+        });
+  }
+}
@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class UnixDomainDatagramSocketTestJNI extends UnixDomainDatagramSocketTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
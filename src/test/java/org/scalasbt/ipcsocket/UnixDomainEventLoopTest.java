@@ -0,0 +1,151 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UnixDomainEventLoopTest extends BaseSocketSetup {
+  final boolean isLinux = System.getProperty("os.name", "").toLowerCase().startsWith("linux");
+
+  static class Echo implements UnixDomainEventLoop.ConnectionHandler {
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+    private final CountDownLatch closed;
+
+    Echo(CountDownLatch closed) {
+      this.closed = closed;
+    }
+
+    @Override
+    public void onReadable(UnixDomainEventLoop.Connection connection) throws IOException {
+      buffer.clear();
+      if (connection.read(buffer) == -1) {
+        connection.close();
+      } else {
+        buffer.flip();
+        connection.write(buffer);
+      }
+    }
+
+    @Override
+    public void onClose(UnixDomainEventLoop.Connection connection) {
+      closed.countDown();
+    }
+  }
+
+  @Test
+  public void echoManyClients() throws Exception {
+    if (!isLinux) return;
+    withSocket(
+        sock -> {
+          int clients = 32;
+          CountDownLatch closed = new CountDownLatch(clients);
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          try (UnixDomainEventLoop loop = new UnixDomainEventLoop(2, useJNI())) {
+            loop.register(serverSocket, connection -> new Echo(closed));
+            List<UnixDomainSocket> sockets = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+              UnixDomainSocket socket = new UnixDomainSocket(sock, useJNI());
+              socket.getOutputStream().write(("hello" + i).getBytes());
+              sockets.add(socket);
+            }
+            for (int i = 0; i < clients; i++) {
+              byte[] expected = ("hello" + i).getBytes();
+              byte[] buf = new byte[expected.length];
+              InputStream in = sockets.get(i).getInputStream();
+              int total = 0;
+              while (total < buf.length) {
+                total += in.read(buf, total, buf.length - total);
+              }
+              assertArrayEquals(expected, buf);
+              sockets.get(i).close();
+            }
+            assertTrue("connections were not closed", closed.await(5, TimeUnit.SECONDS));
+          }
+          serverSocket.close();
+        });
+  }
+
+  /** Delegates to the real provider, except that the first {@code failures} batch accepts fail. */
+  private UnixDomainSocketLibraryProvider failingAccepts(AtomicInteger failures) {
+    UnixDomainSocketLibraryProvider real = UnixDomainSocketLibraryProvider.get(useJNI());
+    return (UnixDomainSocketLibraryProvider)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {UnixDomainSocketLibraryProvider.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("accept")
+                  && args.length == 3
+                  && failures.getAndDecrement() > 0) {
+                throw new NativeErrorException(UnixDomainSocketLibrary.EMFILE, "accept failed");
+              }
+              try {
+                return method.invoke(real, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+  }
+
+  @Test
+  public void acceptResumesAfterFailure() throws Exception {
+    if (!isLinux) return;
+    withSocket(
+        sock -> {
+          AtomicInteger failures = new AtomicInteger(2);
+          List<IOException> reported = new ArrayList<>();
+          CountDownLatch closed = new CountDownLatch(1);
+          UnixDomainServerSocket serverSocket =
+              new UnixDomainServerSocket(
+                  UnixDomainServerSocket.DEFAULT_BACKLOG,
+                  sock,
+                  useJNI(),
+                  UnixDomainSocketLibrary.SOCK_STREAM,
+                  failingAccepts(failures));
+          try (UnixDomainEventLoop loop = new UnixDomainEventLoop(useJNI())) {
+            loop.register(
+                serverSocket,
+                new UnixDomainEventLoop.AcceptHandler() {
+                  @Override
+                  public UnixDomainEventLoop.ConnectionHandler onAccept(
+                      UnixDomainEventLoop.Connection connection) {
+                    return new Echo(closed);
+                  }
+
+                  @Override
+                  public void onAcceptFailed(IOException exception) {
+                    synchronized (reported) {
+                      reported.add(exception);
+                    }
+                  }
+                });
+            // The connection waits in the backlog while accepting fails and the server socket is
+            // paused, and is accepted once it is watched again.
+            long start = System.nanoTime();
+            UnixDomainSocket socket = new UnixDomainSocket(sock, useJNI());
+            socket.getOutputStream().write(42);
+            assertEquals(42, socket.getInputStream().read());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            synchronized (reported) {
+              assertEquals(2, reported.size());
+              for (IOException e : reported) {
+                assertEquals(
+                    UnixDomainSocketLibrary.EMFILE,
+                    ((NativeErrorException) e.getCause()).returnCode());
+              }
+            }
+            socket.close();
+            assertTrue("the connection was not closed", closed.await(5, TimeUnit.SECONDS));
+          }
+          serverSocket.close();
+        });
+  }
+}
@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class UnixDomainEventLoopTestJNI extends UnixDomainEventLoopTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
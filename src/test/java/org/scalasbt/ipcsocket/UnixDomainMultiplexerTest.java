@@ -0,0 +1,216 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UnixDomainMultiplexerTest extends BaseSocketSetup {
+  /** Accepts streams and echoes everything written to each of them until its output ends. */
+  private Thread echoServer(UnixDomainMultiplexer mux) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                while (true) {
+                  UnixDomainMultiplexer.Stream stream = mux.accept();
+                  Thread handler =
+                      new Thread(
+                          () -> {
+                            try (UnixDomainMultiplexer.Stream s = stream) {
+                              InputStream in = s.getInputStream();
+                              OutputStream out = s.getOutputStream();
+                              byte[] buffer = new byte[4096];
+                              int n;
+                              while ((n = in.read(buffer)) != -1) {
+                                out.write(buffer, 0, n);
+                              }
+                            } catch (IOException e) {
+                            }
+                          });
+                  handler.setDaemon(true);
+                  handler.start();
+                }
+              } catch (IOException | InterruptedException e) {
+              }
+            });
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /** Writes {@code bytes} to the stream on another thread and returns what is echoed back. */
+  private byte[] echo(UnixDomainMultiplexer.Stream stream, byte[] bytes) throws Exception {
+    AtomicReference<IOException> error = new AtomicReference<>();
+    Thread writer =
+        new Thread(
+            () -> {
+              try (OutputStream out = stream.getOutputStream()) {
+                out.write(bytes);
+              } catch (IOException e) {
+                error.set(e);
+              }
+            });
+    writer.start();
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+    InputStream in = stream.getInputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      received.write(buffer, 0, n);
+    }
+    writer.join();
+    if (error.get() != null) throw error.get();
+    return received.toByteArray();
+  }
+
+  @Test
+  public void multiplexesStreams() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          try (UnixDomainMultiplexer serverMux = new UnixDomainMultiplexer(server, false);
+              UnixDomainMultiplexer clientMux = new UnixDomainMultiplexer(client, true)) {
+            echoServer(serverMux);
+            byte[][] payloads = new byte[3][];
+            UnixDomainMultiplexer.Stream[] streams = new UnixDomainMultiplexer.Stream[3];
+            AtomicReference<Exception> error = new AtomicReference<>();
+            Thread[] threads = new Thread[3];
+            for (int i = 0; i < 3; i++) {
+              // Each payload is larger than the flow control window.
+              payloads[i] = new byte[3 * UnixDomainMultiplexer.DEFAULT_WINDOW + i];
+              rand.nextBytes(payloads[i]);
+              streams[i] = clientMux.openStream();
+              final int index = i;
+              threads[i] =
+                  new Thread(
+                      () -> {
+                        try {
+                          byte[] echoed = echo(streams[index], payloads[index]);
+                          if (!Arrays.equals(payloads[index], echoed)) {
+                            error.set(new IOException("Stream " + index + " was corrupted"));
+                          }
+                        } catch (Exception e) {
+                          error.set(e);
+                        }
+                      });
+              threads[i].start();
+            }
+            // A small exchange completes while the bulk streams are busy.
+            byte[] small = "ping".getBytes();
+            assertArrayEquals(small, echo(clientMux.openStream(), small));
+            for (Thread thread : threads) {
+              thread.join();
+            }
+            if (error.get() != null) throw new AssertionError(error.get());
+            assertEquals(1, streams[0].getId() % 2);
+            assertNotEquals(streams[0].getId(), streams[1].getId());
+          } catch (Exception e) {
+            throw new AssertionError(e);
+          } finally {
+            serverSocket.close();
+          }
+        });
+  }
+
+  @Test
+  public void slowReaderOnlyStallsItsOwnStream() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          UnixDomainMultiplexer serverMux = new UnixDomainMultiplexer(server, false);
+          UnixDomainMultiplexer clientMux = new UnixDomainMultiplexer(client, true);
+          try {
+            UnixDomainMultiplexer.Stream stalled = clientMux.openStream();
+            UnixDomainMultiplexer.Stream accepted = serverMux.accept();
+            assertEquals(stalled.getId(), accepted.getId());
+            // Nobody reads the stream on the server, so the writer blocks once the window is used.
+            AtomicReference<IOException> error = new AtomicReference<>();
+            Thread writer =
+                new Thread(
+                    () -> {
+                      try {
+                        stalled
+                            .getOutputStream()
+                            .write(new byte[UnixDomainMultiplexer.DEFAULT_WINDOW + 1]);
+                      } catch (IOException e) {
+                        error.set(e);
+                      }
+                    });
+            writer.start();
+            writer.join(200);
+            assertTrue(writer.isAlive());
+
+            // Other streams are unaffected.
+            UnixDomainMultiplexer.Stream other = serverMux.openStream();
+            UnixDomainMultiplexer.Stream otherAccepted = clientMux.accept();
+            assertEquals(0, other.getId() % 2);
+            other.getOutputStream().write(42);
+            assertEquals(42, otherAccepted.getInputStream().read());
+
+            // Reading the stalled stream grants more credit.
+            InputStream in = accepted.getInputStream();
+            byte[] buffer = new byte[8192];
+            int total = 0;
+            while (total < UnixDomainMultiplexer.DEFAULT_WINDOW + 1) {
+              total += in.read(buffer);
+            }
+            writer.join(5000);
+            assertFalse(writer.isAlive());
+            assertNull(error.get());
+            stalled.close();
+            assertEquals(-1, in.read());
+          } catch (Exception e) {
+            throw new AssertionError(e);
+          } finally {
+            clientMux.close();
+            serverMux.close();
+            serverSocket.close();
+          }
+        });
+  }
+
+  @Test
+  public void closeFailsPeer() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          UnixDomainMultiplexer serverMux = new UnixDomainMultiplexer(server, false);
+          UnixDomainMultiplexer clientMux = new UnixDomainMultiplexer(client, true);
+          UnixDomainMultiplexer.Stream stream = clientMux.openStream();
+          UnixDomainMultiplexer.Stream accepted = serverMux.accept();
+          clientMux.close();
+          assertTrue(clientMux.isClosed());
+          try {
+            accepted.getInputStream().read();
+            fail("read should fail once the peer is closed");
+          } catch (IOException e) {
+          }
+          try {
+            serverMux.accept();
+            fail("accept should fail once the peer is closed");
+          } catch (IOException e) {
+          }
+          try {
+            stream.getOutputStream().write(1);
+            fail("write should fail once the multiplexer is closed");
+          } catch (IOException e) {
+          }
+          serverMux.close();
+          serverSocket.close();
+        });
+  }
+}
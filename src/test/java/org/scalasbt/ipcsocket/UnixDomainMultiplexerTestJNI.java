@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class UnixDomainMultiplexerTestJNI extends UnixDomainMultiplexerTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
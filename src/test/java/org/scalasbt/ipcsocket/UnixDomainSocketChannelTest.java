@@ -0,0 +1,91 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UnixDomainSocketChannelTest extends BaseSocketSetup {
+
+  @Test
+  public void gatheringWriteAndStreamInterop() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocketChannel server = UnixDomainServerSocketChannel.open(sock, useJNI());
+          CompletableFuture<String> received =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try (UnixDomainSocketChannel channel = server.accept()) {
+                      BufferedReader reader =
+                          new BufferedReader(
+                              new InputStreamReader(Channels.newInputStream(channel)));
+                      return reader.readLine();
+                    } catch (Exception e) {
+                      return e.toString();
+                    }
+                  });
+          UnixDomainSocketChannel client = UnixDomainSocketChannel.open(sock, useJNI());
+          assertTrue(client.isConnected());
+          ByteBuffer header = ByteBuffer.wrap("hello ".getBytes());
+          ByteBuffer body = ByteBuffer.allocateDirect(6);
+          body.put("world\n".getBytes()).flip();
+          assertEquals(12L, client.write(new ByteBuffer[] {header, body}));
+          try {
+            assertEquals("hello world", received.get(5, TimeUnit.SECONDS));
+          } catch (Exception e) {
+            fail(e.getMessage());
+          }
+          client.close();
+          assertFalse(client.socket().getChannel().isOpen());
+          assertTrue(client.socket().isClosed());
+          try {
+            client.write(ByteBuffer.allocate(1));
+            fail("wrote to closed channel");
+          } catch (ClosedChannelException e) {
+          }
+          server.socket().close();
+          assertFalse(server.isOpen());
+        });
+  }
+
+  @Test
+  public void selectorsAreRejected() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocketChannel server = UnixDomainServerSocketChannel.open(sock, useJNI());
+          UnixDomainSocketChannel client = UnixDomainSocketChannel.open(sock, useJNI());
+          client.configureBlocking(false);
+          server.configureBlocking(false);
+          try (Selector selector = Selector.open()) {
+            try {
+              client.register(selector, SelectionKey.OP_READ);
+              fail("registered a channel with a selector of another provider");
+            } catch (IllegalSelectorException e) {
+            }
+            try {
+              server.register(selector, SelectionKey.OP_ACCEPT);
+              fail("registered a channel with a selector of another provider");
+            } catch (IllegalSelectorException e) {
+            }
+          }
+          try {
+            client.provider().openSelector();
+            fail("opened a selector for Unix domain socket channels");
+          } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("UnixDomainEventLoop"));
+          }
+          client.close();
+          server.close();
+        });
+  }
+}
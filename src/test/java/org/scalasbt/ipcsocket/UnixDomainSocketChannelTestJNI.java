@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class UnixDomainSocketChannelTestJNI extends UnixDomainSocketChannelTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
@@ -0,0 +1,126 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UnixDomainSocketPoolTest extends BaseSocketSetup {
+  private final List<UnixDomainSocket> accepted = new CopyOnWriteArrayList<>();
+
+  /** Accepts connections and echoes each byte sent on them. */
+  private Thread echoServer(UnixDomainServerSocket serverSocket) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                while (true) {
+                  UnixDomainSocket socket = (UnixDomainSocket) serverSocket.accept();
+                  accepted.add(socket);
+                  Thread handler =
+                      new Thread(
+                          () -> {
+                            try {
+                              InputStream in = socket.getInputStream();
+                              OutputStream out = socket.getOutputStream();
+                              int b;
+                              while ((b = in.read()) != -1) {
+                                out.write(b);
+                              }
+                            } catch (IOException e) {
+                            }
+                          });
+                  handler.setDaemon(true);
+                  handler.start();
+                }
+              } catch (IOException | RuntimeException e) {
+              }
+            });
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  private void roundTrip(UnixDomainSocket socket, int b) throws IOException {
+    socket.getOutputStream().write(b);
+    assertEquals(b, socket.getInputStream().read());
+  }
+
+  @Test
+  public void reusesConnections() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          echoServer(serverSocket);
+          try (UnixDomainSocketPool pool = new UnixDomainSocketPool(useJNI())) {
+            UnixDomainSocket first = pool.borrow(sock);
+            roundTrip(first, 1);
+            pool.release(first);
+            assertEquals(1, pool.idleCount(sock));
+
+            UnixDomainSocket second = pool.borrow(sock);
+            assertSame(first, second);
+            UnixDomainSocket third = pool.borrow(sock);
+            assertNotSame(second, third);
+            roundTrip(second, 2);
+            roundTrip(third, 3);
+            pool.release(second);
+            pool.release(third);
+            assertEquals(2, accepted.size());
+            assertEquals(2, pool.idleCount(sock));
+
+            // A connection that the server has hung up is discarded when it is borrowed.
+            for (UnixDomainSocket socket : accepted) {
+              socket.shutdownOutput();
+            }
+            Thread.sleep(50);
+            UnixDomainSocket fresh = pool.borrow(sock);
+            assertNotSame(second, fresh);
+            assertNotSame(third, fresh);
+            assertTrue(second.isClosed());
+            assertTrue(third.isClosed());
+            roundTrip(fresh, 4);
+            pool.invalidate(fresh);
+            assertTrue(fresh.isClosed());
+            assertEquals(0, pool.idleCount(sock));
+          }
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void evictsIdleConnections() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          echoServer(serverSocket);
+          UnixDomainSocket second;
+          try (UnixDomainSocketPool pool = new UnixDomainSocketPool(useJNI(), 1, 4, 100)) {
+            UnixDomainSocket first = pool.borrow(sock);
+            second = pool.borrow(sock);
+            pool.release(first);
+            pool.release(second);
+            assertEquals(2, pool.idleCount(sock));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.idleCount(sock) > 1 && System.nanoTime() < deadline) {
+              Thread.sleep(20);
+            }
+            // The oldest connection is evicted and minIdle keeps the other one open.
+            assertEquals(1, pool.idleCount(sock));
+            assertTrue(first.isClosed());
+            UnixDomainSocket warm = pool.borrow(sock);
+            assertSame(second, warm);
+            roundTrip(warm, 5);
+            pool.release(warm);
+          }
+          assertTrue(second.isClosed());
+          serverSocket.close();
+        });
+  }
+}
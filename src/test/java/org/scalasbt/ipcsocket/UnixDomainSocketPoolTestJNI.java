@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class UnixDomainSocketPoolTestJNI extends UnixDomainSocketPoolTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}
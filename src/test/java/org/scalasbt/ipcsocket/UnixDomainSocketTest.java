@@ -0,0 +1,915 @@
+package org.scalasbt.ipcsocket;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UnixDomainSocketTest extends BaseSocketSetup {
+  final boolean isLinux = System.getProperty("os.name", "").toLowerCase().startsWith("linux");
+
+  private CompletableFuture<Boolean> echo(UnixDomainServerSocket serverSocket) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try (UnixDomainSocket socket = (UnixDomainSocket) serverSocket.accept()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+            while (socket.read(buffer) != -1) {
+              buffer.flip();
+              socket.write(buffer);
+              buffer.clear();
+            }
+          } catch (IOException e) {
+            return false;
+          }
+          return true;
+        });
+  }
+
+  @Test
+  public void directByteBufferRoundTrip() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          CompletableFuture<Boolean> server = echo(serverSocket);
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          byte[] payload = new byte[64 * 1024];
+          rand.nextBytes(payload);
+          ByteBuffer out = ByteBuffer.allocateDirect(payload.length);
+          out.put(payload).flip();
+          assertEquals(payload.length, client.write(out));
+          assertFalse(out.hasRemaining());
+          client.shutdownOutput();
+
+          ByteBuffer in = ByteBuffer.allocateDirect(payload.length);
+          while (in.hasRemaining() && client.read(in) != -1) {}
+          in.flip();
+          byte[] received = new byte[in.remaining()];
+          in.get(received);
+          assertArrayEquals(payload, received);
+          client.close();
+          try {
+            assertTrue(server.get(5, TimeUnit.SECONDS));
+          } catch (Exception e) {
+            fail(e.getMessage());
+          }
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void heapByteBufferRoundTrip() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          CompletableFuture<Boolean> server = echo(serverSocket);
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          ByteBuffer out = ByteBuffer.wrap("xxhelloxx".getBytes(), 2, 5);
+          assertEquals(5, client.write(out));
+          ByteBuffer in = ByteBuffer.allocate(16);
+          in.position(3);
+          while (in.position() < 8 && client.read(in) != -1) {}
+          assertEquals("hello", new String(in.array(), 3, 5));
+          client.close();
+          serverSocket.close();
+          server.cancel(true);
+        });
+  }
+
+  @Test
+  public void largeArrayRoundTrip() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          CompletableFuture<Boolean> server = echo(serverSocket);
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          byte[] payload = new byte[1024 * 1024 + 17];
+          rand.nextBytes(payload);
+          CompletableFuture<Void> writer =
+              CompletableFuture.runAsync(
+                  () -> {
+                    try {
+                      client.getOutputStream().write(payload, 0, 3);
+                      client.getOutputStream().write(payload, 3, payload.length - 3);
+                      client.shutdownOutput();
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  });
+          byte[] received = new byte[payload.length + 64];
+          int total = 0;
+          int read;
+          InputStream in = client.getInputStream();
+          while ((read = in.read(received, total, received.length - total)) != -1) {
+            total += read;
+          }
+          assertEquals(payload.length, total);
+          assertArrayEquals(payload, Arrays.copyOf(received, total));
+          try {
+            writer.get(5, TimeUnit.SECONDS);
+          } catch (Exception e) {
+            fail(e.getMessage());
+          }
+          client.close();
+          serverSocket.close();
+          server.cancel(true);
+        });
+  }
+
+  private int poll(int fd, int events, int timeoutMillis) throws IOException {
+    try {
+      int[] revents = new int[1];
+      UnixDomainSocketLibraryProvider provider = UnixDomainSocketLibraryProvider.get(useJNI());
+      return provider.poll(new int[] {fd}, new int[] {events}, revents, timeoutMillis) == 0
+          ? 0
+          : revents[0];
+    } catch (NativeErrorException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Test
+  public void nonBlockingChannels() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocketChannel server = UnixDomainServerSocketChannel.open(sock, useJNI());
+          server.configureBlocking(false);
+          assertNull(server.accept());
+          UnixDomainSocketChannel client = UnixDomainSocketChannel.open(sock, useJNI());
+          int serverFd = server.socket().getFd();
+          assertEquals(
+              UnixDomainSocketLibrary.POLLIN, poll(serverFd, UnixDomainSocketLibrary.POLLIN, 5000));
+          UnixDomainSocketChannel accepted = server.accept();
+          assertNotNull(accepted);
+          accepted.configureBlocking(false);
+          int acceptedFd = accepted.socket().getFd();
+
+          ByteBuffer buf = ByteBuffer.allocate(16);
+          assertEquals(0, accepted.read(buf));
+          assertEquals(0, poll(acceptedFd, UnixDomainSocketLibrary.POLLIN, 10));
+          client.write(ByteBuffer.wrap("ping".getBytes()));
+          assertEquals(
+              UnixDomainSocketLibrary.POLLIN, poll(acceptedFd, UnixDomainSocketLibrary.POLLIN, -1));
+          assertEquals(4, accepted.read(buf));
+          assertEquals(0, accepted.read(buf));
+
+          client.configureBlocking(false);
+          ByteBuffer large = ByteBuffer.allocateDirect(16 * 1024 * 1024);
+          int written = client.write(large);
+          assertTrue("wrote " + written, written > 0 && written < large.capacity());
+          assertEquals(0, client.write(large));
+          assertEquals(0, poll(client.socket().getFd(), UnixDomainSocketLibrary.POLLOUT, 10));
+
+          client.close();
+          accepted.close();
+          server.close();
+        });
+  }
+
+  @Test
+  public void scatterGather() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          CompletableFuture<Boolean> server = echo(serverSocket);
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          byte[] payload = new byte[100 * 1000];
+          rand.nextBytes(payload);
+          ByteBuffer[] srcs = new ByteBuffer[100];
+          for (int i = 0; i < srcs.length; i++) {
+            ByteBuffer chunk = ByteBuffer.wrap(payload, i * 1000, 1000);
+            if (i % 3 == 0) {
+              srcs[i] = ByteBuffer.allocateDirect(1000).put(chunk);
+              srcs[i].flip();
+            } else {
+              srcs[i] = i % 3 == 1 ? chunk.slice() : chunk.slice().asReadOnlyBuffer();
+            }
+          }
+          assertEquals(payload.length, client.write(srcs));
+          client.shutdownOutput();
+
+          ByteBuffer header = ByteBuffer.allocate(7);
+          ByteBuffer body = ByteBuffer.allocateDirect(payload.length - header.capacity());
+          ByteBuffer[] dsts = new ByteBuffer[] {header, body};
+          long total = 0;
+          long read;
+          while (body.hasRemaining() && (read = client.read(dsts)) != -1) {
+            total += read;
+          }
+          assertEquals(payload.length, total);
+          byte[] received = new byte[payload.length];
+          header.flip();
+          body.flip();
+          header.get(received, 0, header.capacity());
+          body.get(received, header.capacity(), body.remaining());
+          assertArrayEquals(payload, received);
+          client.close();
+          serverSocket.close();
+          server.cancel(true);
+        });
+  }
+
+  // InputStream.transferTo was only added in Java 9, so call the override reflectively.
+  private long transferTo(InputStream in, OutputStream out) throws Exception {
+    Method method = in.getClass().getMethod("transferTo", OutputStream.class);
+    method.setAccessible(true);
+    return (long) method.invoke(in, out);
+  }
+
+  @Test
+  public void fileTransfer() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          Path source = Files.createTempFile("ipcsocket", ".src");
+          Path target = Files.createTempFile("ipcsocket", ".dst");
+          try {
+            byte[] payload = new byte[256 * 1024 + 3];
+            rand.nextBytes(payload);
+            Files.write(source, payload);
+            UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+            CompletableFuture<Long> server =
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try (UnixDomainSocket socket = (UnixDomainSocket) serverSocket.accept();
+                          FileOutputStream out = new FileOutputStream(target.toFile())) {
+                        return transferTo(socket.getInputStream(), out);
+                      } catch (Exception e) {
+                        throw new RuntimeException(e);
+                      }
+                    });
+            UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+            try (FileChannel channel = FileChannel.open(source)) {
+              assertEquals(payload.length - 5, client.transferFrom(channel, 5, payload.length));
+              assertEquals(0, channel.position());
+            }
+            client.close();
+            try {
+              assertEquals(payload.length - 5, (long) server.get(5, TimeUnit.SECONDS));
+            } catch (Exception e) {
+              fail(e.getMessage());
+            }
+            assertArrayEquals(
+                Arrays.copyOfRange(payload, 5, payload.length), Files.readAllBytes(target));
+            serverSocket.close();
+          } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(target);
+          }
+        });
+  }
+
+  @Test
+  public void fileTransferToAppendedFile() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          Path target = Files.createTempFile("ipcsocket", ".dst");
+          try {
+            byte[] header = "header".getBytes();
+            byte[] payload = new byte[200 * 1024 + 7];
+            rand.nextBytes(payload);
+            Files.write(target, header);
+            UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+            CompletableFuture<Long> server =
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try (UnixDomainSocket socket = (UnixDomainSocket) serverSocket.accept();
+                          FileOutputStream out = new FileOutputStream(target.toFile(), true)) {
+                        return transferTo(socket.getInputStream(), out);
+                      } catch (Exception e) {
+                        throw new RuntimeException(e);
+                      }
+                    });
+            UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+            OutputStream out = client.getOutputStream();
+            for (int i = 0; i < payload.length; i += 4096) {
+              out.write(payload, i, Math.min(4096, payload.length - i));
+            }
+            client.close();
+            assertEquals(payload.length, (long) server.join());
+            byte[] expected = new byte[header.length + payload.length];
+            System.arraycopy(header, 0, expected, 0, header.length);
+            System.arraycopy(payload, 0, expected, header.length, payload.length);
+            assertArrayEquals(expected, Files.readAllBytes(target));
+            serverSocket.close();
+          } finally {
+            Files.deleteIfExists(target);
+          }
+        });
+  }
+
+  @Test
+  public void fileDescriptorPassing() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          CompletableFuture<Boolean> server =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try (UnixDomainSocket socket = (UnixDomainSocket) serverSocket.accept()) {
+                      ByteBuffer payload = ByteBuffer.allocate(16);
+                      int[] fds = socket.receiveFileDescriptors(payload);
+                      if (fds.length != 1) return false;
+                      try (UnixDomainSocket passed = new UnixDomainSocket(fds[0], useJNI())) {
+                        passed.getOutputStream().write("hello".getBytes());
+                      }
+                      while ((fds = socket.receiveFileDescriptors(payload)) != null) {
+                        if (fds.length != 0) return false;
+                      }
+                      return payload.position() == 3;
+                    } catch (IOException e) {
+                      return false;
+                    }
+                  });
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          int[] pair = new int[2];
+          try {
+            UnixDomainSocketLibraryProvider.get(useJNI())
+                .socketPair(
+                    UnixDomainSocketLibrary.AF_LOCAL, UnixDomainSocketLibrary.SOCK_STREAM, 0, pair);
+          } catch (NativeErrorException e) {
+            throw new IOException(e);
+          }
+          UnixDomainSocket local = new UnixDomainSocket(pair[0], useJNI());
+          UnixDomainSocket sent = new UnixDomainSocket(pair[1], useJNI());
+          ByteBuffer payload = ByteBuffer.allocateDirect(2);
+          payload.put("fd".getBytes()).flip();
+          assertEquals(2, client.sendFileDescriptors(new int[] {pair[1]}, payload));
+          sent.close();
+          client.getOutputStream().write(1);
+          client.shutdownOutput();
+
+          byte[] received = new byte[5];
+          int total = 0;
+          while (total < received.length) {
+            total += local.getInputStream().read(received, total, received.length - total);
+          }
+          assertEquals("hello", new String(received));
+          try {
+            assertTrue(server.get(5, TimeUnit.SECONDS));
+          } catch (Exception e) {
+            fail(e.getMessage());
+          }
+          local.close();
+          client.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void seqPacketMessages() throws Exception {
+    if (!isLinux) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket =
+              new UnixDomainServerSocket(
+                  10, sock, useJNI(), UnixDomainSocketLibrary.SOCK_SEQPACKET);
+          CompletableFuture<Socket> accepted =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try {
+                      return serverSocket.accept();
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  });
+          UnixDomainSocket client =
+              new UnixDomainSocket(sock, useJNI(), UnixDomainSocketLibrary.SOCK_SEQPACKET);
+          byte[] large = new byte[20000];
+          rand.nextBytes(large);
+          ByteBuffer direct = ByteBuffer.allocateDirect(large.length);
+          direct.put(large).flip();
+          assertEquals(3, client.sendMessage(ByteBuffer.wrap("abc".getBytes())));
+          assertEquals(large.length, client.sendMessage(direct));
+          assertEquals(10, client.sendMessage(ByteBuffer.wrap("0123456789".getBytes())));
+          client.close();
+
+          UnixDomainSocket server;
+          try {
+            server = (UnixDomainSocket) accepted.get(5, TimeUnit.SECONDS);
+          } catch (Exception e) {
+            throw new IOException(e);
+          }
+          ByteBuffer small = ByteBuffer.allocate(16);
+          assertEquals(3, server.receiveMessage(small));
+          assertEquals("abc", new String(small.array(), 0, small.position()));
+          ByteBuffer heap = ByteBuffer.allocate(32 * 1024);
+          assertEquals(large.length, server.receiveMessage(heap));
+          assertArrayEquals(large, Arrays.copyOf(heap.array(), heap.position()));
+          ByteBuffer truncated = ByteBuffer.allocateDirect(4);
+          assertEquals(10, server.receiveMessage(truncated));
+          assertEquals(4, truncated.position());
+          assertEquals(-1, server.receiveMessage(small));
+          server.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void bufferedStreams() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          CompletableFuture<Boolean> server = echo(serverSocket);
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          OutputStream out =
+              client.getBufferedOutputStream(64, true, UnixDomainSocket.FlushPolicy.LINE);
+          InputStream in = client.getBufferedInputStream(16, false);
+          assertSame(out, client.getBufferedOutputStream());
+          assertSame(in, client.getBufferedInputStream());
+
+          for (byte b : "hello\n".getBytes()) {
+            out.write(b);
+          }
+          StringBuilder line = new StringBuilder();
+          int c;
+          while ((c = in.read()) != '\n') {
+            line.append((char) c);
+          }
+          assertEquals("hello", line.toString());
+
+          byte[] large = new byte[1000];
+          rand.nextBytes(large);
+          out.write(large, 0, 10);
+          out.write(large, 10, large.length - 10);
+          out.flush();
+          byte[] received = new byte[large.length];
+          int total = 0;
+          while (total < received.length) {
+            total += in.read(received, total, received.length - total);
+          }
+          assertArrayEquals(large, received);
+
+          out.close();
+          in.close();
+          client.shutdownOutput();
+          try {
+            assertTrue(server.get(5, TimeUnit.SECONDS));
+          } catch (Exception e) {
+            fail(e.getMessage());
+          }
+          client.close();
+
+          // Closing the socket releases the buffers of streams that were never closed.
+          UnixDomainSocket other = new UnixDomainSocket(sock, useJNI());
+          InputStream otherIn = other.getBufferedInputStream();
+          other.close();
+          try {
+            otherIn.read();
+            fail("the stream should have been closed with the socket");
+          } catch (IOException e) {
+          }
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void pollerMode() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          serverSocket.setUsePoller(true);
+          CompletableFuture<Boolean> server =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try (UnixDomainSocket socket = (UnixDomainSocket) serverSocket.accept()) {
+                      if (!socket.getUsePoller()) return false;
+                      InputStream in = socket.getInputStream();
+                      byte[] buffer = new byte[4096];
+                      long total = 0;
+                      int read;
+                      while (total < 1 << 20 && (read = in.read(buffer)) != -1) {
+                        total += read;
+                      }
+                      socket.getOutputStream().write(Long.toString(total).getBytes());
+                      return true;
+                    } catch (IOException e) {
+                      return false;
+                    }
+                  });
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          client.setUsePoller(true);
+          byte[] payload = new byte[1 << 20];
+          rand.nextBytes(payload);
+          client.getOutputStream().write(payload);
+          byte[] reply = new byte[16];
+          int total = 0;
+          int read;
+          while ((read = client.getInputStream().read(reply, total, reply.length - total)) != -1) {
+            total += read;
+          }
+          assertEquals(Integer.toString(payload.length), new String(reply, 0, total));
+          try {
+            assertTrue(server.get(5, TimeUnit.SECONDS));
+          } catch (Exception e) {
+            fail(e.getMessage());
+          }
+          client.close();
+
+          // Closing the server socket wakes a thread that is parked in accept.
+          CompletableFuture<Socket> accept =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try {
+                      return serverSocket.accept();
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  });
+          Thread.sleep(100);
+          serverSocket.close();
+          try {
+            accept.get(5, TimeUnit.SECONDS);
+            fail("accept should have failed");
+          } catch (Exception e) {
+            assertTrue(e.getCause() instanceof RuntimeException);
+          }
+        });
+  }
+
+  @Test
+  public void pollerConcurrentWaiters() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          CompletableFuture<Socket> accepted =
+              CompletableFuture.supplyAsync(
+                  () -> {
+                    try {
+                      return serverSocket.accept();
+                    } catch (IOException e) {
+                      throw new RuntimeException(e);
+                    }
+                  });
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          client.setUsePoller(true);
+          Socket server = accepted.join();
+          InputStream in = client.getInputStream();
+          // Several threads wait for the same descriptor, and each is woken by a byte of its own.
+          ExecutorService executor = Executors.newFixedThreadPool(4);
+          List<CompletableFuture<Integer>> readers = new ArrayList<>();
+          for (int i = 0; i < 4; i++) {
+            readers.add(
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try {
+                        return in.read();
+                      } catch (IOException e) {
+                        throw new RuntimeException(e);
+                      }
+                    },
+                    executor));
+          }
+          Thread.sleep(100);
+          for (int i = 0; i < readers.size(); i++) {
+            server.getOutputStream().write(i);
+            Thread.sleep(20);
+          }
+          Set<Integer> received = new HashSet<>();
+          for (CompletableFuture<Integer> reader : readers) {
+            received.add(reader.join());
+          }
+          executor.shutdown();
+          assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3)), received);
+          client.close();
+          server.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void pollerCloseRacesWithRead() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          ExecutorService executor = Executors.newSingleThreadExecutor();
+          // The close lands anywhere between the reader starting and it parking; either way the
+          // reader must be let go instead of waiting for data that will never arrive.
+          for (int i = 0; i < 50; i++) {
+            CompletableFuture<Socket> accepted =
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try {
+                        return serverSocket.accept();
+                      } catch (IOException e) {
+                        throw new RuntimeException(e);
+                      }
+                    });
+            UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+            client.setUsePoller(true);
+            Socket server = accepted.join();
+            InputStream in = client.getInputStream();
+            CompletableFuture<Boolean> reader =
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try {
+                        return in.read() == -1;
+                      } catch (IOException e) {
+                        return true;
+                      }
+                    },
+                    executor);
+            if (i % 2 == 1) {
+              Thread.sleep(1);
+            }
+            client.close();
+            try {
+              assertTrue(reader.get(5, TimeUnit.SECONDS));
+            } catch (ExecutionException | TimeoutException e) {
+              throw new AssertionError("The reader was not woken by close", e);
+            }
+            server.close();
+          }
+          executor.shutdown();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void timeouts() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(1, sock, useJNI());
+          serverSocket.setSoTimeout(100);
+          try {
+            serverSocket.accept();
+            fail("accept should have timed out");
+          } catch (SocketTimeoutException e) {
+          }
+
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+          server.setSoTimeout(100);
+          for (boolean usePoller : new boolean[] {false, true}) {
+            server.setUsePoller(usePoller);
+            try {
+              server.getInputStream().read();
+              fail("read should have timed out");
+            } catch (SocketTimeoutException e) {
+            }
+            client.getOutputStream().write(42);
+            assertEquals(42, server.getInputStream().read());
+          }
+
+          if (isLinux) {
+            // Fill the backlog, which holds one more connection than requested.
+            List<UnixDomainSocket> pending = new ArrayList<>();
+            try {
+              for (int i = 0; i < 8; i++) {
+                pending.add(
+                    new UnixDomainSocket(sock, useJNI(), UnixDomainSocketLibrary.SOCK_STREAM, 100));
+              }
+              fail("connect should have timed out");
+            } catch (SocketTimeoutException e) {
+            }
+            // A connect that is waiting for room in the backlog completes once a connection is
+            // accepted, long before its timeout.
+            CompletableFuture<UnixDomainSocket> waiting =
+                CompletableFuture.supplyAsync(
+                    () -> {
+                      try {
+                        return new UnixDomainSocket(
+                            sock, useJNI(), UnixDomainSocketLibrary.SOCK_STREAM, 10000);
+                      } catch (IOException e) {
+                        throw new RuntimeException(e);
+                      }
+                    });
+            Thread.sleep(100);
+            long start = System.nanoTime();
+            serverSocket.accept().close();
+            waiting.join().close();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            for (UnixDomainSocket socket : pending) {
+              socket.close();
+            }
+          }
+          server.close();
+          client.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void acceptTimeoutWithCompetingThreads() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          serverSocket.setSoTimeout(300);
+          ExecutorService executor = Executors.newFixedThreadPool(8);
+          for (int round = 0; round < 6; round++) {
+            serverSocket.setUsePoller(round % 2 == 1);
+            // Every thread is woken by the connection, but only one gets it; the others must still
+            // time out.
+            List<CompletableFuture<Boolean>> acceptors = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+              acceptors.add(
+                  CompletableFuture.supplyAsync(
+                      () -> {
+                        try {
+                          serverSocket.accept().close();
+                          return true;
+                        } catch (SocketTimeoutException e) {
+                          return false;
+                        } catch (IOException e) {
+                          throw new RuntimeException(e);
+                        }
+                      },
+                      executor));
+            }
+            Thread.sleep(100);
+            UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+            int accepted = 0;
+            for (CompletableFuture<Boolean> acceptor : acceptors) {
+              try {
+                if (acceptor.get(5, TimeUnit.SECONDS)) {
+                  accepted++;
+                }
+              } catch (ExecutionException | TimeoutException e) {
+                throw new AssertionError("accept did not respect its timeout", e);
+              }
+            }
+            assertEquals(1, accepted);
+            client.close();
+          }
+          executor.shutdown();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void socketOptions() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          serverSocket.setReceiveBufferSize(24 * 1024);
+          UnixDomainSocket client = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket server = (UnixDomainSocket) serverSocket.accept();
+
+          client.setSendBufferSize(32 * 1024);
+          assertTrue(client.getSendBufferSize() >= 32 * 1024);
+          client.getChannel().setOption(StandardSocketOptions.SO_RCVBUF, 48 * 1024);
+          assertEquals(
+              client.getReceiveBufferSize(),
+              (int) client.getChannel().getOption(StandardSocketOptions.SO_RCVBUF));
+          assertTrue(client.getReceiveBufferSize() >= 48 * 1024);
+          assertEquals(serverSocket.getReceiveBufferSize(), server.getReceiveBufferSize());
+          try {
+            client.getChannel().setOption(StandardSocketOptions.TCP_NODELAY, true);
+            fail("TCP_NODELAY should not be supported");
+          } catch (UnsupportedOperationException e) {
+          }
+
+          server.close();
+          client.close();
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void acceptBatch() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          List<UnixDomainSocket> clients = new ArrayList<>();
+          for (int i = 0; i < 10; i++) {
+            clients.add(new UnixDomainSocket(sock, useJNI()));
+          }
+          List<UnixDomainSocket> accepted = serverSocket.acceptBatch(4);
+          assertEquals(4, accepted.size());
+          while (accepted.size() < clients.size()) {
+            accepted.addAll(serverSocket.acceptBatch(64));
+          }
+          assertEquals(clients.size(), accepted.size());
+          // The batch puts a blocking listening socket in non-blocking mode only while it runs.
+          if (isLinux && !serverSocket.getUsePoller()) {
+            int serverStatus =
+                UnixDomainSocketLibrary.Fcntl.INSTANCE.fcntl(
+                    serverSocket.getFd(), UnixDomainSocketLibrary.F_GETFL);
+            assertEquals(0, serverStatus & UnixDomainSocketLibrary.O_NONBLOCK);
+          }
+          for (int i = 0; i < clients.size(); i++) {
+            clients.get(i).getOutputStream().write(i);
+          }
+          for (int i = 0; i < clients.size(); i++) {
+            assertEquals(i, accepted.get(i).getInputStream().read());
+            if (isLinux) {
+              int flags = UnixDomainSocketLibrary.Fcntl.INSTANCE.fcntl(accepted.get(i).getFd(), 1);
+              assertEquals(UnixDomainSocketLibrary.FD_CLOEXEC, flags);
+            }
+          }
+
+          // The accepted sockets of a server that uses the poller are non-blocking already.
+          serverSocket.setUsePoller(true);
+          UnixDomainSocket late = new UnixDomainSocket(sock, useJNI());
+          UnixDomainSocket polled = serverSocket.acceptBatch(8).get(0);
+          assertTrue(polled.getUsePoller());
+          int status =
+              UnixDomainSocketLibrary.Fcntl.INSTANCE.fcntl(
+                  polled.getFd(), UnixDomainSocketLibrary.F_GETFL);
+          assertNotEquals(0, status & UnixDomainSocketLibrary.O_NONBLOCK);
+          late.getOutputStream().write(42);
+          assertEquals(42, polled.getInputStream().read());
+          late.close();
+          polled.close();
+
+          for (UnixDomainSocket socket : clients) {
+            socket.close();
+          }
+          for (UnixDomainSocket socket : accepted) {
+            socket.close();
+          }
+          serverSocket.close();
+        });
+  }
+
+  @Test
+  public void listenBacklog() throws Exception {
+    if (isWin) return;
+    withSocket(
+        sock -> {
+          UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(sock, useJNI());
+          assertEquals(UnixDomainServerSocket.DEFAULT_BACKLOG, serverSocket.getBacklog());
+          if (isLinux && System.getProperty("sbt.ipcsocket.backlog") == null) {
+            String somaxconn =
+                new String(Files.readAllBytes(Paths.get("/proc/sys/net/core/somaxconn"))).trim();
+            assertEquals(Math.max(50, Integer.parseInt(somaxconn)), serverSocket.getBacklog());
+          }
+          // Shrinking the backlog of a bound socket takes effect right away.
+          serverSocket.setBacklog(2);
+          assertEquals(2, serverSocket.getBacklog());
+          List<UnixDomainSocket> clients = new ArrayList<>();
+          for (int i = 0; i < 3; i++) {
+            clients.add(new UnixDomainSocket(sock, useJNI()));
+          }
+          // The accept queue depth is only reported by kernels built with CONFIG_UNIX_DIAG.
+          int depth = serverSocket.getAcceptQueueDepth();
+          if (depth != -1) {
+            assertEquals(3, depth);
+          }
+          if (isLinux) {
+            // Linux queues one more connection than the backlog.
+            try {
+              new UnixDomainSocket(sock, useJNI(), UnixDomainSocketLibrary.SOCK_STREAM, 100);
+              fail("connect should have timed out");
+            } catch (SocketTimeoutException e) {
+            }
+          }
+          // Growing it makes room for more clients without dropping the queued ones.
+          serverSocket.setBacklog(8);
+          clients.add(new UnixDomainSocket(sock, useJNI()));
+          if (depth != -1) {
+            assertEquals(4, serverSocket.getAcceptQueueDepth());
+          }
+          List<UnixDomainSocket> accepted = new ArrayList<>();
+          while (accepted.size() < clients.size()) {
+            accepted.addAll(serverSocket.acceptBatch(8));
+          }
+          if (depth != -1) {
+            assertEquals(0, serverSocket.getAcceptQueueDepth());
+          }
+          for (UnixDomainSocket socket : clients) {
+            socket.close();
+          }
+          for (UnixDomainSocket socket : accepted) {
+            socket.close();
+          }
+          serverSocket.close();
+        });
+  }
+}
@@ -0,0 +1,8 @@
+package org.scalasbt.ipcsocket;
+
+public class UnixDomainSocketTestJNI extends UnixDomainSocketTest {
+  @Override
+  boolean useJNI() {
+    return true;
+  }
+}